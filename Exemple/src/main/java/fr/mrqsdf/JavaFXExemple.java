@@ -33,6 +33,7 @@ public class JavaFXExemple extends Application {
         AutoRegistrar.register(RegisterType.MATERIAL, "fr.mrqsdf.material");
         AutoRegistrar.register(RegisterType.FACTORY, "fr.mrqsdf.factory");
         AutoRegistrar.register(RegisterType.RECIPE, "fr.mrqsdf.recipe");
+        data.freeze();
 
         MaterialInventory inventory = new MaterialInventory();
 
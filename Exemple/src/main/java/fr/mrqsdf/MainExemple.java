@@ -1,11 +1,10 @@
 package fr.mrqsdf;
 
-import fr.mrqsdf.planner.Plan;
-import fr.mrqsdf.planner.SimplePlanner;
 import fr.mrqsdf.ui.CraftLanternaViewer;
 import fr.olympus.hephaestus.Hephaestus;
 import fr.olympus.hephaestus.factory.Factory;
-import fr.olympus.hephaestus.processing.ProcessRecipe;
+import fr.olympus.hephaestus.planning.CraftPlanner;
+import fr.olympus.hephaestus.processing.MaterialMatcher;
 import fr.olympus.hephaestus.register.*;
 import fr.olympus.hephaestus.resources.HephaestusData;
 
@@ -23,6 +22,7 @@ public final class MainExemple {
         AutoRegistrar.register(RegisterType.MATERIAL, "fr.mrqsdf.material");
         AutoRegistrar.register(RegisterType.FACTORY, "fr.mrqsdf.factory");
         AutoRegistrar.register(RegisterType.RECIPE, "fr.mrqsdf.recipe");
+        data.freeze();
 
         Factory f1 = data.createFactory(FURNACE_STONE);
         Factory f2 = data.createFactory(FURNACE_BLAST);
@@ -32,15 +32,14 @@ public final class MainExemple {
 
         Set<String> available = Set.of(WATER, LOG_OAK, IRON_ORE, COAL, BARLEY, YEAST);
 
-        List<ProcessRecipe> allRecipes = new ArrayList<>();
-        for (ProcessRecipeRegistryEntry e : data.getProcessRecipeEntriesSnapshot()) {
-            allRecipes.add(e.recipe());
-        }
+        List<MaterialMatcher> availableMatchers = new ArrayList<>();
+        for (String id : available) availableMatchers.add(MaterialMatcher.id(id));
 
-        SimplePlanner planner = new SimplePlanner(allRecipes, data);
+        CraftPlanner planner = new CraftPlanner(data.getRecipeGraph());
 
         // ======= BEST ONLY : display Lanterna =======
-        Plan bestSword = planner.bestOnly(STEEL_SWORD, available, 20, 5000);
+        CraftPlanner.CraftPlan bestSword = planner.planBest(MaterialMatcher.id(STEEL_SWORD), availableMatchers,
+                new CraftPlanner.PlanOptions(20, 5000, true)).orElse(null);
         CraftLanternaViewer.viewBestOnly(bestSword, available);
     }
 }
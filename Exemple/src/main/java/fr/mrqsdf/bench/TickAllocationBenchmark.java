@@ -0,0 +1,139 @@
+package fr.mrqsdf.bench;
+
+import fr.olympus.hephaestus.Hephaestus;
+import fr.olympus.hephaestus.factory.Factory;
+import fr.olympus.hephaestus.materials.MaterialInstance;
+import fr.olympus.hephaestus.processing.MaterialMatcher;
+import fr.olympus.hephaestus.processing.ProcessRecipe;
+import fr.olympus.hephaestus.register.RegisterType;
+import fr.olympus.hephaestus.resources.HephaestusData;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks that the steady-state factory tick does not allocate.
+ * <p>
+ * Creates factories of every registered type, fills them with the inputs of their recipes, warms up,
+ * then measures the bytes allocated by the current thread over many {@link Factory#update(float, HephaestusData)}
+ * calls. Exits with a non-zero status if anything was allocated.
+ */
+public final class TickAllocationBenchmark {
+
+    /**
+     * Copies of each factory type.
+     */
+    private static final int FACTORIES_PER_TYPE = 64;
+    /**
+     * Warm-up ticks (lets the JIT compile the tick path).
+     */
+    private static final int WARMUP_TICKS = 20_000;
+    /**
+     * Measured ticks.
+     */
+    private static final int MEASURED_TICKS = 2_000;
+    /**
+     * Simulated delta time per tick.
+     */
+    private static final float DT = 0.05f;
+
+    private TickAllocationBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        // contexte isolé : chaque exécution part d'un registre vierge
+        Hephaestus context = Hephaestus.create();
+        HephaestusData data = context.data();
+
+        context.register(RegisterType.MATERIAL, "fr.mrqsdf.material");
+        context.register(RegisterType.FACTORY, "fr.mrqsdf.factory");
+        context.register(RegisterType.RECIPE, "fr.mrqsdf.recipe");
+        data.freeze();
+
+        long allocated = measureAllocatedBytes(data, FACTORIES_PER_TYPE, WARMUP_TICKS, MEASURED_TICKS);
+        System.out.println("Allocated over " + MEASURED_TICKS + " ticks: " + allocated + " bytes");
+        if (allocated > 0) {
+            System.err.println("Tick path is not allocation-free.");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Runs the benchmark on already registered data.
+     *
+     * @param data             The registry.
+     * @param factoriesPerType Copies of each factory type.
+     * @param warmupTicks      Ticks run before measuring.
+     * @param measuredTicks    Ticks measured.
+     * @return Bytes allocated by the current thread during the measured ticks.
+     */
+    public static long measureAllocatedBytes(HephaestusData data, int factoriesPerType, int warmupTicks, int measuredTicks) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported()) {
+            throw new IllegalStateException("Thread allocation measurement is not supported by this JVM.");
+        }
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        Factory[] factories = createFilledFactories(data, factoriesPerType);
+        // Outputs are drained in place so the sink never grows during measurement.
+        List<MaterialInstance> sink = new ArrayList<>(factories.length * 4);
+
+        tick(factories, data, warmupTicks, sink);
+
+        long threadId = Thread.currentThread().threadId();
+        // cost of the measurement call itself, subtracted below
+        long probe = threads.getThreadAllocatedBytes(threadId);
+        long before = threads.getThreadAllocatedBytes(threadId);
+        long overhead = before - probe;
+
+        tick(factories, data, measuredTicks, sink);
+        long after = threads.getThreadAllocatedBytes(threadId);
+        return Math.max(0L, after - before - overhead);
+    }
+
+    /**
+     * Creates the factories and inserts the inputs of every recipe they accept.
+     *
+     * @param data             The registry.
+     * @param factoriesPerType Copies of each factory type.
+     * @return The started factories.
+     */
+    private static Factory[] createFilledFactories(HephaestusData data, int factoriesPerType) {
+        List<Factory> out = new ArrayList<>();
+        byte[][][] voxels = new byte[1][1][1];
+        for (String factoryId : data.getFactoryIdsSnapshot()) {
+            for (int n = 0; n < factoriesPerType; n++) {
+                Factory f = data.createFactory(factoryId);
+                for (ProcessRecipe r : f.getRecipes()) {
+                    for (MaterialMatcher in : r.inputs()) {
+                        if (in.getKind() == MaterialMatcher.Kind.ID) {
+                            f.insert(new MaterialInstance(in.getMaterialId(), voxels));
+                        }
+                    }
+                }
+                f.startFactory();
+                out.add(f);
+            }
+        }
+        return out.toArray(new Factory[0]);
+    }
+
+    /**
+     * Ticks every factory the given number of times.
+     *
+     * @param factories The factories.
+     * @param data      The registry.
+     * @param ticks     Number of ticks.
+     * @param sink      Reused output sink.
+     */
+    private static void tick(Factory[] factories, HephaestusData data, int ticks, List<MaterialInstance> sink) {
+        for (int t = 0; t < ticks; t++) {
+            for (Factory f : factories) {
+                f.update(DT, data);
+                f.drainOutputs(sink);
+            }
+            sink.clear();
+        }
+    }
+}
@@ -1,7 +1,9 @@
 package fr.mrqsdf.jfx.game;
 
 import fr.olympus.hephaestus.factory.Factory;
+import fr.olympus.hephaestus.materials.CategoryMask;
 import fr.olympus.hephaestus.materials.MaterialInstance;
+import fr.olympus.hephaestus.planning.CraftPlanner;
 import fr.olympus.hephaestus.processing.MaterialMatcher;
 import fr.olympus.hephaestus.processing.ProcessRecipe;
 import fr.olympus.hephaestus.processing.TimeWindow;
@@ -66,6 +68,24 @@ public record GameContext(HephaestusData data, MaterialInventory inventory) {
         return true;
     }
 
+    /**
+     * Plan a quantity of a material against the current inventory, each unit in stock being used by one branch only.
+     * Plans needing more than the inventory holds are discarded while planning, before any production starts.
+     * The inventory is keyed by material ID; category inputs count the stock of the materials they match.
+     * @param target Desired material
+     * @param quantity Quantity to craft
+     * @return Cheapest plan fitting the inventory and the amounts it takes from it, or empty if none found
+     */
+    public Optional<CraftPlanner.InventoryPlan> planFromInventory(MaterialMatcher target, long quantity) {
+        Map<MaterialMatcher, Long> stock = new HashMap<>();
+        for (String id : inventory.knownMaterialIds()) {
+            int amount = inventory.getAmount(id);
+            if (amount > 0) stock.put(MaterialMatcher.id(id), (long) amount);
+        }
+        CraftPlanner planner = new CraftPlanner(data.getRecipeGraph());
+        return planner.planWithInventory(target, quantity, stock, data, CraftPlanner.PlanOptions.safeDefaults());
+    }
+
     /**
      * Tick the given factory, updating its state and extracting outputs to inventory.
      * @param factory Factory
@@ -147,8 +167,8 @@ public record GameContext(HephaestusData data, MaterialInventory inventory) {
                 yield (id != null && inventory.getAmount(id) > 0) ? id : null;
             }
             case ANY -> firstAnyAvailable();
-            case ANY_OF_CATEGORIES -> firstMatchingAnyOfAvailable(matcher.getCategoryKeys());
-            case ALL_OF_CATEGORIES -> firstMatchingAllOfAvailable(matcher.getCategoryKeys());
+            case ANY_OF_CATEGORIES -> firstMatchingAnyOfAvailable(matcher.getCategoryMask());
+            case ALL_OF_CATEGORIES -> firstMatchingAllOfAvailable(matcher.getCategoryMask());
         };
     }
 
@@ -162,8 +182,8 @@ public record GameContext(HephaestusData data, MaterialInventory inventory) {
         return switch (matcher.getKind()) {
             case ID -> matcher.getMaterialId();
             case ANY -> firstAnyRegistered();
-            case ANY_OF_CATEGORIES -> firstMatchingAnyOfRegistered(matcher.getCategoryKeys());
-            case ALL_OF_CATEGORIES -> firstMatchingAllOfRegistered(matcher.getCategoryKeys());
+            case ANY_OF_CATEGORIES -> firstMatchingAnyOfRegistered(matcher.getCategoryMask());
+            case ALL_OF_CATEGORIES -> firstMatchingAllOfRegistered(matcher.getCategoryMask());
         };
     }
 
@@ -190,61 +210,51 @@ public record GameContext(HephaestusData data, MaterialInventory inventory) {
     }
 
     /** Find first available material ID matching any of the wanted categories.
-     * @param wanted Set of wanted category keys
+     * @param wanted Wanted categories (bitmask)
      * @return Material ID or null if none found
      */
-    private String firstMatchingAnyOfAvailable(Set<String> wanted) {
+    private String firstMatchingAnyOfAvailable(CategoryMask wanted) {
         if (wanted == null || wanted.isEmpty()) return null;
-        for (String id : data.getAllMaterialIds()) {
-            if (inventory.getAmount(id) <= 0) continue;
-            Set<String> keys = data.getMaterialCategoryKeys(id);
-            for (String w : wanted) {
-                if (keys.contains(w)) return id;
-            }
+        BitSet found = data.getMaterialsWithAnyCategory(wanted);
+        for (int i = found.nextSetBit(0); i >= 0; i = found.nextSetBit(i + 1)) {
+            String id = data.getMaterialIdAt(i);
+            if (inventory.getAmount(id) > 0) return id;
         }
         return null;
     }
 
     /** Find first available material ID matching all of the wanted categories.
-     * @param wanted Set of wanted category keys
+     * @param wanted Wanted categories (bitmask)
      * @return Material ID or null if none found
      */
-    private String firstMatchingAllOfAvailable(Set<String> wanted) {
+    private String firstMatchingAllOfAvailable(CategoryMask wanted) {
         if (wanted == null || wanted.isEmpty()) return null;
-        for (String id : data.getAllMaterialIds()) {
-            if (inventory.getAmount(id) <= 0) continue;
-            Set<String> keys = data.getMaterialCategoryKeys(id);
-            if (keys.containsAll(wanted)) return id;
+        BitSet found = data.getMaterialsWithAllCategories(wanted);
+        for (int i = found.nextSetBit(0); i >= 0; i = found.nextSetBit(i + 1)) {
+            String id = data.getMaterialIdAt(i);
+            if (inventory.getAmount(id) > 0) return id;
         }
         return null;
     }
 
     /** Find first registered material ID matching any of the wanted categories.
-     * @param wanted Set of wanted category keys
+     * @param wanted Wanted categories (bitmask)
      * @return Material ID or null if none found
      */
-    private String firstMatchingAnyOfRegistered(Set<String> wanted) {
+    private String firstMatchingAnyOfRegistered(CategoryMask wanted) {
         if (wanted == null || wanted.isEmpty()) return null;
-        for (String id : data.getAllMaterialIds()) {
-            Set<String> keys = data.getMaterialCategoryKeys(id);
-            for (String w : wanted) {
-                if (keys.contains(w)) return id;
-            }
-        }
-        return null;
+        int first = data.getMaterialsWithAnyCategory(wanted).nextSetBit(0);
+        return first < 0 ? null : data.getMaterialIdAt(first);
     }
 
     /** Find first registered material ID matching all of the wanted categories.
-     * @param wanted Set of wanted category keys
+     * @param wanted Wanted categories (bitmask)
      * @return Material ID or null if none found
      */
-    private String firstMatchingAllOfRegistered(Set<String> wanted) {
+    private String firstMatchingAllOfRegistered(CategoryMask wanted) {
         if (wanted == null || wanted.isEmpty()) return null;
-        for (String id : data.getAllMaterialIds()) {
-            Set<String> keys = data.getMaterialCategoryKeys(id);
-            if (keys.containsAll(wanted)) return id;
-        }
-        return null;
+        int first = data.getMaterialsWithAllCategories(wanted).nextSetBit(0);
+        return first < 0 ? null : data.getMaterialIdAt(first);
     }
 
     /** Dummy voxel data for inserted materials.
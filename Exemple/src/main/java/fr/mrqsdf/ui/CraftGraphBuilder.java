@@ -1,7 +1,8 @@
 package fr.mrqsdf.ui;
 
-import fr.mrqsdf.planner.Plan;
-import fr.mrqsdf.planner.PlanNode;
+import fr.olympus.hephaestus.planning.CraftPlanner.CraftPlan;
+import fr.olympus.hephaestus.planning.PlanNode;
+import fr.olympus.hephaestus.processing.MaterialMatcher;
 import fr.olympus.hephaestus.processing.ProcessRecipe;
 import fr.olympus.hephaestus.processing.TimeWindow;
 import fr.olympus.hephaestus.register.RecipeSelector;
@@ -20,30 +21,30 @@ public final class CraftGraphBuilder {
     /**
      * Builds a CraftGraph from the best-only Plan.
      *
-     * @param plan            The production plan to convert.
+     * @param plan            The production plan to convert (null if impossible).
      * @param availableRawIds The set of available raw material IDs.
      * @return The constructed CraftGraph.
      */
-    public static CraftGraph fromBestOnlyPlan(Plan plan, Set<String> availableRawIds) {
+    public static CraftGraph fromBestOnlyPlan(CraftPlan plan, Set<String> availableRawIds) {
         return new CraftGraphBuilder().build(plan, availableRawIds);
     }
 
     /**
      * Builds a CraftGraph from the given Plan.
      *
-     * @param plan      The production plan to convert.
+     * @param plan      The production plan to convert (null if impossible).
      * @param available The set of available raw material IDs.
      * @return The constructed CraftGraph.
      */
-    public CraftGraph build(Plan plan, Set<String> available) {
-        if (plan == null || plan.root == null || !plan.possible) {
+    public CraftGraph build(CraftPlan plan, Set<String> available) {
+        if (plan == null) {
             return new CraftGraph();
         }
 
         CraftGraph g = new CraftGraph();
         IdentityHashMap<PlanNode, MaterialNode> matNodes = new IdentityHashMap<>();
 
-        buildRec(g, matNodes, plan.root, plan.target, available);
+        buildRec(g, matNodes, plan.root(), materialId(plan.root().target()), available);
         return g;
     }
 
@@ -63,23 +64,26 @@ public final class CraftGraphBuilder {
                                   String finalTarget,
                                   Set<String> available) {
 
+        // un sous-plan partagé est déjà dans le graphe, avec sa fabrique et ses arêtes
         MaterialNode mn = matNodes.get(node);
-        if (mn == null) {
-            MaterialNode.Role role = computeRole(node, finalTarget);
-            mn = new MaterialNode("M" + ids.incrementAndGet(), node.target, role);
-            matNodes.put(node, mn);
-            g.addNode(mn);
+        if (mn != null) {
+            return mn;
         }
 
-        if (node.recipe == null) {
+        MaterialNode.Role role = computeRole(node, finalTarget);
+        mn = new MaterialNode("M" + ids.incrementAndGet(), materialId(node.target()), role);
+        matNodes.put(node, mn);
+        g.addNode(mn);
+
+        if (node.isAvailable()) {
             return mn;
         }
 
-        ProcessRecipe r = node.recipe;
+        ProcessRecipe r = node.recipe();
         FactoryNode fn = new FactoryNode("F" + ids.incrementAndGet(), factoryLabel(r));
         g.addNode(fn);
 
-        for (PlanNode child : node.children) {
+        for (PlanNode child : node.inputs()) {
             MaterialNode childMat = buildRec(g, matNodes, child, finalTarget, available);
             g.addEdge(childMat, fn);
         }
@@ -98,17 +102,27 @@ public final class CraftGraphBuilder {
     private MaterialNode.Role computeRole(PlanNode node, String finalTarget) {
         if (node == null) return MaterialNode.Role.INTERMEDIATE;
 
-        if (finalTarget != null && finalTarget.equals(node.target)) {
+        if (finalTarget != null && finalTarget.equals(materialId(node.target()))) {
             return MaterialNode.Role.FINAL;
         }
 
-        if (node.recipe == null) {
+        if (node.isAvailable()) {
             return MaterialNode.Role.RAW;
         }
 
         return MaterialNode.Role.INTERMEDIATE;
     }
 
+    /**
+     * Returns the material ID of a matcher (its key for a category or ANY).
+     *
+     * @param m the MaterialMatcher
+     * @return the material ID
+     */
+    private String materialId(MaterialMatcher m) {
+        return (m.getKind() == MaterialMatcher.Kind.ID) ? m.getMaterialId() : m.key();
+    }
+
     /**
      * Generates a label for a FactoryNode based on the ProcessRecipe.
      *
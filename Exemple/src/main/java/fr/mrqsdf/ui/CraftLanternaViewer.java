@@ -6,7 +6,7 @@ import com.googlecode.lanterna.input.KeyType;
 import com.googlecode.lanterna.screen.Screen;
 import com.googlecode.lanterna.screen.TerminalScreen;
 import com.googlecode.lanterna.terminal.DefaultTerminalFactory;
-import fr.mrqsdf.planner.Plan;
+import fr.olympus.hephaestus.planning.CraftPlanner.CraftPlan;
 
 import java.io.IOException;
 import java.util.Set;
@@ -15,7 +15,7 @@ public final class CraftLanternaViewer {
 
     private CraftLanternaViewer() {}
 
-    public static void viewBestOnly(Plan plan, Set<String> availableRawIds) throws IOException {
+    public static void viewBestOnly(CraftPlan plan, Set<String> availableRawIds) throws IOException {
         CraftGraph graph = CraftGraphBuilder.fromBestOnlyPlan(plan, availableRawIds);
 
         DefaultTerminalFactory tf = new DefaultTerminalFactory()
@@ -8,6 +8,11 @@ import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Main class for the Hephaestus framework.
+ * <p>
+ * A Hephaestus instance is a context owning its own registry ({@link HephaestusData}). {@link #init()} installs
+ * the process-wide default context used by the static convenience methods; {@link #create()} returns independent
+ * contexts (one per shard, or a fresh one per benchmark run), to pass explicitly to the APIs taking a
+ * {@link HephaestusData}. Contexts share no registry state and can be ticked on separate threads.
  */
 public final class Hephaestus {
 
@@ -21,18 +26,30 @@ public final class Hephaestus {
      */
     private final HephaestusData data;
 
+    /**
+     * Constructs a context with an empty registry.
+     */
     private Hephaestus() {
         this.data = new HephaestusData();
     }
 
     /**
-     * Initializes the Hephaestus framework.
+     * Creates an independent context with an empty registry. The default context is not affected.
+     *
+     * @return The new context.
+     */
+    public static Hephaestus create() {
+        return new Hephaestus();
+    }
+
+    /**
+     * Initializes the Hephaestus framework (creates and installs the default context).
      *
      * @return The initialized Hephaestus instance.
      * @throws IllegalStateException if Hephaestus is already initialized.
      */
     public static Hephaestus init() {
-        Hephaestus created = new Hephaestus();
+        Hephaestus created = create();
         if (!INSTANCE.compareAndSet(null, created)) {
             throw new IllegalStateException("Hephaestus is already initialized.");
         }
@@ -40,7 +57,8 @@ public final class Hephaestus {
     }
 
     /**
-     * Automatically registers components based on the specified type and base packages.
+     * Automatically registers components into the default context, based on the specified type and base packages.
+     * Uses the compile-time registration index when present, a ClassGraph scan otherwise.
      *
      * @param type         The type of components to register. see {@link RegisterType}.
      * @param basePackages The base packages to scan for components.
@@ -49,6 +67,34 @@ public final class Hephaestus {
         AutoRegistrar.register(type, basePackages);
     }
 
+    /**
+     * Automatically registers components into this context, based on the specified type and base packages.
+     *
+     * @param type         The type of components to register. see {@link RegisterType}.
+     * @param basePackages The base packages to scan for components.
+     */
+    public void register(RegisterType type, String... basePackages) {
+        AutoRegistrar.register(data, type, basePackages);
+    }
+
+    /**
+     * Retrieves the data storage of this context.
+     *
+     * @return The HephaestusData instance.
+     */
+    public HephaestusData data() {
+        return data;
+    }
+
+    /**
+     * Checks whether the default context is installed.
+     *
+     * @return True if {@link #init()} was called.
+     */
+    public static boolean isInitialized() {
+        return INSTANCE.get() != null;
+    }
+
     /**
      * Retrieves the singleton instance of Hephaestus.
      *
@@ -64,9 +110,10 @@ public final class Hephaestus {
     }
 
     /**
-     * Retrieves the Hephaestus data storage.
+     * Retrieves the Hephaestus data storage of the default context.
      *
      * @return The HephaestusData instance.
+     * @throws IllegalStateException if Hephaestus is not initialized.
      */
     public static HephaestusData getData() {
         return getInstance().data;
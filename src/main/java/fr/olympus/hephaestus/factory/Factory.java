@@ -1,32 +1,64 @@
 package fr.olympus.hephaestus.factory;
 
+import fr.olympus.hephaestus.materials.MaterialContents;
 import fr.olympus.hephaestus.materials.MaterialInstance;
 import fr.olympus.hephaestus.processing.*;
 import fr.olympus.hephaestus.resources.HephaestusData;
 
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 
 /**
  * Represents a factory that processes materials based on defined recipes.
+ * <p>
+ * Recipe selection goes through a {@link RecipeNetwork} (shared by all factories of a type when created by
+ * {@link HephaestusData#createFactory(String)}) and is incremental when every attached recipe
+ * {@link ProcessRecipe#canStartOnContentsOnly() only checks the contents}: {@link ProcessRecipe#canStart} is then
+ * only re-evaluated after the contents, the attached recipes or the session changed, or an event was pushed.
+ * Otherwise an idle factory re-evaluates it on every update.
  */
 public abstract class Factory {
 
+    /**
+     * Counted store backing {@link #contents}.
+     */
+    private final MaterialContents store = new MaterialContents();
+
     /**
      * The current contents (input materials) of the factory.
      */
-    protected final List<MaterialInstance> contents = new ArrayList<>();
+    protected final List<MaterialInstance> contents = store;
     /**
      * The current outputs (produced materials) of the factory.
      */
     protected final List<MaterialInstance> outputs = new ArrayList<>();
     /**
-     * The list of processing recipes available to this factory.
+     * The processing recipes available to this factory (immutable).
+     * <p>
+     * Factories created by {@link HephaestusData#createFactory(String)} all reference the table of their type;
+     * {@link #addRecipes(List)} replaces it with a copy owned by this factory. Private so that it always matches
+     * {@link #network}: subclasses go through {@link #getRecipes()} and {@link #addRecipes(List)}.
+     */
+    private List<ProcessRecipe> recipes = List.of();
+
+    /**
+     * Network selecting the recipes, shared by the factories of a type, or built lazily for this factory's own
+     * recipes after {@link #addRecipes(List)}.
      */
+    private RecipeNetwork network;
 
-    protected final List<ProcessRecipe> recipes = new ArrayList<>();
+    /**
+     * This factory's state in {@link #network}.
+     */
+    private RecipeNetwork.State networkState;
+
+    /**
+     * Whether a recipe selection is needed (contents, recipes or session changed, or an event was pushed, since
+     * the last one). Only trusted when the network {@link RecipeNetwork#canStartOnContentsOnly() allows it}.
+     */
+    private boolean selectionDirty = true;
 
     /**
      * Indicates whether the factory is currently operating.
@@ -34,10 +66,20 @@ public abstract class Factory {
     protected boolean isOperating;
 
     /**
-     * The current processing session, if any.
+     * The current processing session, if any (always {@link #sessionState} or null).
      */
     private ProcessSession session;
 
+    /**
+     * Session object reused by every session of this factory.
+     */
+    private final ProcessSession sessionState = new ProcessSession();
+
+    /**
+     * Process context reused by every callback (both lists are owned by this factory).
+     */
+    private final ProcessContext context = new ProcessContext(contents, outputs);
+
     // --- Registry meta (set by HephaestusData.createFactory) ---*
     /**
      * The unique identifier for this factory in the registry.
@@ -54,12 +96,47 @@ public abstract class Factory {
      */
     private int registryLevel;
 
+    /**
+     * The world currently owning this factory, if any (managed by FactoryWorld).
+     */
+    volatile FactoryWorld world;
+
+    /**
+     * Whether this factory is waiting in a {@link FactoryPool} (managed by the pool).
+     */
+    boolean pooled;
+
+    /**
+     * Thread updating this factory in its world's tick, if any (managed by FactoryWorld).
+     */
+    Thread updater;
+
+    /**
+     * Whether {@link #wake()} was called by {@link #updater} during the update (managed by FactoryWorld).
+     */
+    boolean wokeWhileUpdating;
+
     /**
      * Constructs a new Factory instance.
      */
     protected Factory() {
         this.isOperating = false;
         this.session = null;
+        store.setListener(new MaterialContents.Listener() {
+            @Override
+            public void onAdded(String materialId, int added, int newCount) {
+                if (newCount == added && networkState != null) networkState.presenceChanged(materialId);
+                selectionDirty = true;
+                sessionState.inputsStale = true;
+            }
+
+            @Override
+            public void onRemoved(String materialId, int removed, int newCount) {
+                if (newCount == 0 && networkState != null) networkState.presenceChanged(materialId);
+                selectionDirty = true;
+                sessionState.inputsStale = true;
+            }
+        });
     }
 
     /**
@@ -95,6 +172,7 @@ public abstract class Factory {
      */
     public void startFactory() {
         isOperating = true;
+        wake();
     }
 
     /**
@@ -103,21 +181,47 @@ public abstract class Factory {
     public void stopFactory() {
         isOperating = false;
         session = null;
+        selectionDirty = true;
     }
 
     /**
      * Adds a list of processing recipes to the factory.
+     * <p>
+     * The factory stops sharing the recipe table of its type: it gets its own copy (and its own network,
+     * built at the next selection).
      *
      * @param list The list of ProcessRecipe to add.
      */
     public void addRecipes(List<ProcessRecipe> list) {
-        if (list != null) recipes.addAll(list);
+        if (list == null || list.isEmpty()) return;
+        ProcessRecipe[] own = recipes.toArray(new ProcessRecipe[recipes.size() + list.size()]);
+        for (int i = 0; i < list.size(); i++) own[recipes.size() + i] = list.get(i);
+        recipes = List.of(own);
+        network = null;
+        networkState = null;
+        selectionDirty = true;
+        wake();
+    }
+
+    /**
+     * Replaces the recipes of the factory with those of a shared network (used by
+     * {@link HephaestusData#createFactory(String)} so factories of a type share one network and one recipe table).
+     *
+     * @param network The recipe network.
+     */
+    public final void setRecipeNetwork(RecipeNetwork network) {
+        if (network == null) throw new IllegalArgumentException("network cannot be null.");
+        this.recipes = network.recipes();
+        this.network = network;
+        this.networkState = network.newState(store);
+        selectionDirty = true;
+        wake();
     }
 
     /**
      * Gets the list of processing recipes available to the factory.
      *
-     * @return The list of ProcessRecipe.
+     * @return Unmodifiable ProcessRecipe list (use {@link #addRecipes(List)} to add more).
      */
     public List<ProcessRecipe> getRecipes() {
         return recipes;
@@ -126,14 +230,29 @@ public abstract class Factory {
     /**
      * Extracts and clears all output materials from the factory.
      *
-     * @return A list of MaterialInstance representing the outputs.
+     * @return A list of MaterialInstance representing the outputs (an immutable empty list if there is none).
      */
     public List<MaterialInstance> extractAllOutputs() {
+        if (outputs.isEmpty()) return List.of();
         List<MaterialInstance> out = new ArrayList<>(outputs);
         outputs.clear();
         return out;
     }
 
+    /**
+     * Moves all output materials into the given collection, without allocating.
+     *
+     * @param sink The collection receiving the outputs.
+     * @return The number of outputs moved.
+     */
+    public int drainOutputs(Collection<? super MaterialInstance> sink) {
+        int n = outputs.size();
+        if (n == 0) return 0;
+        for (int i = 0; i < n; i++) sink.add(outputs.get(i));
+        outputs.clear();
+        return n;
+    }
+
     /**
      * Inserts a material instance into the factory's contents.
      *
@@ -141,6 +260,18 @@ public abstract class Factory {
      */
     public void insert(MaterialInstance mat) {
         contents.add(mat);
+        wake();
+    }
+
+    /**
+     * Inserts several units of a material sharing the same instance (stored as a single stack entry).
+     *
+     * @param mat    The MaterialInstance to insert.
+     * @param amount The number of units (must be positive).
+     */
+    public void insert(MaterialInstance mat, int amount) {
+        store.add(mat, amount);
+        wake();
     }
 
     /**
@@ -152,18 +283,19 @@ public abstract class Factory {
     public void pushEvent(FactoryEvent event, HephaestusData data) {
         if (!isOperating) return;
 
+        // l'événement peut changer ce que canStart regarde
+        selectionDirty = true;
         ensureSession(data);
-        if (session == null) return;
+        ProcessSession s = session;
+        if (s == null) return;
 
-        ProcessContext ctx = new ProcessContext(contents, outputs);
-        ProcessingPhase phase = session.phase();
-        session.recipe.onEvent(ctx, data, event, session.elapsed, phase);
+        ProcessingPhase phase = s.phase();
+        s.recipe.onEvent(context, data, event, s.elapsed, phase);
 
-        if (session.recipe.tryComplete(ctx, data, session.elapsed, phase)) {
-            List<MaterialMatcher> outputs = List.copyOf(session.recipe.outputs());
-            session = null;
-            processFinished(outputs);
+        if (s.recipe.tryComplete(context, data, s.elapsed, phase)) {
+            finishSession(s, data);
         }
+        wake();
     }
 
     /**
@@ -176,28 +308,49 @@ public abstract class Factory {
         if (!isOperating) return;
 
         ensureSession(data);
-        if (session == null) return;
+        ProcessSession s = session;
+        if (s == null) return;
 
-        session.elapsed += dt;
+        s.elapsed += dt;
 
-        TimeWindow w = session.recipe.timeWindowOrNull();
-        ProcessingPhase phase = session.phase();
-
-        ProcessContext ctx = new ProcessContext(contents, outputs);
+        TimeWindow w = s.recipe.timeWindowOrNull();
+        ProcessingPhase phase = s.phase();
 
         if (w != null) {
-            session.recipe.onTick(ctx, data, session.elapsed, phase);
+            s.recipe.onTick(context, data, s.elapsed, phase);
 
             if (phase == ProcessingPhase.AFTER_MAX) {
-                session.recipe.onOverProcessed(ctx, data, session.elapsed);
+                s.recipe.onOverProcessed(context, data, s.elapsed);
             }
         }
 
-        if (session.recipe.tryComplete(ctx, data, session.elapsed, phase)) {
-            List<MaterialMatcher> outputs = List.copyOf(session.recipe.outputs());
-            session = null;
-            processFinished(outputs);
+        if (s.recipe.tryComplete(context, data, s.elapsed, phase)) {
+            finishSession(s, data);
+            // the next update may start a new session from the remaining contents
+            wake();
+        }
+    }
+
+    /**
+     * Ends the given session and notifies {@link #processFinished(List)}.
+     * <p>
+     * If the recipe {@link ProcessRecipe#consumesInputs() consumes its inputs}, the contents chosen when the session
+     * started are removed first; they are chosen again if the contents changed in between (and nothing is removed
+     * if the inputs are no longer there).
+     *
+     * @param s    The completed session.
+     * @param data The HephaestusData context.
+     */
+    private void finishSession(ProcessSession s, HephaestusData data) {
+        if (s.recipe.consumesInputs()) {
+            int[] taken = s.inputsStale ? s.recipe.selectInputs(context, data) : s.inputs;
+            if (taken != null) context.removeContentsAt(taken);
         }
+        // no copy for immutable output lists (e.g. DefaultProcessRecipe)
+        List<MaterialMatcher> finished = List.copyOf(s.recipe.outputs());
+        session = null;
+        selectionDirty = true;
+        processFinished(finished);
     }
 
     /**
@@ -206,23 +359,90 @@ public abstract class Factory {
      * @param data The HephaestusData context.
      */
     private void ensureSession(HephaestusData data) {
-        if (session != null) return;
+        if (session != null || !selectionDirty && network.canStartOnContentsOnly()) return;
 
-        ProcessContext ctx = new ProcessContext(contents, outputs);
-
-        ProcessRecipe best = recipes.stream()
-                .filter(r -> r.canStart(ctx, data))
-                .max(Comparator
-                        .comparingInt(ProcessRecipe::priority)
-                        .thenComparingInt(ProcessRecipe::specificityScore)
-                        .thenComparingInt(ProcessRecipe::inputCount))
-                .orElse(null);
+        if (network == null) {
+            network = new RecipeNetwork(recipes);
+            networkState = network.newState(store);
+        }
 
+        selectionDirty = false;
+        ProcessRecipe best = networkState.selectBest(context, store, data);
         if (best != null) {
-            session = new ProcessSession(best);
+            session = sessionState.start(best);
+            if (best.consumesInputs()) {
+                // choisies une fois ; retirées telles quelles à la fin si le contenu n'a pas bougé
+                sessionState.inputs = best.selectInputs(context, data);
+                sessionState.inputsStale = sessionState.inputs == null;
+            }
         }
     }
 
+    /**
+     * Returns how long this factory can sleep after an update without missing anything.
+     * Contents changes, events and state changes wake it up earlier through {@link #wake()}.
+     *
+     * A session whose recipe {@link ProcessRecipe#requiresTick() requires ticks} is never parked, with or without
+     * a time window, nor is an idle factory whose recipes do not all
+     * {@link ProcessRecipe#canStartOnContentsOnly() only check the contents}.
+     *
+     * @return 0 if it must be updated on the next tick, a positive number of seconds until
+     * the next time window boundary, or {@link Float#POSITIVE_INFINITY} until woken up.
+     */
+    final float sleepSeconds() {
+        if (!isOperating) return Float.POSITIVE_INFINITY;
+        ProcessSession s = session;
+        // sans session, des recettes qui regardent plus que le contenu sont redemandées à chaque tick
+        if (s == null) return network == null || network.canStartOnContentsOnly() ? Float.POSITIVE_INFINITY : 0f;
+
+        // un callback par tick (ou une fin sur le temps écoulé) passe avant la fenêtre
+        if (s.recipe.requiresTick()) return 0f;
+        TimeWindow w = s.recipe.timeWindowOrNull();
+        if (w == null) return Float.POSITIVE_INFINITY;
+        return w.secondsUntilNextBoundary(s.elapsed);
+    }
+
+    /**
+     * Notifies the owning world (if any) that this factory must be updated on the next tick.
+     */
+    protected final void wake() {
+        // pendant sa propre mise à jour : le monde le garde actif, sans passer par la file des réveils
+        if (updater == Thread.currentThread()) {
+            wokeWhileUpdating = true;
+            return;
+        }
+        FactoryWorld w = world;
+        if (w != null) w.wake(this);
+    }
+
+    /**
+     * Brings the factory back to the state of a newly created one (used by {@link FactoryPool}): empty contents
+     * and outputs, no session, stopped, and the shared recipe table of its type.
+     *
+     * @param network The recipe network of the factory type.
+     * @throws IllegalStateException if the factory still belongs to a world.
+     */
+    final void reset(RecipeNetwork network) {
+        if (world != null) {
+            throw new IllegalStateException("Factory still belongs to a world: " + registryId);
+        }
+        store.clear();
+        outputs.clear();
+        session = null;
+        isOperating = false;
+        selectionDirty = true;
+        // l'état du réseau suit le vidage via le listener ; un réseau propre (addRecipes) est abandonné
+        if (this.network != network) setRecipeNetwork(network);
+        onReset();
+    }
+
+    /**
+     * Called when the factory is recycled by a {@link FactoryPool}, after the library state was reset.
+     * Subclasses keeping their own state clear it here.
+     */
+    protected void onReset() {
+    }
+
     /**
      * Called by the library (HephaestusData) at the time of creating the runtime instance.
      *
@@ -245,7 +465,8 @@ public abstract class Factory {
      * @param recipe The ProcessRecipe to set for the session.
      */
     public final void setSession(ProcessRecipe recipe) {
-        this.session = new ProcessSession(recipe);
+        this.session = sessionState.start(recipe);
+        wake();
     }
 
     /**
@@ -272,7 +493,7 @@ public abstract class Factory {
         /**
          * The processing recipe associated with the session.
          */
-        final ProcessRecipe recipe;
+        ProcessRecipe recipe;
 
         /**
          * The elapsed time since the session started.
@@ -280,11 +501,26 @@ public abstract class Factory {
         float elapsed;
 
         /**
-         * Constructs a ProcessSession with the specified recipe.
+         * Content indices chosen for the inputs when the session started (see {@link ProcessRecipe#selectInputs}).
+         */
+        int[] inputs;
+
+        /**
+         * Whether {@link #inputs} is missing or the contents changed since it was chosen.
+         */
+        boolean inputsStale;
+
+        /**
+         * (Re)starts the session with the specified recipe.
+         *
+         * @return this session.
          */
-        ProcessSession(ProcessRecipe recipe) {
+        ProcessSession start(ProcessRecipe recipe) {
             this.recipe = recipe;
             this.elapsed = 0f;
+            this.inputs = null;
+            this.inputsStale = true;
+            return this;
         }
 
         /**
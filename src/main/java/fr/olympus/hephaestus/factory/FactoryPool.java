@@ -0,0 +1,151 @@
+package fr.olympus.hephaestus.factory;
+
+import fr.olympus.hephaestus.resources.HephaestusData;
+
+import java.util.ArrayDeque;
+
+/**
+ * Bounded pool of recycled factories of one registry ID.
+ * <p>
+ * {@link #acquire()} returns a pooled factory when there is one (a hit) and creates one through
+ * {@link HephaestusData#createFactory(String)} otherwise (a miss). {@link #release(Factory)} resets the factory
+ * (contents, outputs, session, operating state, recipe table: see {@link Factory#onReset()}) and keeps it
+ * unless the pool is full. A pooled factory is indistinguishable from a new one.
+ * <p>
+ * A factory must leave its {@link FactoryWorld} before being released; since removals take effect at the next
+ * tick, release factories removed from a world after that tick. The pool is thread-safe.
+ */
+public final class FactoryPool {
+
+    /**
+     * The registry.
+     */
+    private final HephaestusData data;
+
+    /**
+     * The registry ID of the pooled factories.
+     */
+    private final String factoryId;
+
+    /**
+     * Maximum number of pooled factories.
+     */
+    private final int capacity;
+
+    /**
+     * The pooled factories (guarded by this pool).
+     */
+    private final ArrayDeque<Factory> free = new ArrayDeque<>();
+
+    /**
+     * Acquisitions served from the pool / by a new factory (guarded by this pool).
+     */
+    private long hits, misses;
+
+    /**
+     * Constructs a FactoryPool.
+     *
+     * @param data      The registry creating the factories.
+     * @param factoryId The registry ID of the pooled factories.
+     * @param capacity  Maximum number of pooled factories.
+     * @throws IllegalArgumentException if data is null, the factory ID is unknown or capacity is negative.
+     */
+    public FactoryPool(HephaestusData data, String factoryId, int capacity) {
+        if (data == null) throw new IllegalArgumentException("data cannot be null.");
+        if (capacity < 0) throw new IllegalArgumentException("capacity must be >= 0.");
+        data.getFactoryRegistryEntryById(factoryId);
+        this.data = data;
+        this.factoryId = factoryId;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Returns a factory of this pool's type: a recycled one if available, a new one otherwise.
+     *
+     * @return The factory (stopped, empty).
+     */
+    public Factory acquire() {
+        synchronized (this) {
+            Factory f = free.pollLast();
+            if (f != null) {
+                f.pooled = false;
+                hits++;
+                return f;
+            }
+            misses++;
+        }
+        return data.createFactory(factoryId);
+    }
+
+    /**
+     * Resets a factory and returns it to the pool.
+     *
+     * @param factory The factory (must have been created for this pool's registry ID).
+     * @return True if the factory was pooled, false if the pool is full (the factory is then dropped).
+     * @throws IllegalArgumentException if factory is null or of another registry ID.
+     * @throws IllegalStateException    if the factory still belongs to a world or is already pooled.
+     */
+    public boolean release(Factory factory) {
+        if (factory == null) throw new IllegalArgumentException("factory cannot be null.");
+        if (!factoryId.equals(factory.getRegistryId())) {
+            throw new IllegalArgumentException("Factory " + factory.getRegistryId() + " released to pool " + factoryId);
+        }
+        synchronized (this) {
+            if (factory.pooled) throw new IllegalStateException("Factory already released: " + factoryId);
+            if (free.size() >= capacity) return false;
+        }
+        factory.reset(data.getRecipeNetwork(factoryId));
+        synchronized (this) {
+            if (factory.pooled) throw new IllegalStateException("Factory already released: " + factoryId);
+            if (free.size() >= capacity) return false;
+            factory.pooled = true;
+            free.addLast(factory);
+            return true;
+        }
+    }
+
+    /**
+     * Returns the registry ID of the pooled factories.
+     *
+     * @return The factory ID.
+     */
+    public String factoryId() {
+        return factoryId;
+    }
+
+    /**
+     * Returns the maximum number of pooled factories.
+     *
+     * @return The capacity.
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of factories currently pooled.
+     *
+     * @return The pool size.
+     */
+    public synchronized int size() {
+        return free.size();
+    }
+
+    /**
+     * Returns the number of acquisitions served by a pooled factory.
+     *
+     * @return The hit count.
+     */
+    public synchronized long hits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of acquisitions that had to create a factory.
+     *
+     * @return The miss count.
+     */
+    public synchronized long misses() {
+        return misses;
+    }
+}
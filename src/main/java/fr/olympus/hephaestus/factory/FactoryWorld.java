@@ -0,0 +1,568 @@
+package fr.olympus.hephaestus.factory;
+
+import fr.olympus.hephaestus.resources.HephaestusData;
+
+import java.io.Serial;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+/**
+ * Owns a fleet of factories and ticks them across all cores.
+ * <p>
+ * Each tick splits the active factories into disjoint index ranges processed by a fork-join pool,
+ * so a factory is only ever updated by one worker during a given tick.
+ * Adding or removing factories is thread-safe and takes effect at the start of the next tick, in call order.
+ * <p>
+ * Factories that have nothing to do are parked: idle ones (no session) sleep until their contents change
+ * or an event arrives, and sessions that do not need per-tick callbacks sleep in a timer wheel until their
+ * next time window boundary. A world of mostly idle factories therefore costs CPU proportional to the active ones.
+ * <p>
+ * Steady-state ticks do not allocate on the ticking thread: the task tree is built once, and a factory woken up by
+ * its own update stays active without queueing a wake-up. The exception is {@link ForkJoinPool#invoke}: when a tick
+ * is split across the pool, the JDK allocates a small wait node for the ticking thread (a few dozen bytes per tick,
+ * whatever the fleet size).
+ */
+public final class FactoryWorld implements AutoCloseable {
+
+    /**
+     * Minimum number of factories updated by a single fork-join leaf task.
+     */
+    private static final int MIN_GRAIN = 64;
+
+    /**
+     * Default duration of one timer wheel tick in seconds.
+     */
+    public static final double DEFAULT_WHEEL_RESOLUTION = 0.05;
+
+    /**
+     * Data context passed to every factory update.
+     */
+    private final HephaestusData data;
+
+    /**
+     * Pool used to run the parallel ticks.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * Whether this world created (and must shut down) its pool.
+     */
+    private final boolean ownsPool;
+
+    /**
+     * Additions and removals waiting for the next tick, in call order.
+     */
+    private final Queue<Membership> pendingMembership = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Factories that asked to be woken up at the next tick.
+     */
+    private final Queue<Factory> pendingWakes = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Fleet membership: factory to its slot.
+     */
+    private final IdentityHashMap<Factory, Slot> slots = new IdentityHashMap<>();
+
+    /**
+     * Factories updated at the next tick, densely packed.
+     */
+    private final List<Slot> active = new ArrayList<>();
+
+    /**
+     * Factories sleeping until a time window boundary.
+     */
+    private final TimerWheel<Slot> wheel;
+
+    /**
+     * Simulated time in seconds.
+     */
+    private double now;
+
+    /**
+     * Delta time of the tick in progress (read by the tick tasks).
+     */
+    private float tickDt;
+
+    /**
+     * Wheel expiry callback (kept to avoid allocating a method reference per tick).
+     */
+    private final Consumer<Slot> activator = this::activate;
+
+    /**
+     * Number of factories updated by the tick in progress, and leaf size (read by the tick tasks).
+     */
+    private int tickCount, tickGrain;
+
+    /**
+     * Reusable fork-join task tree over slices of the active list, built once: the slices are resized to the
+     * active count at each tick, so neither a change of the active count nor a steady-state tick allocates tasks.
+     */
+    private TickTask rootTask;
+
+    // --- statistics (written by the ticking thread only) ---
+    /**
+     * Number of factories in the fleet, published at the end of each tick.
+     */
+    private volatile int fleetSize;
+    /**
+     * Number of completed ticks.
+     */
+    private volatile long ticks;
+    /**
+     * Wall time of the last tick in nanoseconds.
+     */
+    private volatile long lastTickNanos;
+    /**
+     * Accumulated wall time of all ticks in nanoseconds.
+     */
+    private volatile long totalTickNanos;
+    /**
+     * Start time ({@link System#nanoTime()}) of the first and of the last tick since the stats were reset.
+     */
+    private volatile long firstTickStart, lastTickStart;
+    /**
+     * Number of factories updated during the last tick.
+     */
+    private volatile int lastActiveCount;
+
+    /**
+     * Creates a world ticking on the common fork-join pool.
+     *
+     * @param data The HephaestusData context passed to each factory update.
+     */
+    public FactoryWorld(HephaestusData data) {
+        this(data, ForkJoinPool.commonPool(), false, DEFAULT_WHEEL_RESOLUTION);
+    }
+
+    /**
+     * Creates a world ticking on a dedicated pool.
+     *
+     * @param data        The HephaestusData context passed to each factory update.
+     * @param parallelism Number of worker threads.
+     * @throws IllegalArgumentException if parallelism is not positive.
+     */
+    public FactoryWorld(HephaestusData data, int parallelism) {
+        this(data, newPool(parallelism), true, DEFAULT_WHEEL_RESOLUTION);
+    }
+
+    /**
+     * Creates a world ticking on a dedicated pool with a custom timer wheel resolution.
+     *
+     * @param data            The HephaestusData context passed to each factory update.
+     * @param parallelism     Number of worker threads.
+     * @param wheelResolution Duration of one timer wheel tick in seconds (sleeping factories wake up on this grid).
+     * @throws IllegalArgumentException if parallelism or wheelResolution is not positive.
+     */
+    public FactoryWorld(HephaestusData data, int parallelism, double wheelResolution) {
+        this(data, newPool(parallelism), true, wheelResolution);
+    }
+
+    private FactoryWorld(HephaestusData data, ForkJoinPool pool, boolean ownsPool, double wheelResolution) {
+        this.data = Objects.requireNonNull(data, "data");
+        this.pool = pool;
+        this.ownsPool = ownsPool;
+        this.wheel = new TimerWheel<>(wheelResolution);
+    }
+
+    /**
+     * Creates a dedicated pool.
+     *
+     * @param parallelism Number of worker threads.
+     * @return The pool.
+     */
+    private static ForkJoinPool newPool(int parallelism) {
+        if (parallelism <= 0) throw new IllegalArgumentException("parallelism must be > 0.");
+        return new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Adds a factory to the fleet. Takes effect at the next tick.
+     *
+     * @param factory The factory to add.
+     * @throws IllegalArgumentException if factory is null.
+     * @throws IllegalStateException    if the factory already belongs to another world.
+     */
+    public void add(Factory factory) {
+        if (factory == null) throw new IllegalArgumentException("factory cannot be null.");
+        synchronized (factory) {
+            if (factory.world != null && factory.world != this) {
+                throw new IllegalStateException("Factory already belongs to another world: " + factory.getRegistryId());
+            }
+            factory.world = this;
+        }
+        pendingMembership.add(new Membership(factory, true));
+    }
+
+    /**
+     * Removes a factory from the fleet. Takes effect at the next tick.
+     *
+     * @param factory The factory to remove.
+     */
+    public void remove(Factory factory) {
+        if (factory != null) pendingMembership.add(new Membership(factory, false));
+    }
+
+    /**
+     * Asks for the given factory to be updated at the next tick (called by {@link Factory#wake()}).
+     *
+     * @param factory The factory to wake up.
+     */
+    void wake(Factory factory) {
+        pendingWakes.add(factory);
+    }
+
+    /**
+     * Returns the number of factories in the fleet (as of the last tick).
+     *
+     * @return The fleet size.
+     */
+    public int size() {
+        return fleetSize;
+    }
+
+    /**
+     * Returns the data context used by this world.
+     *
+     * @return The HephaestusData instance.
+     */
+    public HephaestusData getData() {
+        return data;
+    }
+
+    /**
+     * Advances the fleet by {@code dt} seconds. Only awake factories are updated; a factory woken up after
+     * sleeping inside a session receives the whole time it slept as its delta.
+     * Must not be called concurrently from several threads.
+     *
+     * @param dt The delta time since the last tick.
+     */
+    public synchronized void tick(float dt) {
+        long start = System.nanoTime();
+
+        now += dt;
+        tickDt = dt;
+        applyPending(dt);
+        wheel.advance(wheel.tickAtOrAfter(now), activator);
+
+        int n = active.size();
+        if (n > 0) {
+            int slices = pool.getParallelism() * 8;
+            int grain = Math.max(MIN_GRAIN, n / slices);
+            if (n <= grain) {
+                updateRange(0, n, dt);
+            } else {
+                tickCount = n;
+                tickGrain = grain;
+                if (rootTask == null) {
+                    rootTask = new TickTask(0, slices);
+                } else {
+                    rootTask.reset();
+                }
+                pool.invoke(rootTask);
+            }
+            park(dt);
+        }
+
+        long elapsed = System.nanoTime() - start;
+        fleetSize = slots.size();
+        lastActiveCount = n;
+        lastTickNanos = elapsed;
+        totalTickNanos += elapsed;
+        if (ticks == 0) firstTickStart = start;
+        lastTickStart = start;
+        ticks++;
+    }
+
+    /**
+     * Returns a snapshot of the tick statistics.
+     *
+     * @return The current TickStats.
+     */
+    public TickStats stats() {
+        long t = ticks;
+        long total = totalTickNanos;
+        double avg = t == 0 ? 0d : (double) total / t;
+        // cadence réelle : ticks démarrés entre le premier et le dernier, pauses de l'appelant comprises
+        long span = lastTickStart - firstTickStart;
+        double tps = t < 2 || span <= 0 ? 0d : (t - 1) * 1_000_000_000d / span;
+        double sustainable = avg == 0d ? 0d : 1_000_000_000d / avg;
+        return new TickStats(t, lastTickNanos, avg, tps, sustainable, fleetSize, lastActiveCount);
+    }
+
+    /**
+     * Resets the tick statistics.
+     */
+    public synchronized void resetStats() {
+        ticks = 0;
+        lastTickNanos = 0;
+        totalTickNanos = 0;
+        firstTickStart = 0;
+        lastTickStart = 0;
+    }
+
+    /**
+     * Shuts down the dedicated pool, if this world owns one.
+     */
+    @Override
+    public void close() {
+        if (ownsPool) pool.shutdown();
+    }
+
+    /**
+     * Applies queued additions and removals (in call order), then wake-ups.
+     *
+     * @param dt The delta time of the current tick.
+     */
+    private void applyPending(float dt) {
+        Membership op;
+        while ((op = pendingMembership.poll()) != null) {
+            if (op.add) join(op.factory, dt);
+            else leave(op.factory);
+        }
+        Factory f;
+        while ((f = pendingWakes.poll()) != null) {
+            Slot slot = slots.get(f);
+            if (slot == null || slot.activeIndex >= 0) continue;
+            wheel.cancel(slot);
+            activate(slot);
+        }
+    }
+
+    /**
+     * Adds a factory to the fleet, if it is not already in it.
+     *
+     * @param f  The factory.
+     * @param dt The delta time of the current tick.
+     */
+    private void join(Factory f, float dt) {
+        if (slots.containsKey(f)) return;
+        synchronized (f) {
+            f.world = this;
+        }
+        Slot slot = new Slot(f);
+        slot.lastUpdate = now - dt;
+        slots.put(f, slot);
+        activate(slot);
+    }
+
+    /**
+     * Removes a factory from the fleet and releases it from this world.
+     *
+     * @param f The factory.
+     */
+    private void leave(Factory f) {
+        Slot slot = slots.remove(f);
+        // retiré avant d'avoir rejoint (ajout annulé) : libérer quand même
+        synchronized (f) {
+            if (f.world == this) f.world = null;
+        }
+        if (slot == null) return;
+        if (slot.activeIndex >= 0) {
+            removeActiveAt(slot.activeIndex);
+        } else {
+            wheel.cancel(slot);
+        }
+    }
+
+    /**
+     * Moves a slot to the active list.
+     *
+     * @param slot The slot to activate.
+     */
+    private void activate(Slot slot) {
+        if (slot.activeIndex >= 0) return;
+        slot.activeIndex = active.size();
+        active.add(slot);
+    }
+
+    /**
+     * Removes the active slot at the given index (swap-remove).
+     *
+     * @param idx Index in the active list.
+     */
+    private void removeActiveAt(int idx) {
+        Slot removed = active.get(idx);
+        Slot moved = active.remove(active.size() - 1);
+        if (moved != removed) {
+            active.set(idx, moved);
+            moved.activeIndex = idx;
+        }
+        removed.activeIndex = -1;
+    }
+
+    /**
+     * Parks the active factories that reported they can sleep longer than one tick.
+     *
+     * @param dt The delta time of the current tick.
+     */
+    private void park(float dt) {
+        for (int i = active.size() - 1; i >= 0; i--) {
+            Slot slot = active.get(i);
+            float sleep = slot.sleep;
+            if (sleep <= dt) continue;
+
+            removeActiveAt(i);
+            slot.sleptInSession = slot.factory.getSession();
+            if (sleep != Float.POSITIVE_INFINITY) {
+                wheel.schedule(slot, wheel.tickAtOrAfter(now + sleep));
+            }
+        }
+    }
+
+    /**
+     * Updates the active factories in [from, to).
+     *
+     * @param from First index (inclusive).
+     * @param to   Last index (exclusive).
+     * @param dt   The delta time.
+     */
+    private void updateRange(int from, int to, float dt) {
+        Thread self = Thread.currentThread();
+        for (int i = from; i < to; i++) {
+            Slot slot = active.get(i);
+            Factory f = slot.factory;
+            // a factory parked without a session has nothing to catch up on
+            float delta = slot.sleptInSession ? (float) (now - slot.lastUpdate) : dt;
+            f.updater = self;
+            f.update(delta, data);
+            f.updater = null;
+            slot.lastUpdate = now;
+            slot.sleptInSession = false;
+            // woken by its own update (e.g. a session finished): stays active, no queued wake-up to allocate
+            slot.sleep = f.wokeWhileUpdating ? 0f : f.sleepSeconds();
+            f.wokeWhileUpdating = false;
+        }
+    }
+
+    /**
+     * Tick statistics.
+     *
+     * @param ticks                     number of completed ticks
+     * @param lastTickNanos             wall time of the last tick in nanoseconds
+     * @param averageTickNanos          average wall time per tick in nanoseconds
+     * @param ticksPerSecond            measured tick rate: wall-clock time between the starts of the first and
+     *                                  the last tick (0 before the second tick)
+     * @param sustainableTicksPerSecond tick rate the world could sustain, derived from the average tick time
+     * @param factoryCount              number of factories in the fleet
+     * @param activeCount               number of factories updated during the last tick
+     */
+    public record TickStats(long ticks, long lastTickNanos, double averageTickNanos, double ticksPerSecond,
+                            double sustainableTicksPerSecond, int factoryCount, int activeCount) {
+    }
+
+    /**
+     * A queued addition or removal.
+     *
+     * @param factory the factory
+     * @param add     true to add it, false to remove it
+     */
+    private record Membership(Factory factory, boolean add) {
+    }
+
+    /**
+     * Per-factory scheduling state.
+     */
+    private static final class Slot extends TimerWheel.Node {
+
+        /**
+         * The scheduled factory.
+         */
+        final Factory factory;
+
+        /**
+         * Index in the active list, or -1 while sleeping.
+         */
+        int activeIndex = -1;
+
+        /**
+         * Simulated time of the last update.
+         */
+        double lastUpdate;
+
+        /**
+         * Sleep hint reported after the last update.
+         */
+        float sleep;
+
+        /**
+         * Whether the factory went to sleep with a running session (and must catch up on the slept time).
+         */
+        boolean sleptInSession;
+
+        /**
+         * Constructs a Slot.
+         */
+        Slot(Factory factory) {
+            this.factory = factory;
+        }
+    }
+
+    /**
+     * Fork-join task over a range of slices of the active list, split in halves down to one slice.
+     * Slice {@code i} of {@code s} covers the factories {@code [i * n / s, (i + 1) * n / s)} of the {@code n} active
+     * ones, so the tree does not depend on the active count: it is built once and reinitialized at each tick.
+     * A task whose range holds no more factories than the grain size updates them without splitting further.
+     */
+    private final class TickTask extends RecursiveAction {
+
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Slice bounds [lo, hi).
+         */
+        private final int lo, hi;
+
+        /**
+         * Sub-tasks (null for single slices).
+         */
+        private final TickTask left, right;
+
+        /**
+         * Constructs a TickTask over the slices [lo, hi), with its sub-tasks.
+         */
+        TickTask(int lo, int hi) {
+            this.lo = lo;
+            this.hi = hi;
+            if (hi - lo <= 1) {
+                this.left = null;
+                this.right = null;
+            } else {
+                int mid = (lo + hi) >>> 1;
+                this.left = new TickTask(lo, mid);
+                this.right = new TickTask(mid, hi);
+            }
+        }
+
+        /**
+         * Reinitializes the tree so it can be invoked again.
+         */
+        void reset() {
+            reinitialize();
+            if (left != null) {
+                left.reset();
+                right.reset();
+            }
+        }
+
+        @Override
+        protected void compute() {
+            int slices = rootTask.hi;
+            int from = (int) ((long) lo * tickCount / slices);
+            int to = (int) ((long) hi * tickCount / slices);
+            if (left == null || to - from <= tickGrain) {
+                updateRange(from, to, tickDt);
+                return;
+            }
+            invokeAll(left, right);
+        }
+    }
+}
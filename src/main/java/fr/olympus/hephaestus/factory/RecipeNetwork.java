@@ -0,0 +1,386 @@
+package fr.olympus.hephaestus.factory;
+
+import fr.olympus.hephaestus.materials.MaterialContents;
+import fr.olympus.hephaestus.processing.DefaultProcessRecipe;
+import fr.olympus.hephaestus.processing.MaterialMatcher;
+import fr.olympus.hephaestus.processing.ProcessContext;
+import fr.olympus.hephaestus.processing.ProcessRecipe;
+import fr.olympus.hephaestus.resources.HephaestusData;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Discrimination network selecting the best startable recipe among all the recipes of a factory type.
+ * <p>
+ * The network is immutable and built once per recipe set, then shared by every factory of that type:
+ * <ul>
+ *     <li>alpha nodes are the distinct input tests (matchers compared without quantity), shared by all the
+ *     recipes using them;</li>
+ *     <li>each registered material seen is resolved once to the alpha nodes it satisfies;</li>
+ *     <li>each factory keeps a {@link State}: which alpha nodes are satisfied by the present materials and,
+ *     per recipe, how many of its alpha nodes are not. Only recipes with every alpha node satisfied are
+ *     candidates.</li>
+ * </ul>
+ * Recipes are sorted by preference (priority, then specificity, then input count), so selection visits the
+ * candidates only, in that order, and stops at the first one whose {@link ProcessRecipe#canStart} accepts
+ * the contents (quantities and assignment). Presence changes cost the alpha nodes of the material and the
+ * recipes using them, never the whole recipe set.
+ * <p>
+ * The alpha nodes only prefilter the recipes using the {@code canStart} of {@link DefaultProcessRecipe}, which
+ * needs a present material for each input; other recipes are always candidates, whatever their inputs.
+ * <p>
+ * A network resolves materials against the HephaestusData it is used with; use one network per data set.
+ * Only registered materials are memoized: an unknown material has no category, and is resolved again each time it
+ * appears in a factory, in case it was registered in between.
+ */
+public final class RecipeNetwork {
+
+    /**
+     * Preferred recipes first; ties keep their insertion order.
+     */
+    static final Comparator<ProcessRecipe> PREFERENCE = Comparator
+            .comparingInt(ProcessRecipe::priority)
+            .thenComparingInt(ProcessRecipe::specificityScore)
+            .thenComparingInt(ProcessRecipe::inputCount)
+            .reversed();
+
+    /**
+     * Recipes sorted by preference.
+     */
+    private final ProcessRecipe[] sorted;
+
+    /**
+     * The recipes, in the order they were given.
+     */
+    private final List<ProcessRecipe> recipes;
+
+    /**
+     * Alpha node tests.
+     */
+    private final MaterialMatcher[] alphas;
+
+    /**
+     * Recipes (sorted positions) using each alpha node.
+     */
+    private final int[][] recipesOfAlpha;
+
+    /**
+     * Number of distinct alpha nodes of each recipe.
+     */
+    private final int[] alphaCountOfRecipe;
+
+    /**
+     * Recipes without inputs (always candidates).
+     */
+    private final BitSet alwaysCandidates;
+
+    /**
+     * Whether every recipe {@link ProcessRecipe#canStartOnContentsOnly() only checks the contents} to start.
+     */
+    private final boolean canStartOnContentsOnly;
+
+    /**
+     * Materials resolved so far.
+     */
+    private final Map<String, MaterialNode> materials = new ConcurrentHashMap<>();
+
+    /**
+     * Next dense material index.
+     */
+    private final AtomicInteger nextMaterial = new AtomicInteger();
+
+    /**
+     * Builds the network for the given recipes.
+     *
+     * @param recipes The recipes.
+     */
+    public RecipeNetwork(List<ProcessRecipe> recipes) {
+        if (recipes == null) throw new IllegalArgumentException("recipes cannot be null.");
+        this.recipes = List.copyOf(recipes);
+        List<ProcessRecipe> list = new ArrayList<>(this.recipes);
+        list.sort(PREFERENCE);
+        this.sorted = list.toArray(new ProcessRecipe[0]);
+        this.alphaCountOfRecipe = new int[sorted.length];
+        this.alwaysCandidates = new BitSet(sorted.length);
+
+        // MaterialMatcher equality ignores quantity: one alpha node per distinct test
+        Map<MaterialMatcher, Integer> alphaIds = new LinkedHashMap<>();
+        List<List<Integer>> users = new ArrayList<>();
+        for (int r = 0; r < sorted.length; r++) {
+            Set<Integer> own = new HashSet<>();
+            if (!prefiltered(sorted[r])) {
+                alwaysCandidates.set(r);
+                continue;
+            }
+            for (MaterialMatcher in : sorted[r].inputs()) {
+                Integer a = alphaIds.get(in);
+                if (a == null) {
+                    a = alphaIds.size();
+                    alphaIds.put(in, a);
+                    users.add(new ArrayList<>());
+                }
+                if (own.add(a)) users.get(a).add(r);
+            }
+            alphaCountOfRecipe[r] = own.size();
+            if (own.isEmpty()) alwaysCandidates.set(r);
+        }
+        this.alphas = alphaIds.keySet().toArray(new MaterialMatcher[0]);
+        this.recipesOfAlpha = new int[alphas.length][];
+        for (int a = 0; a < alphas.length; a++) {
+            recipesOfAlpha[a] = users.get(a).stream().mapToInt(Integer::intValue).toArray();
+        }
+        boolean contentsOnly = true;
+        for (ProcessRecipe r : sorted) contentsOnly &= r.canStartOnContentsOnly();
+        this.canStartOnContentsOnly = contentsOnly;
+    }
+
+    /**
+     * Returns the recipes, in the order they were given (the recipe table shared by the factories using this
+     * network).
+     *
+     * @return Unmodifiable list of the recipes.
+     */
+    public List<ProcessRecipe> recipes() {
+        return recipes;
+    }
+
+    /**
+     * Whether the alpha nodes may prefilter a recipe: its canStart is the one of {@link DefaultProcessRecipe}, so it
+     * cannot start without a present material for each input.
+     *
+     * @param recipe The recipe.
+     * @return true if the recipe is only a candidate when its alpha nodes are all satisfied
+     */
+    private static boolean prefiltered(ProcessRecipe recipe) {
+        // canStartOnContentsOnly : canStart n'est pas redéfini par une sous-classe
+        return recipe instanceof DefaultProcessRecipe && recipe.canStartOnContentsOnly();
+    }
+
+    /**
+     * Whether every recipe {@link ProcessRecipe#canStartOnContentsOnly() only checks the contents} to start, so that
+     * a selection only needs to be redone after the contents changed.
+     *
+     * @return true if the selection only depends on the contents
+     */
+    public boolean canStartOnContentsOnly() {
+        return canStartOnContentsOnly;
+    }
+
+    /**
+     * Returns the number of alpha nodes (distinct input tests).
+     *
+     * @return The number of alpha nodes.
+     */
+    public int alphaNodeCount() {
+        return alphas.length;
+    }
+
+    /**
+     * Creates the per-factory state of this network, synchronized with the given contents.
+     *
+     * @param contents The factory contents.
+     * @return A new state.
+     */
+    State newState(MaterialContents contents) {
+        State state = new State();
+        for (int s = 0; s < contents.stackCount(); s++) state.presenceChanged(contents.stackMaterialId(s));
+        return state;
+    }
+
+    /**
+     * Resolves a registered material to the alpha nodes it satisfies (memoized).
+     *
+     * @param materialId The material ID.
+     * @param data       HephaestusData for category lookups.
+     * @return The material node, or null if the material is not registered in data.
+     */
+    private MaterialNode resolve(String materialId, HephaestusData data) {
+        MaterialNode node = materials.get(materialId);
+        if (node != null) return node;
+        // pas de mémo pour un inconnu : il peut être enregistré plus tard, avec ses catégories
+        if (!data.getMaterials().containsKey(materialId)) return null;
+        return materials.computeIfAbsent(materialId,
+                id -> new MaterialNode(nextMaterial.getAndIncrement(), alphasOf(id, data, true)));
+    }
+
+    /**
+     * Returns the alpha nodes a material satisfies.
+     *
+     * @param materialId The material ID.
+     * @param data       HephaestusData for category lookups.
+     * @param known      Whether the material is registered in data.
+     * @return The alpha nodes.
+     */
+    private int[] alphasOf(String materialId, HephaestusData data, boolean known) {
+        int[] buf = new int[alphas.length];
+        int k = 0;
+        for (int a = 0; a < alphas.length; a++) {
+            MaterialMatcher m = alphas[a];
+            boolean categories = m.getKind() == MaterialMatcher.Kind.ANY_OF_CATEGORIES
+                    || m.getKind() == MaterialMatcher.Kind.ALL_OF_CATEGORIES;
+            // unknown materials have no category
+            if (categories && !known) continue;
+            if (m.matches(materialId, data)) buf[k++] = a;
+        }
+        return Arrays.copyOf(buf, k);
+    }
+
+    /**
+     * A material resolved against the alpha nodes.
+     *
+     * @param index  Dense index of the material in this network.
+     * @param alphas Alpha nodes satisfied by the material.
+     */
+    private record MaterialNode(int index, int[] alphas) {
+    }
+
+    /**
+     * Per-factory state: satisfied alpha nodes and candidate recipes.
+     * <p>
+     * Presence changes are queued by the contents listener and applied at the next selection,
+     * where the HephaestusData needed to resolve new materials is available.
+     */
+    final class State {
+
+        /**
+         * Present materials matching each alpha node.
+         */
+        private final int[] alphaHits = new int[alphas.length];
+
+        /**
+         * Unsatisfied alpha nodes of each recipe.
+         */
+        private final int[] missing = alphaCountOfRecipe.clone();
+
+        /**
+         * Recipes whose alpha nodes are all satisfied.
+         */
+        private final BitSet candidates = (BitSet) alwaysCandidates.clone();
+
+        /**
+         * Materials (by network index) taken into account as present.
+         */
+        private final BitSet present = new BitSet();
+
+        /**
+         * Unregistered materials taken into account as present, with the alpha nodes counted for them.
+         */
+        private final Map<String, int[]> presentUnknown = new HashMap<>();
+
+        /**
+         * Materials whose presence changed since the last selection.
+         */
+        private final ArrayList<String> pending = new ArrayList<>();
+
+        /**
+         * Size of {@link #pending} after its last compaction.
+         */
+        private int compactedSize;
+
+        /**
+         * Records that a material appeared in or disappeared from the contents.
+         *
+         * @param materialId The material ID.
+         */
+        void presenceChanged(String materialId) {
+            pending.add(materialId);
+            // contents may change a lot between two selections (e.g. stopped factory): keep one entry per material
+            if (pending.size() > 256 && pending.size() > 2 * compactedSize) {
+                Set<String> distinct = new LinkedHashSet<>(pending);
+                pending.clear();
+                pending.addAll(distinct);
+                compactedSize = pending.size();
+            }
+        }
+
+        /**
+         * Returns the preferred recipe that can start.
+         *
+         * @param ctx      The process context.
+         * @param contents The factory contents (same as {@code ctx.contents()}).
+         * @param data     The HephaestusData context.
+         * @return The recipe, or null if none can start.
+         */
+        ProcessRecipe selectBest(ProcessContext ctx, MaterialContents contents, HephaestusData data) {
+            if (!pending.isEmpty()) sync(contents, data);
+            for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+                if (sorted[i].canStart(ctx, data)) return sorted[i];
+            }
+            return null;
+        }
+
+        /**
+         * Applies the pending presence changes.
+         *
+         * @param contents The factory contents.
+         * @param data     The HephaestusData context.
+         */
+        private void sync(MaterialContents contents, HephaestusData data) {
+            for (int p = 0; p < pending.size(); p++) {
+                String id = pending.get(p);
+                boolean now = contents.count(id) > 0;
+                // compté comme inconnu : retiré avec les mêmes alpha, même s'il a été enregistré depuis
+                int[] counted = presentUnknown.get(id);
+                if (counted != null) {
+                    if (now) continue;
+                    presentUnknown.remove(id);
+                    count(counted, false);
+                    continue;
+                }
+                MaterialNode node = resolve(id, data);
+                if (node == null) {
+                    if (!now) continue;
+                    int[] alphasOfId = alphasOf(id, data, false);
+                    presentUnknown.put(id, alphasOfId);
+                    count(alphasOfId, true);
+                    continue;
+                }
+                if (now == present.get(node.index)) continue;
+                present.set(node.index, now);
+                count(node.alphas, now);
+            }
+            pending.clear();
+            compactedSize = 0;
+        }
+
+        /**
+         * Counts a material appearing in or disappearing from the contents.
+         *
+         * @param alphasOfMaterial The alpha nodes the material satisfies.
+         * @param now              Whether the material is now present.
+         */
+        private void count(int[] alphasOfMaterial, boolean now) {
+            for (int a : alphasOfMaterial) {
+                if (now) {
+                    if (alphaHits[a]++ == 0) alphaSatisfied(a);
+                } else {
+                    if (--alphaHits[a] == 0) alphaUnsatisfied(a);
+                }
+            }
+        }
+
+        /**
+         * Updates the recipes using an alpha node that became satisfied.
+         *
+         * @param a The alpha node.
+         */
+        private void alphaSatisfied(int a) {
+            for (int r : recipesOfAlpha[a]) {
+                if (--missing[r] == 0) candidates.set(r);
+            }
+        }
+
+        /**
+         * Updates the recipes using an alpha node that is no longer satisfied.
+         *
+         * @param a The alpha node.
+         */
+        private void alphaUnsatisfied(int a) {
+            for (int r : recipesOfAlpha[a]) {
+                if (missing[r]++ == 0) candidates.clear(r);
+            }
+        }
+    }
+}
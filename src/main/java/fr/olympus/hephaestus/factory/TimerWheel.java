@@ -0,0 +1,216 @@
+package fr.olympus.hephaestus.factory;
+
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timer wheel (4 levels of 64 slots) used to park sleeping factories.
+ * <p>
+ * Scheduling and cancelling are O(1); advancing costs O(1) per elapsed tick plus the
+ * entries that expire or cascade. Not thread-safe: only the ticking thread uses it.
+ *
+ * @param <N> The node type stored in the wheel.
+ */
+final class TimerWheel<N extends TimerWheel.Node> {
+
+    /**
+     * Bits per level (64 slots).
+     */
+    private static final int BITS = 6;
+    /**
+     * Slots per level.
+     */
+    private static final int SLOTS = 1 << BITS;
+    /**
+     * Mask for a slot index.
+     */
+    private static final int MASK = SLOTS - 1;
+    /**
+     * Number of levels.
+     */
+    private static final int LEVELS = 4;
+    /**
+     * Largest delta (in ticks) the wheel can represent; farther deadlines are clamped and re-checked.
+     */
+    private static final long MAX_DELTA = (1L << (BITS * LEVELS)) - 1;
+
+    /**
+     * Sentinel heads of the slot lists, indexed [level][slot].
+     */
+    private final Node[][] heads = new Node[LEVELS][SLOTS];
+
+    /**
+     * Duration of one tick in seconds.
+     */
+    private final double resolution;
+
+    /**
+     * Current tick of the wheel.
+     */
+    private long currentTick;
+
+    /**
+     * Number of scheduled nodes.
+     */
+    private int size;
+
+    /**
+     * Constructs a TimerWheel.
+     *
+     * @param resolution Duration of one tick in seconds.
+     */
+    TimerWheel(double resolution) {
+        if (!(resolution > 0)) throw new IllegalArgumentException("resolution must be > 0.");
+        this.resolution = resolution;
+        for (int l = 0; l < LEVELS; l++) {
+            for (int s = 0; s < SLOTS; s++) {
+                Node head = new Node();
+                head.prev = head;
+                head.next = head;
+                heads[l][s] = head;
+            }
+        }
+    }
+
+    /**
+     * Converts a time in seconds to the first tick at or after it.
+     *
+     * @param seconds Time in seconds.
+     * @return The tick.
+     */
+    long tickAtOrAfter(double seconds) {
+        return (long) Math.ceil(seconds / resolution);
+    }
+
+    /**
+     * Returns the number of scheduled nodes.
+     *
+     * @return The size.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Schedules a node to expire at the given tick.
+     *
+     * @param node     The node (must not already be scheduled).
+     * @param deadline The expiry tick (past deadlines expire at the next tick).
+     */
+    void schedule(N node, long deadline) {
+        node.deadline = Math.max(deadline, currentTick + 1);
+        place(node);
+        size++;
+    }
+
+    /**
+     * Cancels a scheduled node (no-op if it is not scheduled).
+     *
+     * @param node The node to cancel.
+     */
+    void cancel(N node) {
+        if (node.next == null) return;
+        unlink(node);
+        size--;
+    }
+
+    /**
+     * Advances the wheel up to (and including) the given tick, handing each expired node to the sink.
+     *
+     * @param toTick Target tick.
+     * @param sink   Receiver of expired nodes.
+     */
+    @SuppressWarnings("unchecked")
+    void advance(long toTick, Consumer<N> sink) {
+        while (currentTick < toTick) {
+            if (size == 0) {
+                currentTick = toTick;
+                return;
+            }
+            currentTick++;
+
+            if ((currentTick & MASK) == 0) cascade();
+
+            Node head = heads[0][(int) (currentTick & MASK)];
+            while (head.next != head) {
+                Node n = head.next;
+                unlink(n);
+                if (n.deadline > currentTick) {
+                    place(n);
+                } else {
+                    size--;
+                    sink.accept((N) n);
+                }
+            }
+        }
+    }
+
+    /**
+     * Redistributes the upper-level slots that became current.
+     */
+    private void cascade() {
+        int top = 1;
+        while (top < LEVELS - 1 && ((currentTick >>> (BITS * top)) & MASK) == 0) top++;
+
+        for (int l = top; l >= 1; l--) {
+            Node head = heads[l][(int) ((currentTick >>> (BITS * l)) & MASK)];
+            while (head.next != head) {
+                Node n = head.next;
+                unlink(n);
+                place(n);
+            }
+        }
+    }
+
+    /**
+     * Links a node in the slot matching its deadline.
+     *
+     * @param node The node.
+     */
+    private void place(Node node) {
+        long delta = Math.min(Math.max(node.deadline - currentTick, 0), MAX_DELTA);
+        long at = currentTick + delta;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= (1L << (BITS * (level + 1)))) level++;
+        Node head = heads[level][(int) ((at >>> (BITS * level)) & MASK)];
+
+        node.prev = head.prev;
+        node.next = head;
+        head.prev.next = node;
+        head.prev = node;
+    }
+
+    /**
+     * Unlinks a node from its slot.
+     *
+     * @param node The node.
+     */
+    private static void unlink(Node node) {
+        node.prev.next = node.next;
+        node.next.prev = node.prev;
+        node.prev = null;
+        node.next = null;
+    }
+
+    /**
+     * Base class of the entries stored in the wheel.
+     */
+    static class Node {
+        /**
+         * Links of the slot list (null when not scheduled).
+         */
+        Node prev, next;
+        /**
+         * Expiry tick.
+         */
+        long deadline;
+
+        /**
+         * Returns whether the node is currently scheduled.
+         *
+         * @return true if scheduled.
+         */
+        final boolean isScheduled() {
+            return next != null;
+        }
+    }
+}
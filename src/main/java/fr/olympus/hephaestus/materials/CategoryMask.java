@@ -0,0 +1,187 @@
+package fr.olympus.hephaestus.materials;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Immutable set of material categories compiled to a bitmask.
+ * <p>
+ * Each category key (the enum constant name, as used by {@code MaterialMatcher}) gets a global bit index the
+ * first time it is seen, so category tests are a few {@code long} operations instead of string-set lookups.
+ * With up to 64 distinct categories a mask is a single word.
+ */
+public final class CategoryMask {
+
+    /**
+     * Global bit index of each category key.
+     */
+    private static final Map<String, Integer> BITS = new ConcurrentHashMap<>();
+
+    /**
+     * Next free bit index.
+     */
+    private static final AtomicInteger NEXT_BIT = new AtomicInteger();
+
+    /**
+     * The empty mask.
+     */
+    public static final CategoryMask EMPTY = new CategoryMask(new long[1]);
+
+    /**
+     * Bit words (at least one).
+     */
+    private final long[] words;
+
+    /**
+     * Constructs a CategoryMask over the given words.
+     *
+     * @param words The words (owned by this mask).
+     */
+    private CategoryMask(long[] words) {
+        this.words = words;
+    }
+
+    /**
+     * Returns the global bit index of a category key, assigning one if needed.
+     *
+     * @param key The category key (enum constant name).
+     * @return The bit index.
+     */
+    public static int bitOf(String key) {
+        if (key == null) throw new IllegalArgumentException("key cannot be null.");
+        Integer bit = BITS.get(key);
+        return bit != null ? bit : BITS.computeIfAbsent(key, k -> NEXT_BIT.getAndIncrement());
+    }
+
+    /**
+     * Compiles category keys to a mask.
+     *
+     * @param keys The category keys (enum constant names).
+     * @return The mask.
+     */
+    public static CategoryMask ofKeys(Collection<String> keys) {
+        if (keys == null || keys.isEmpty()) return EMPTY;
+        long[] w = new long[1];
+        for (String k : keys) {
+            int bit = bitOf(k);
+            int word = bit >>> 6;
+            if (word >= w.length) w = Arrays.copyOf(w, word + 1);
+            w[word] |= 1L << bit;
+        }
+        return new CategoryMask(w);
+    }
+
+    /**
+     * Compiles categories to a mask (by enum constant name).
+     *
+     * @param categories The categories (enums).
+     * @return The mask.
+     * @throws IllegalArgumentException if a category is not an enum.
+     */
+    public static CategoryMask of(Collection<? extends MaterialCategory> categories) {
+        if (categories == null || categories.isEmpty()) return EMPTY;
+        long[] w = new long[1];
+        for (MaterialCategory c : categories) {
+            if (!(c instanceof Enum<?> e)) {
+                throw new IllegalArgumentException("MaterialCategory must be an enum: " + c);
+            }
+            int bit = bitOf(e.name());
+            int word = bit >>> 6;
+            if (word >= w.length) w = Arrays.copyOf(w, word + 1);
+            w[word] |= 1L << bit;
+        }
+        return new CategoryMask(w);
+    }
+
+    /**
+     * Checks whether this mask shares at least one category with another.
+     *
+     * @param other The other mask.
+     * @return True if the masks intersect.
+     */
+    public boolean intersects(CategoryMask other) {
+        long[] a = words, b = other.words;
+        if (a.length == 1 && b.length == 1) return (a[0] & b[0]) != 0;
+        int n = Math.min(a.length, b.length);
+        for (int i = 0; i < n; i++) {
+            if ((a[i] & b[i]) != 0) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether this mask contains every category of another.
+     *
+     * @param other The other mask.
+     * @return True if {@code other} is a subset of this mask.
+     */
+    public boolean containsAll(CategoryMask other) {
+        long[] a = words, b = other.words;
+        if (a.length == 1 && b.length == 1) return (b[0] & ~a[0]) == 0;
+        for (int i = 0; i < b.length; i++) {
+            long have = i < a.length ? a[i] : 0L;
+            if ((b[i] & ~have) != 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the first category bit set at or after the given index.
+     *
+     * @param from The index to start from (inclusive).
+     * @return The bit index, or -1 if there is none.
+     */
+    public int nextSetBit(int from) {
+        if (from < 0) throw new IllegalArgumentException("from cannot be negative.");
+        int i = from >>> 6;
+        if (i >= words.length) return -1;
+        long w = words[i] & (-1L << from);
+        while (true) {
+            if (w != 0) return (i << 6) + Long.numberOfTrailingZeros(w);
+            if (++i == words.length) return -1;
+            w = words[i];
+        }
+    }
+
+    /**
+     * Checks whether the mask has no category.
+     *
+     * @return True if empty.
+     */
+    public boolean isEmpty() {
+        for (long w : words) {
+            if (w != 0) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof CategoryMask other)) return false;
+        long[] a = words, b = other.words;
+        int n = Math.max(a.length, b.length);
+        for (int i = 0; i < n; i++) {
+            if ((i < a.length ? a[i] : 0L) != (i < b.length ? b[i] : 0L)) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int last = words.length;
+        while (last > 1 && words[last - 1] == 0) last--;
+        int h = 1;
+        for (int i = 0; i < last; i++) h = 31 * h + Long.hashCode(words[i]);
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("CategoryMask[");
+        for (int i = words.length - 1; i >= 0; i--) sb.append(Long.toHexString(words[i])).append(i > 0 ? ":" : "");
+        return sb.append(']').toString();
+    }
+}
@@ -20,6 +20,10 @@ public abstract class Material {
      * The name of the material.
      */
     protected final String name;
+    /**
+     * The categories compiled to a bitmask.
+     */
+    private final CategoryMask categoryMask;
 
     /**
      * Constructs a Material with the specified type, categories, and name.
@@ -47,6 +51,7 @@ public abstract class Material {
         this.type = type;
         this.categories = categories;
         this.name = name;
+        this.categoryMask = CategoryMask.of(categories);
     }
 
     /**
@@ -76,6 +81,15 @@ public abstract class Material {
         return name;
     }
 
+    /**
+     * Returns the categories of the material compiled to a bitmask.
+     *
+     * @return the category mask
+     */
+    public CategoryMask getCategoryMask() {
+        return categoryMask;
+    }
+
     public boolean hasCategories(MaterialCategory... categories) {
         return new HashSet<>(this.categories).containsAll(List.of(categories));
     }
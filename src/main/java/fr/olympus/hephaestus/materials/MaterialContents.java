@@ -0,0 +1,435 @@
+package fr.olympus.hephaestus.materials;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * Stacked store of material instances, exposed as a list with one element per unit.
+ * <p>
+ * Consecutive units of a material with equal voxel data (the same array, or arrays with the same contents) are
+ * kept as a single run (instance + count), so 10,000 units of ore cost one entry whether they were inserted with
+ * one voxel template or with copies of it, while units with different voxel data stay distinct. Units of a run are
+ * all returned as the run's first instance.
+ * A per-material stack index gives counts in O(1).
+ * <p>
+ * Every change of a material count is reported to an optional {@link Listener}, which lets owners
+ * maintain derived state incrementally instead of rescanning the contents.
+ */
+public final class MaterialContents extends AbstractList<MaterialInstance> implements RandomAccess {
+
+    /**
+     * Receives the changes of a MaterialContents.
+     */
+    public interface Listener {
+
+        /**
+         * Called after units of the given material were added.
+         *
+         * @param materialId The material ID.
+         * @param added      The number of units added.
+         * @param newCount   The number of units of this material now present.
+         */
+        void onAdded(String materialId, int added, int newCount);
+
+        /**
+         * Called after units of the given material were removed.
+         *
+         * @param materialId The material ID.
+         * @param removed    The number of units removed.
+         * @param newCount   The number of units of this material now present.
+         */
+        void onRemoved(String materialId, int removed, int newCount);
+    }
+
+    /**
+     * Consecutive units sharing one instance.
+     */
+    private static final class Run {
+        /**
+         * The shared instance.
+         */
+        final MaterialInstance instance;
+        /**
+         * Number of units.
+         */
+        int count;
+
+        Run(MaterialInstance instance, int count) {
+            this.instance = instance;
+            this.count = count;
+        }
+    }
+
+    /**
+     * Total units of one material.
+     */
+    private static final class Stack {
+        /**
+         * The material ID.
+         */
+        final String materialId;
+        /**
+         * Number of units.
+         */
+        int count;
+        /**
+         * Position in {@link #stackList}.
+         */
+        int index;
+
+        Stack(String materialId) {
+            this.materialId = materialId;
+        }
+    }
+
+    /**
+     * The runs, in insertion order.
+     */
+    private final ArrayList<Run> runs = new ArrayList<>();
+
+    /**
+     * Stacks by material ID.
+     */
+    private final Map<String, Stack> stacks = new HashMap<>();
+
+    /**
+     * Stacks in a dense list (swap-remove), for indexed iteration.
+     */
+    private final ArrayList<Stack> stackList = new ArrayList<>();
+
+    /**
+     * Total number of units.
+     */
+    private int size;
+
+    /**
+     * Cursor of the last run looked up (speeds up sequential access): run index and index of its first unit.
+     */
+    private int cursorRun, cursorStart;
+
+    /**
+     * The change listener, if any.
+     */
+    private Listener listener;
+
+    /**
+     * Constructs an empty MaterialContents.
+     */
+    public MaterialContents() {
+    }
+
+    /**
+     * Sets the change listener.
+     *
+     * @param listener The listener, or null to remove it.
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Returns the number of units of the given material.
+     *
+     * @param materialId The material ID.
+     * @return The count (0 if absent).
+     */
+    public int count(String materialId) {
+        Stack s = stacks.get(materialId);
+        return s == null ? 0 : s.count;
+    }
+
+    /**
+     * Returns the distinct material IDs currently present.
+     *
+     * @return Unmodifiable view of the present material IDs.
+     */
+    public Set<String> distinctIds() {
+        return Collections.unmodifiableSet(stacks.keySet());
+    }
+
+    /**
+     * Returns the number of distinct materials present.
+     *
+     * @return The number of stacks.
+     */
+    public int stackCount() {
+        return stackList.size();
+    }
+
+    /**
+     * Returns the material ID of a stack.
+     *
+     * @param stack Stack index, in [0, {@link #stackCount()}).
+     * @return The material ID.
+     */
+    public String stackMaterialId(int stack) {
+        return stackList.get(stack).materialId;
+    }
+
+    /**
+     * Returns the number of units of a stack.
+     *
+     * @param stack Stack index, in [0, {@link #stackCount()}).
+     * @return The count.
+     */
+    public int stackSize(int stack) {
+        return stackList.get(stack).count;
+    }
+
+    /**
+     * Appends several units sharing the same instance (a single run, whatever the amount).
+     *
+     * @param instance The instance.
+     * @param amount   Number of units (must be positive).
+     */
+    public void add(MaterialInstance instance, int amount) {
+        Objects.requireNonNull(instance, "instance");
+        if (amount <= 0) throw new IllegalArgumentException("amount must be positive.");
+        appendUnits(instance, amount);
+        size += amount;
+        modCount++;
+        increment(instance.materialId(), amount);
+    }
+
+    /**
+     * Removes units of a material, oldest first.
+     *
+     * @param materialId The material ID.
+     * @param amount     Maximum number of units to remove.
+     * @return The number of units removed.
+     */
+    public int removeAmount(String materialId, int amount) {
+        if (amount <= 0 || count(materialId) == 0) return 0;
+        int removed = 0;
+        for (int r = 0; r < runs.size() && removed < amount; ) {
+            Run run = runs.get(r);
+            if (!run.instance.materialId().equals(materialId)) {
+                r++;
+                continue;
+            }
+            int take = Math.min(run.count, amount - removed);
+            run.count -= take;
+            removed += take;
+            if (run.count == 0) removeRun(r);
+            else r++;
+        }
+        size -= removed;
+        modCount++;
+        resetCursor();
+        decrement(materialId, removed);
+        return removed;
+    }
+
+    @Override
+    public MaterialInstance get(int index) {
+        Objects.checkIndex(index, size);
+        return runs.get(seek(index)).instance;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void add(int index, MaterialInstance element) {
+        Objects.requireNonNull(element, "element");
+        Objects.checkIndex(index, size + 1);
+        if (index == size) {
+            add(element, 1);
+            return;
+        }
+        insertUnit(index, element);
+        size++;
+        modCount++;
+        increment(element.materialId(), 1);
+    }
+
+    @Override
+    public MaterialInstance set(int index, MaterialInstance element) {
+        Objects.requireNonNull(element, "element");
+        Objects.checkIndex(index, size);
+        MaterialInstance old = removeUnit(index);
+        if (index == size - 1) appendUnits(element, 1);
+        else insertUnit(index, element);
+        decrement(old.materialId(), 1);
+        increment(element.materialId(), 1);
+        return old;
+    }
+
+    @Override
+    public MaterialInstance remove(int index) {
+        Objects.checkIndex(index, size);
+        MaterialInstance old = removeUnit(index);
+        size--;
+        modCount++;
+        decrement(old.materialId(), 1);
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        if (size == 0) return;
+        ArrayList<Stack> removed = new ArrayList<>(stackList);
+        runs.clear();
+        stacks.clear();
+        stackList.clear();
+        size = 0;
+        modCount++;
+        resetCursor();
+        if (listener != null) {
+            for (Stack s : removed) listener.onRemoved(s.materialId, s.count, 0);
+        }
+    }
+
+    /**
+     * Returns the index of the run holding the given unit, and leaves the cursor on it.
+     *
+     * @param index Unit index (valid).
+     * @return Run index.
+     */
+    private int seek(int index) {
+        if (index < cursorStart) resetCursor();
+        int r = cursorRun, start = cursorStart;
+        while (index >= start + runs.get(r).count) {
+            start += runs.get(r).count;
+            r++;
+        }
+        cursorRun = r;
+        cursorStart = start;
+        return r;
+    }
+
+    /**
+     * Appends units at the end, extending the last run when possible.
+     *
+     * @param instance The instance.
+     * @param amount   Number of units.
+     */
+    private void appendUnits(MaterialInstance instance, int amount) {
+        Run last = runs.isEmpty() ? null : runs.get(runs.size() - 1);
+        if (last != null && sameUnit(last.instance, instance)) {
+            last.count += amount;
+        } else {
+            runs.add(new Run(instance, amount));
+        }
+    }
+
+    /**
+     * Inserts one unit before the given unit index (index &lt; size).
+     *
+     * @param index   Unit index.
+     * @param element The instance.
+     */
+    private void insertUnit(int index, MaterialInstance element) {
+        int r = seek(index);
+        Run run = runs.get(r);
+        int offset = index - cursorStart;
+        if (sameUnit(run.instance, element)) {
+            run.count++;
+        } else if (offset == 0) {
+            Run prev = r > 0 ? runs.get(r - 1) : null;
+            if (prev != null && sameUnit(prev.instance, element)) prev.count++;
+            else runs.add(r, new Run(element, 1));
+        } else {
+            // split the run around the new unit
+            runs.add(r + 1, new Run(run.instance, run.count - offset));
+            run.count = offset;
+            runs.add(r + 1, new Run(element, 1));
+        }
+        resetCursor();
+    }
+
+    /**
+     * Removes one unit (size and counts are updated by the caller).
+     *
+     * @param index Unit index (valid).
+     * @return The instance of the removed unit.
+     */
+    private MaterialInstance removeUnit(int index) {
+        int r = seek(index);
+        Run run = runs.get(r);
+        if (--run.count == 0) removeRun(r);
+        resetCursor();
+        return run.instance;
+    }
+
+    /**
+     * Removes an empty run and merges its neighbours if they hold the same unit.
+     *
+     * @param r Run index.
+     */
+    private void removeRun(int r) {
+        runs.remove(r);
+        if (r > 0 && r < runs.size() && sameUnit(runs.get(r - 1).instance, runs.get(r).instance)) {
+            runs.get(r - 1).count += runs.remove(r).count;
+        }
+    }
+
+    /**
+     * Moves the cursor back to the first run.
+     */
+    private void resetCursor() {
+        cursorRun = 0;
+        cursorStart = 0;
+    }
+
+    /**
+     * Whether two instances can share a run: same material and equal voxel data (reference first, then contents).
+     *
+     * @param a First instance.
+     * @param b Second instance.
+     * @return True if interchangeable.
+     */
+    private static boolean sameUnit(MaterialInstance a, MaterialInstance b) {
+        if (a == b) return true;
+        if (!a.materialId().equals(b.materialId())) return false;
+        return a.voxels() == b.voxels() || Arrays.deepEquals(a.voxels(), b.voxels());
+    }
+
+    /**
+     * Increments the count of a material and notifies the listener.
+     *
+     * @param materialId The material ID.
+     * @param amount     Units added.
+     */
+    private void increment(String materialId, int amount) {
+        Stack s = stacks.get(materialId);
+        if (s == null) {
+            s = new Stack(materialId);
+            s.index = stackList.size();
+            stacks.put(materialId, s);
+            stackList.add(s);
+        }
+        s.count += amount;
+        if (listener != null) listener.onAdded(materialId, amount, s.count);
+    }
+
+    /**
+     * Decrements the count of a material and notifies the listener.
+     *
+     * @param materialId The material ID.
+     * @param amount     Units removed.
+     */
+    private void decrement(String materialId, int amount) {
+        if (amount == 0) return;
+        Stack s = stacks.get(materialId);
+        s.count -= amount;
+        if (s.count == 0) {
+            stacks.remove(materialId);
+            Stack last = stackList.remove(stackList.size() - 1);
+            if (last != s) {
+                last.index = s.index;
+                stackList.set(s.index, last);
+            }
+        }
+        if (listener != null) listener.onRemoved(materialId, amount, s.count);
+    }
+}
@@ -0,0 +1,330 @@
+package fr.olympus.hephaestus.planning;
+
+import fr.olympus.hephaestus.processing.MaterialMatcher;
+
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static fr.olympus.hephaestus.planning.LowerBounds.INF;
+import static fr.olympus.hephaestus.planning.LowerBounds.UNKNOWN;
+
+/**
+ * Cheapest-plan search over the AND/OR recipe graph, used by {@link CraftPlanner#planBest}.
+ * <p>
+ * A material (OR node) is made by one of its producers; a recipe (AND node) needs all its inputs. The search runs
+ * in two phases:
+ * <ol>
+ *     <li>{@link LowerBounds}: an admissible lower bound {@code h(m)} for every material, the cost of its cheapest
+ *     derivation ignoring depth and cycle limits (Knuth's generalization of Dijkstra's algorithm, available
+ *     materials cost 0). It only depends on the available materials and is shared by every search using them;</li>
+ *     <li>a depth-first branch-and-bound expands producers in increasing {@code cost(r) + sum h(inputs)} order, and
+ *     stops as soon as that bound reaches the best plan found so far. Each input is solved under the budget left
+ *     by the other inputs' bounds.</li>
+ * </ol>
+ * When the bounds are exact (no cycle or depth cut on the cheapest route), only the optimal tree is expanded.
+ * <p>
+ * Sub-results are memoized by (material, depth): an optimal sub-plan is reused when it shares no crafted material
+ * with the current path, and a failure under a bound raises a lower bound usable on any path. Results that depend
+ * on the path (a cycle was cut on one of their ancestors) are not memoized. Each expanded producer consumes one
+ * unit of {@link CraftPlanner.PlanOptions#maxPlans()}; when it runs out, the best plan found so far is returned.
+ * <p>
+ * The memo does not depend on the target, nor on the order the sub-plans were found in (the memoized sub-plan of a
+ * (material, depth) is the first optimal one in expansion order): the searches of the targets of a {@link PlanMemo}
+ * share it through a {@link Shared}, concurrently, each with a full budget. A search itself is not thread-safe.
+ */
+final class BestFirstSearch {
+
+    /**
+     * Leaf of an available material.
+     */
+    private static final Node AVAILABLE = new Node(0, -1, new Node[0], new BitSet());
+
+    /**
+     * The lower bounds and the dense recipe graph.
+     */
+    private final LowerBounds bounds;
+
+    /**
+     * Maximum depth.
+     */
+    private final int maxDepth;
+
+    /**
+     * Producer expansions allowed per target.
+     */
+    private final int maxPlans;
+
+    /**
+     * Remaining producer expansions.
+     */
+    private int budget;
+
+    /**
+     * Shallowest path depth of a cut since the last reset: a cycle cut records the depth of the repeated material,
+     * a budget cut records -1. A sub-search at depth d that saw no cut above d does not depend on its ancestors.
+     */
+    private int cutDepth = Integer.MAX_VALUE;
+
+    /**
+     * Whether the budget ran out during the last search.
+     */
+    private boolean exhausted;
+
+    /**
+     * Memoized optimal sub-plans, by (material, depth).
+     */
+    private final Map<Long, Node> solved;
+
+    /**
+     * Proven lower bounds, by (material, depth).
+     */
+    private final Map<Long, Long> lower;
+
+    /**
+     * Crafted materials of the current path.
+     */
+    private final BitSet path = new BitSet();
+
+    /**
+     * Materials of the current path, by depth.
+     */
+    private final int[] pathStack;
+
+    /**
+     * Plan nodes of the sub-plans already converted.
+     */
+    private final Map<Node, PlanNode> converted = new IdentityHashMap<>();
+
+    /**
+     * Optimal sub-plan: the recipe making a material and the sub-plans of its inputs.
+     *
+     * @param cost    total cost
+     * @param recipe  recipe position, or -1 for an available material
+     * @param inputs  sub-plans of the inputs, in input order
+     * @param crafted crafted materials of the sub-plan (dense indices)
+     */
+    private record Node(long cost, int recipe, Node[] inputs, BitSet crafted) {
+    }
+
+    /**
+     * Path-independent results shared by the searches of several targets (same available materials and maxDepth).
+     * Thread-safe.
+     */
+    static final class Shared {
+
+        /**
+         * Memoized optimal sub-plans, by (material, depth).
+         */
+        private final Map<Long, Node> solved = new ConcurrentHashMap<>();
+
+        /**
+         * Proven lower bounds, by (material, depth).
+         */
+        private final Map<Long, Long> lower = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Constructs a search with its own memo.
+     *
+     * @param bounds  the lower bounds
+     * @param options planning options
+     */
+    BestFirstSearch(LowerBounds bounds, CraftPlanner.PlanOptions options) {
+        this(bounds, options, new Shared());
+    }
+
+    /**
+     * Constructs a search on a shared memo.
+     *
+     * @param bounds  the lower bounds
+     * @param options planning options
+     * @param shared  the memo (same available materials and maxDepth as the bounds and options)
+     */
+    BestFirstSearch(LowerBounds bounds, CraftPlanner.PlanOptions options, Shared shared) {
+        this.bounds = bounds;
+        this.solved = shared.solved;
+        this.lower = shared.lower;
+        this.maxDepth = options.maxDepth();
+        this.maxPlans = options.maxPlans();
+        this.pathStack = new int[maxDepth + 1];
+    }
+
+    /**
+     * Finds the cheapest plan of a target.
+     *
+     * @param target  desired output material
+     * @param bounds  lower bounds for the available materials
+     * @param options planning options
+     * @return the cheapest plan, or empty if none exists within the limits
+     */
+    static Optional<CraftPlanner.CraftPlan> planBest(MaterialMatcher target, LowerBounds bounds,
+                                                     CraftPlanner.PlanOptions options) {
+        return new BestFirstSearch(bounds, options).planBest(target);
+    }
+
+    /**
+     * Finds the cheapest plan of a target, reusing the sub-plans memoized for the previous targets.
+     *
+     * @param target desired output material
+     * @return the cheapest plan, or empty if none exists within the limits
+     */
+    Optional<CraftPlanner.CraftPlan> planBest(MaterialMatcher target) {
+        if (bounds.available.contains(target)) return Optional.of(new CraftPlanner.CraftPlan(PlanNode.available(target)));
+
+        budget = maxPlans;
+        cutDepth = Integer.MAX_VALUE;
+        exhausted = false;
+        Node best = solve(bounds.indexOf(target), 0, INF);
+        if (best == null) return Optional.empty();
+        return Optional.of(new CraftPlanner.CraftPlan(toPlan(best, target)));
+    }
+
+    /**
+     * Whether the budget ran out during the last search: its plan is then the best found so far, not necessarily
+     * the cheapest one.
+     *
+     * @return true if a producer was left unexpanded for lack of budget
+     */
+    boolean exhausted() {
+        return exhausted;
+    }
+
+    /**
+     * Branch-and-bound: cheapest plan of a material costing strictly less than a bound.
+     *
+     * @param m     dense index of the material (or {@link LowerBounds#UNKNOWN} for the target)
+     * @param depth its depth
+     * @param bound exclusive cost bound
+     * @return the optimal plan below the bound, or null if there is none
+     */
+    private Node solve(int m, int depth, long bound) {
+        if (depth > maxDepth) return null;
+        if (m != UNKNOWN && bounds.availableAt.get(m)) return AVAILABLE;
+        if (bounds.h(m) >= bound) return null;
+
+        long key = (long) m * (maxDepth + 1) + depth;
+        if (m != UNKNOWN) {
+            if (lower.getOrDefault(key, 0L) >= bound) return null;
+            Node memo = solved.get(key);
+            if (memo != null && !memo.crafted.intersects(path)) return memo.cost < bound ? memo : null;
+
+            // cycle : coupure dépendante du chemin
+            if (path.get(m)) {
+                for (int d = 0; d < depth; d++) {
+                    if (pathStack[d] == m) cutDepth = Math.min(cutDepth, d);
+                }
+                return null;
+            }
+            path.set(m);
+        }
+        pathStack[depth] = m;
+
+        int outerCut = cutDepth;
+        cutDepth = Integer.MAX_VALUE;
+
+        int[] producers = bounds.producers(m);
+        long[] f = new long[producers.length];
+        int[] order = new int[producers.length];
+        int count = 0;
+        for (int p = 0; p < producers.length; p++) {
+            long fp = bounds.estimate(producers[p]);
+            if (fp < bound) {
+                f[count] = fp;
+                order[count++] = producers[p];
+            }
+        }
+        sortByEstimate(order, f, count);
+
+        Node best = null;
+        for (int c = 0; c < count && f[c] < bound; c++) {
+            if (budget <= 0) {
+                cutDepth = -1;
+                exhausted = true;
+                break;
+            }
+            budget--;
+
+            int r = order[c];
+            int[] inputs = bounds.inputs[r];
+            Node[] subs = new Node[inputs.length];
+            long spent = bounds.cost[r];
+            long rest = f[c] - spent;
+            boolean ok = true;
+            for (int i = 0; i < subs.length; i++) {
+                rest -= bounds.h[inputs[i]];
+                Node sub = solve(inputs[i], depth + 1, bound - spent - rest);
+                if (sub == null) {
+                    ok = false;
+                    break;
+                }
+                subs[i] = sub;
+                spent += sub.cost;
+            }
+            if (!ok) continue;
+
+            BitSet crafted = new BitSet();
+            if (m != UNKNOWN) crafted.set(m);
+            for (Node sub : subs) crafted.or(sub.crafted);
+            best = new Node(spent, r, subs, crafted);
+            bound = spent;
+        }
+
+        if (m != UNKNOWN) {
+            path.clear(m);
+            if (cutDepth >= depth) {
+                // aucune coupure sur un ancêtre : indépendant du chemin, mémorisable
+                if (best != null) solved.put(key, best);
+                else lower.merge(key, bound, Math::max);
+            }
+        }
+        cutDepth = Math.min(outerCut, cutDepth);
+        return best;
+    }
+
+    /**
+     * Stable insertion sort of candidate recipes by estimate (producer lists are short).
+     *
+     * @param order recipe positions
+     * @param f     their estimates
+     * @param count number of candidates
+     */
+    private static void sortByEstimate(int[] order, long[] f, int count) {
+        for (int i = 1; i < count; i++) {
+            long fi = f[i];
+            int oi = order[i];
+            int j = i - 1;
+            while (j >= 0 && f[j] > fi) {
+                f[j + 1] = f[j];
+                order[j + 1] = order[j];
+                j--;
+            }
+            f[j + 1] = fi;
+            order[j + 1] = oi;
+        }
+    }
+
+    /**
+     * Converts a plan tree to plan nodes, a memoized sub-plan shared by several inputs becoming one node.
+     *
+     * @param node   the plan tree
+     * @param target the material it makes
+     * @return the plan node
+     */
+    private PlanNode toPlan(Node node, MaterialMatcher target) {
+        if (node.recipe < 0) return PlanNode.available(target);
+        PlanNode plan = converted.get(node);
+        if (plan != null) return plan;
+
+        List<MaterialMatcher> ins = bounds.recipes.get(node.recipe).inputs();
+        PlanNode[] inputs = new PlanNode[node.inputs.length];
+        for (int i = 0; i < inputs.length; i++) inputs[i] = toPlan(node.inputs[i], ins.get(i));
+        plan = PlanNode.craft(target, bounds.recipes.get(node.recipe), (int) bounds.cost[node.recipe], inputs);
+        // les sous-plans d'un matériau inconnu servent à plusieurs cibles : pas de partage
+        if (bounds.indexOf(target) != UNKNOWN) converted.put(node, plan);
+        return plan;
+    }
+}
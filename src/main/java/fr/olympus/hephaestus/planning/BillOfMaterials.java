@@ -0,0 +1,224 @@
+package fr.olympus.hephaestus.planning;
+
+import fr.olympus.hephaestus.processing.MaterialMatcher;
+import fr.olympus.hephaestus.processing.ProcessRecipe;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Bill of materials of a craft plan for a requested quantity of its target.
+ * <p>
+ * Quantities are those of the recipes' {@link MaterialMatcher#getQuantity()}: a recipe execution (batch) consumes
+ * the quantity of each input and produces the quantity of each output. The demand of a plan node is rounded up to
+ * whole batches of the recipe output it makes; the extra units and the other outputs of the recipe are reported as
+ * surplus. The demand of an available material is a raw need.
+ * <p>
+ * Equal sub-plans (same target, recipe and input sub-plans, whether they are one shared {@link PlanNode} or not) are
+ * batched once for their summed demand, as one production. The computation visits each node and each input edge
+ * once: its time is linear in the size of the plan DAG, whatever the quantity.
+ *
+ * @param target       the requested material
+ * @param quantity     the requested quantity
+ * @param rawNeeds     quantity of each available material consumed, in execution order
+ * @param surplus      quantity of each material produced but not consumed (rounding and byproducts)
+ * @param batches      number of executions of each recipe, in execution order
+ * @param totalBatches total number of recipe executions
+ * @param totalCost    total cost of the executions (recipe cost times batches)
+ */
+public record BillOfMaterials(MaterialMatcher target,
+                              long quantity,
+                              Map<MaterialMatcher, Long> rawNeeds,
+                              Map<MaterialMatcher, Long> surplus,
+                              Map<ProcessRecipe, Long> batches,
+                              long totalBatches,
+                              long totalCost) {
+
+    /**
+     * Creates a BillOfMaterials (the maps are copied, keeping their order).
+     *
+     * @param target       the requested material
+     * @param quantity     the requested quantity
+     * @param rawNeeds     quantity of each available material consumed, in execution order
+     * @param surplus      quantity of each material produced but not consumed (rounding and byproducts)
+     * @param batches      number of executions of each recipe, in execution order
+     * @param totalBatches total number of recipe executions
+     * @param totalCost    total cost of the executions (recipe cost times batches)
+     */
+    public BillOfMaterials {
+        Objects.requireNonNull(target, "target");
+        rawNeeds = Collections.unmodifiableMap(new LinkedHashMap<>(rawNeeds));
+        surplus = Collections.unmodifiableMap(new LinkedHashMap<>(surplus));
+        batches = Collections.unmodifiableMap(new LinkedHashMap<>(batches));
+    }
+
+    /**
+     * Bill of materials of a plan for the quantity of its target matcher.
+     *
+     * @param plan the craft plan
+     * @return the bill of materials
+     */
+    public static BillOfMaterials of(CraftPlanner.CraftPlan plan) {
+        if (plan == null) throw new IllegalArgumentException("plan cannot be null.");
+        return of(plan, plan.root().target().getQuantity());
+    }
+
+    /**
+     * Bill of materials of a plan for a requested quantity of its target.
+     *
+     * @param plan     the craft plan
+     * @param quantity the requested quantity
+     * @return the bill of materials
+     * @throws IllegalArgumentException if plan is null or quantity is not positive.
+     * @throws IllegalStateException    if a recipe of the plan does not produce the material it is used for.
+     * @throws ArithmeticException      if a quantity overflows a long.
+     */
+    public static BillOfMaterials of(CraftPlanner.CraftPlan plan, long quantity) {
+        if (plan == null) throw new IllegalArgumentException("plan cannot be null.");
+        if (quantity <= 0) throw new IllegalArgumentException("quantity must be positive.");
+
+        // une production par classe de sous-plans égaux (le premier dans l'ordre)
+        Map<PlanNode, PlanNode> canonical = new IdentityHashMap<>();
+        List<PlanNode> order = new ArrayList<>();
+        Map<Production, PlanNode> productions = new HashMap<>();
+        for (PlanNode node : topologicalOrder(plan.root())) {
+            PlanNode[] inputs = new PlanNode[node.inputCount()];
+            for (int i = 0; i < inputs.length; i++) inputs[i] = canonical.get(node.input(i));
+            PlanNode first = productions.putIfAbsent(new Production(node.target(), node.recipe(), List.of(inputs)), node);
+            canonical.put(node, first == null ? node : first);
+            if (first == null) order.add(node);
+        }
+
+        Map<PlanNode, long[]> demand = new IdentityHashMap<>();
+        demand.put(canonical.get(plan.root()), new long[]{quantity});
+
+        // parents avant enfants : la demande d'un noeud est complète quand on l'atteint
+        long[] batchesOf = new long[order.size()];
+        for (int n = order.size() - 1; n >= 0; n--) {
+            PlanNode node = order.get(n);
+            if (node.isAvailable()) continue;
+            long need = demand.get(node)[0];
+            long b = Math.ceilDiv(need, node.recipe().outputs().get(output(node.recipe(), node.target())).getQuantity());
+            batchesOf[n] = b;
+
+            List<MaterialMatcher> inputs = node.recipe().inputs();
+            for (int i = 0; i < node.inputCount(); i++) {
+                long[] d = demand.computeIfAbsent(canonical.get(node.input(i)), k -> new long[1]);
+                d[0] = Math.addExact(d[0], Math.multiplyExact(b, inputs.get(i).getQuantity()));
+            }
+        }
+
+        // enfants avant parents : ordre d'exécution
+        Map<MaterialMatcher, Long> raw = new LinkedHashMap<>();
+        Map<MaterialMatcher, Long> surplus = new LinkedHashMap<>();
+        Map<ProcessRecipe, Long> batches = new LinkedHashMap<>();
+        long totalBatches = 0;
+        long totalCost = 0;
+        for (int n = 0; n < order.size(); n++) {
+            PlanNode node = order.get(n);
+            long need = demand.get(node)[0];
+            if (node.isAvailable()) {
+                raw.merge(node.target(), need, Math::addExact);
+                continue;
+            }
+
+            long b = batchesOf[n];
+            List<MaterialMatcher> outputs = node.recipe().outputs();
+            int made = output(node.recipe(), node.target());
+            for (int o = 0; o < outputs.size(); o++) {
+                long produced = Math.multiplyExact(b, outputs.get(o).getQuantity());
+                MaterialMatcher key = o == made ? node.target() : outputs.get(o);
+                long extra = o == made ? produced - need : produced;
+                if (extra > 0) surplus.merge(key, extra, Math::addExact);
+            }
+            batches.merge(node.recipe(), b, Math::addExact);
+            totalBatches = Math.addExact(totalBatches, b);
+            totalCost = Math.addExact(totalCost, Math.multiplyExact(b, recipeCost(node)));
+        }
+
+        return new BillOfMaterials(plan.root().target(), quantity, raw, surplus, batches, totalBatches, totalCost);
+    }
+
+    /**
+     * Identity of a production: equal target and recipe, and the same canonical input nodes.
+     *
+     * @param target the material made
+     * @param recipe the recipe (null for an available material)
+     * @param inputs canonical nodes of the inputs
+     */
+    private record Production(MaterialMatcher target, ProcessRecipe recipe, List<PlanNode> inputs) {
+    }
+
+    /**
+     * Nodes of a plan DAG, every node after its inputs (iterative post-order, each shared node once).
+     *
+     * @param root the root node
+     * @return the nodes, the root last
+     */
+    private static List<PlanNode> topologicalOrder(PlanNode root) {
+        List<PlanNode> order = new ArrayList<>();
+        Map<PlanNode, Boolean> seen = new IdentityHashMap<>();
+        Deque<PlanNode> nodes = new ArrayDeque<>();
+        Deque<Integer> next = new ArrayDeque<>();
+        seen.put(root, Boolean.TRUE);
+        nodes.push(root);
+        next.push(0);
+        while (!nodes.isEmpty()) {
+            PlanNode node = nodes.peek();
+            int i = next.pop();
+            if (i < node.inputCount()) {
+                next.push(i + 1);
+                PlanNode in = node.input(i);
+                if (seen.put(in, Boolean.TRUE) == null) {
+                    nodes.push(in);
+                    next.push(0);
+                }
+            } else {
+                nodes.pop();
+                order.add(node);
+            }
+        }
+        return order;
+    }
+
+    /**
+     * The output of a recipe making a material: the first with the same key, else the first {@code ANY} one.
+     *
+     * @param recipe the recipe
+     * @param target the material
+     * @return the index of the output in the recipe outputs
+     * @throws IllegalStateException if the recipe does not produce the material.
+     */
+    static int output(ProcessRecipe recipe, MaterialMatcher target) {
+        List<MaterialMatcher> outputs = recipe.outputs();
+        int any = -1;
+        for (int o = 0; o < outputs.size(); o++) {
+            if (outputs.get(o).equals(target)) return o;
+            if (any < 0 && outputs.get(o).getKind() == MaterialMatcher.Kind.ANY) any = o;
+        }
+        if (any < 0) {
+            throw new IllegalStateException("Recipe " + recipe.id() + " does not produce " + target + ".");
+        }
+        return any;
+    }
+
+    /**
+     * Cost of one execution of a node's recipe (the node cost minus its inputs' costs).
+     *
+     * @param node a crafting node
+     * @return the recipe cost
+     */
+    private static long recipeCost(PlanNode node) {
+        long cost = node.cost();
+        for (int i = 0; i < node.inputCount(); i++) cost -= node.input(i).cost();
+        return cost;
+    }
+}
@@ -2,6 +2,8 @@ package fr.olympus.hephaestus.planning;
 
 import fr.olympus.hephaestus.processing.MaterialMatcher;
 import fr.olympus.hephaestus.processing.ProcessRecipe;
+import fr.olympus.hephaestus.processing.RecipeGraph;
+import fr.olympus.hephaestus.resources.HephaestusData;
 
 import java.util.*;
 
@@ -11,6 +13,13 @@ import java.util.*;
  * - looks for all recipes that can produce this target
  * - recursively plans their inputs
  * - combines the input plans (cross product) => branching
+ * <p>
+ * Producers are looked up in a shared {@link RecipeGraph} and availability in a hash set built once per call.
+ * ALL enumerates every plan; the best plan is found by a best-first branch-and-bound search
+ * (see {@link #planBest}) and the K best ones by a lazy enumeration in ascending cost (see {@link #planIterator}).
+ * <p>
+ * Several targets planned with the same available materials and options can share their sub-plans through a
+ * {@link PlanMemo} (see {@link PlannerFacade}).
  */
 public final class CraftPlanner {
 
@@ -71,21 +80,70 @@ public final class CraftPlanner {
     }
 
     /**
-     * Planning mode
-     *
-     * @param totalCost total cost of the plan
-     * @param steps     list of plan steps
+     * A craft plan: the root of a {@link PlanNode} DAG whose sub-plans may be shared with other plans.
+     * <p>
+     * The total cost is cached by the nodes; the flat step list is only built on the first {@link #steps()} call.
      */
-    public record CraftPlan(int totalCost, List<PlanStep> steps) {
+    public static final class CraftPlan {
+
+        /**
+         * The root node.
+         */
+        private final PlanNode root;
+
+        /**
+         * The flattened steps (null until first requested).
+         */
+        private volatile List<PlanStep> steps;
+
         /**
          * Creates a CraftPlan.
          *
-         * @param totalCost total cost of the plan
-         * @param steps     list of plan steps
+         * @param root root node of the plan
+         */
+        public CraftPlan(PlanNode root) {
+            this.root = Objects.requireNonNull(root, "root");
+        }
+
+        /**
+         * Root node of the plan.
+         *
+         * @return the root node
+         */
+        public PlanNode root() {
+            return root;
+        }
+
+        /**
+         * Total cost of the plan.
+         *
+         * @return the total cost
          */
-        public CraftPlan(int totalCost, List<PlanStep> steps) {
-            this.totalCost = totalCost;
-            this.steps = List.copyOf(steps);
+        public int totalCost() {
+            return root.cost();
+        }
+
+        /**
+         * Steps of the plan, in execution order (flattened once, on first call).
+         *
+         * @return unmodifiable list of plan steps
+         */
+        public List<PlanStep> steps() {
+            List<PlanStep> s = steps;
+            if (s == null) {
+                s = List.copyOf(root.steps());
+                steps = s;
+            }
+            return s;
+        }
+
+        /**
+         * 64-bit hash of the step sequence: equal signatures give equal hashes.
+         *
+         * @return the hash
+         */
+        public long hash() {
+            return root.hash();
         }
 
         /**
@@ -95,17 +153,80 @@ public final class CraftPlanner {
          */
         public String signature() {
             StringBuilder sb = new StringBuilder();
-            for (PlanStep s : steps) {
+            for (PlanStep s : steps()) {
                 sb.append(s.recipe.id()).append("->");
             }
             return sb.toString();
         }
+
+        /**
+         * Two plans are equal when their plan trees are structurally equal.
+         *
+         * @param o the other object
+         * @return true if equal
+         */
+        @Override
+        public boolean equals(Object o) {
+            return this == o || o instanceof CraftPlan other && root.equals(other.root);
+        }
+
+        /**
+         * Hash code of the plan tree.
+         *
+         * @return the hash code
+         */
+        @Override
+        public int hashCode() {
+            return root.hashCode();
+        }
+
+        /**
+         * String representation of the CraftPlan.
+         *
+         * @return the cost and the steps
+         */
+        @Override
+        public String toString() {
+            return "CraftPlan[totalCost=" + totalCost() + ", steps=" + steps() + "]";
+        }
     }
 
     /**
-     * Planning mode
+     * Set of plans keyed by signature, comparing the 64-bit step hashes before the steps themselves.
+     */
+    static final class SignatureSet {
+
+        /**
+         * Roots added so far, by step hash.
+         */
+        private final Map<Long, List<PlanNode>> byHash = new HashMap<>();
+
+        /**
+         * Adds a plan unless one with the same signature was added.
+         *
+         * @param root root node of the plan
+         * @return true if the plan was added
+         */
+        boolean add(PlanNode root) {
+            List<PlanNode> same = byHash.computeIfAbsent(root.hash(), h -> new ArrayList<>(1));
+            for (PlanNode p : same) {
+                if (p.sameSteps(root)) return false;
+            }
+            same.add(root);
+            return true;
+        }
+    }
+
+    /**
+     * Producer/consumer index of the recipes
+     */
+    private final RecipeGraph graph;
+
+    /**
+     * Lower bounds of the last available set used by {@link #planBest} / {@link #planIterator}
+     * (reused while it does not change)
      */
-    private final List<ProcessRecipe> recipes;
+    private volatile LowerBounds bounds;
 
     /**
      * Creates a CraftPlanner with the given list of process recipes.
@@ -113,11 +234,34 @@ public final class CraftPlanner {
      * @param recipes the list of available process recipes
      */
     public CraftPlanner(List<ProcessRecipe> recipes) {
-        this.recipes = List.copyOf(recipes);
+        this(RecipeGraph.of(recipes));
+    }
+
+    /**
+     * Creates a CraftPlanner on an already built recipe graph (e.g. {@code HephaestusData.getRecipeGraph()}).
+     *
+     * @param graph the recipe graph
+     */
+    public CraftPlanner(RecipeGraph graph) {
+        this.graph = Objects.requireNonNull(graph, "graph");
     }
 
     /**
-     * Only best plan
+     * Recipe graph used by this planner.
+     *
+     * @return the recipe graph
+     */
+    public RecipeGraph graph() {
+        return graph;
+    }
+
+    /**
+     * Only best plan: the cheapest plan within options.maxDepth, without enumerating the alternatives.
+     * <p>
+     * Producers are expanded cheapest lower bound first and pruned against the best plan found so far, so the
+     * search explores about the nodes of the optimal plan when the bounds are tight. Each expanded producer
+     * consumes one unit of options.maxPlans; if it runs out, the best plan found so far is returned.
+     * The lower bounds depend only on the available materials and are reused by consecutive calls with the same ones.
      *
      * @param target    desired output material
      * @param available available materials
@@ -127,12 +271,177 @@ public final class CraftPlanner {
     public Optional<CraftPlan> planBest(MaterialMatcher target,
                                         List<MaterialMatcher> available,
                                         PlanOptions options) {
-        List<CraftPlan> list = plan(target, available, Mode.BEST_ONLY, 1, options);
-        return list.isEmpty() ? Optional.empty() : Optional.of(list.get(0));
+        Objects.requireNonNull(target, "target");
+        Objects.requireNonNull(available, "available");
+        Objects.requireNonNull(options, "options");
+        return BestFirstSearch.planBest(target, boundsFor(Availability.of(available)), options);
+    }
+
+    /**
+     * {@link #planBest} reusing the sub-plans of the previous targets of a memo.
+     *
+     * @param target desired output material
+     * @param memo   the memo (available materials and options)
+     * @return the best craft plan (none or one)
+     */
+    MemoPlans planBest(MaterialMatcher target, PlanMemo memo) {
+        BestFirstSearch search = memo.search();
+        Optional<CraftPlan> best = search.planBest(target);
+        return new MemoPlans(best.map(List::of).orElse(List.of()), search.exhausted());
+    }
+
+    /**
+     * Cheapest plan making a quantity of a target out of a counted inventory.
+     * <p>
+     * Unlike {@link #planBest}, where an available material can be used any number of times, the stock is shared by
+     * the whole plan: an amount taken by one branch is no longer available to the other ones, and branches asking
+     * for more than what is left are pruned during the search. Quantities are those of the recipes, rounded up to
+     * whole batches as in {@link BillOfMaterials}. A material is taken from the stock for its whole quantity, or
+     * crafted; when the stock only covers part of it, the recipe may make just the rest. A crafted node of the plan
+     * can therefore also take units from the stock: {@link InventoryPlan#bill()} tells how many, and its raw needs
+     * (the amounts taken from the inventory) fit the inventory.
+     * <p>
+     * Plans are compared by totalCost, with the limits of {@link #planBest}: when the inventory holds the whole
+     * quantity of every available material the plan of planBest takes, the plan is as cheap.
+     *
+     * Materials are matched by inventory key: a category input only uses the stock keyed by that category. Use
+     * {@link #planWithInventory(MaterialMatcher, long, Map, HephaestusData, PlanOptions)} to let it use the stock
+     * of the materials it matches.
+     *
+     * @param target    desired output material
+     * @param quantity  the quantity to make
+     * @param inventory the amount of each material in stock (matched by key, quantity ignored)
+     * @param options   planning options
+     * @return optional best craft plan fitting the inventory, with its bill of materials
+     * @throws IllegalArgumentException if quantity is not positive, or the inventory holds a null or negative
+     *                                  amount or an ANY matcher.
+     * @throws ArithmeticException      if a quantity overflows a long.
+     */
+    public Optional<InventoryPlan> planWithInventory(MaterialMatcher target,
+                                                     long quantity,
+                                                     Map<MaterialMatcher, Long> inventory,
+                                                     PlanOptions options) {
+        Objects.requireNonNull(target, "target");
+        Objects.requireNonNull(inventory, "inventory");
+        Objects.requireNonNull(options, "options");
+        return planAgainstStock(target, quantity, inventory, null, options);
+    }
+
+    /**
+     * Cheapest plan making a quantity of a target out of a counted inventory, category inputs included.
+     * <p>
+     * Same as {@link #planWithInventory(MaterialMatcher, long, Map, PlanOptions)}, except that a category material
+     * (target or recipe input) also counts the stock of the registered material IDs it matches: an inventory keyed
+     * by material ID feeds the category inputs of the recipes. A category takes its own entry first, then the
+     * matching IDs in inventory order, and the {@link InventoryPlan#bill() bill} tells how much of each.
+     *
+     * @param target    desired output material
+     * @param quantity  the quantity to make
+     * @param inventory the amount of each material in stock (matched by key, quantity ignored)
+     * @param data      HephaestusData for category lookups
+     * @param options   planning options
+     * @return optional best craft plan fitting the inventory, with its bill of materials
+     * @throws IllegalArgumentException if quantity is not positive, or the inventory holds a null or negative
+     *                                  amount or an ANY matcher.
+     * @throws ArithmeticException      if a quantity overflows a long.
+     */
+    public Optional<InventoryPlan> planWithInventory(MaterialMatcher target,
+                                                     long quantity,
+                                                     Map<MaterialMatcher, Long> inventory,
+                                                     HephaestusData data,
+                                                     PlanOptions options) {
+        Objects.requireNonNull(target, "target");
+        Objects.requireNonNull(inventory, "inventory");
+        Objects.requireNonNull(data, "data");
+        Objects.requireNonNull(options, "options");
+        return planAgainstStock(target, quantity, inventory, data, options);
+    }
+
+    /**
+     * Checks the inventory and runs the {@link InventorySearch}.
+     *
+     * @param target    desired output material
+     * @param quantity  the quantity to make
+     * @param inventory the amount of each material in stock
+     * @param data      HephaestusData for category lookups, or null to match by key only
+     * @param options   planning options
+     * @return optional best craft plan fitting the inventory, with its bill of materials
+     */
+    private Optional<InventoryPlan> planAgainstStock(MaterialMatcher target,
+                                                       long quantity,
+                                                       Map<MaterialMatcher, Long> inventory,
+                                                       HephaestusData data,
+                                                       PlanOptions options) {
+        if (quantity <= 0) throw new IllegalArgumentException("quantity must be positive.");
+
+        List<MaterialMatcher> inStock = new ArrayList<>();
+        for (Map.Entry<MaterialMatcher, Long> e : inventory.entrySet()) {
+            if (e.getKey() == null) throw new IllegalArgumentException("inventory cannot contain a null material.");
+            if (e.getKey().getKind() == MaterialMatcher.Kind.ANY) {
+                throw new IllegalArgumentException("inventory cannot contain ANY.");
+            }
+            if (e.getValue() == null || e.getValue() < 0) {
+                throw new IllegalArgumentException("inventory amount of " + e.getKey() + " must be >= 0.");
+            }
+            if (e.getValue() > 0) inStock.add(e.getKey());
+        }
+        // une catégorie couverte par des IDs en stock est disponible pour les bornes
+        if (data != null) {
+            List<MaterialMatcher> ids = List.copyOf(inStock);
+            Set<MaterialMatcher> seen = new HashSet<>();
+            addIfCovered(target, ids, data, seen, inStock);
+            for (ProcessRecipe recipe : graph.recipes()) {
+                for (MaterialMatcher in : recipe.inputs()) addIfCovered(in, ids, data, seen, inStock);
+            }
+        }
+        LowerBounds b = boundsFor(Availability.of(inStock));
+        return new InventorySearch(b, inventory, data, options).plan(target, quantity);
+    }
+
+    /**
+     * Adds a material to the available ones if it can draw from one of the keys in stock.
+     *
+     * @param material the material
+     * @param keys     the inventory keys in stock
+     * @param data     HephaestusData for category lookups
+     * @param seen     the materials already checked
+     * @param inStock  receives the material if covered
+     */
+    private static void addIfCovered(MaterialMatcher material, List<MaterialMatcher> keys, HephaestusData data,
+                                     Set<MaterialMatcher> seen, List<MaterialMatcher> inStock) {
+        if (!seen.add(material)) return;
+        for (MaterialMatcher key : keys) {
+            if (InventorySearch.drawsFrom(material, key, data)) {
+                inStock.add(material);
+                return;
+            }
+        }
     }
 
     /**
-     * X best plans
+     * Plans of a target in ascending totalCost, computed on demand.
+     * <p>
+     * The n-th plan costs about n x maxDepth heap operations: the alternatives of each input are only combined when
+     * a cheaper plan has been returned, instead of building every cross product. Each candidate taken from a heap
+     * consumes one unit of options.maxPlans; the iterator ends when it runs out. With options.deduplicate, plans
+     * with an already returned signature are skipped.
+     *
+     * @param target    desired output material
+     * @param available available materials
+     * @param options   planning options
+     * @return iterator over the plans, cheapest first (not thread-safe)
+     */
+    public Iterator<CraftPlan> planIterator(MaterialMatcher target,
+                                            List<MaterialMatcher> available,
+                                            PlanOptions options) {
+        Objects.requireNonNull(target, "target");
+        Objects.requireNonNull(available, "available");
+        Objects.requireNonNull(options, "options");
+        return new KBestEnumerator(target, boundsFor(Availability.of(available)), options);
+    }
+
+    /**
+     * X best plans, in ascending totalCost (the first k plans of {@link #planIterator}).
      *
      * @param target    desired output material
      * @param available available materials
@@ -145,7 +454,35 @@ public final class CraftPlanner {
                                     int k,
                                     PlanOptions options) {
         if (k <= 0) throw new IllegalArgumentException("k must be > 0.");
-        return plan(target, available, Mode.TOP_K, k, options);
+        return take(planIterator(target, available, options), k);
+    }
+
+    /**
+     * {@link #planTopK} reusing the derivations of the previous targets of a memo.
+     *
+     * @param target desired output material
+     * @param k      number of plans to return
+     * @param memo   the memo (available materials and options)
+     * @return list of top K craft plans
+     */
+    MemoPlans planTopK(MaterialMatcher target, int k, PlanMemo memo) {
+        if (k <= 0) throw new IllegalArgumentException("k must be > 0.");
+        KBestEnumerator plans = new KBestEnumerator(target, memo.forest(), memo.options());
+        List<CraftPlan> result = take(plans, k);
+        return new MemoPlans(result, plans.exhausted());
+    }
+
+    /**
+     * First plans of an iterator.
+     *
+     * @param plans the plans
+     * @param k     maximum number of plans
+     * @return the first k plans
+     */
+    private static List<CraftPlan> take(Iterator<CraftPlan> plans, int k) {
+        List<CraftPlan> result = new ArrayList<>(Math.min(k, 64));
+        while (result.size() < k && plans.hasNext()) result.add(plans.next());
+        return result;
     }
 
     /**
@@ -159,271 +496,355 @@ public final class CraftPlanner {
     public List<CraftPlan> planAll(MaterialMatcher target,
                                    List<MaterialMatcher> available,
                                    PlanOptions options) {
-        return plan(target, available, Mode.ALL, Integer.MAX_VALUE, options);
-    }
-
-    /**
-     * Planning mode
-     *
-     * @param target  desired output material
-     *                available available materials
-     * @param mode    planning mode
-     * @param k       number of plans to return (for TOP_K mode)
-     * @param options planning options
-     * @return list of craft plans
-     */
-    private List<CraftPlan> plan(MaterialMatcher target,
-                                 List<MaterialMatcher> available,
-                                 Mode mode,
-                                 int k,
-                                 PlanOptions options) {
-
         Objects.requireNonNull(target, "target");
         Objects.requireNonNull(available, "available");
-        Objects.requireNonNull(mode, "mode");
         Objects.requireNonNull(options, "options");
+        return planAll(target, newMemo(available, options)).plans();
+    }
 
-        // memo: targetKey -> (mode,k)-> plans
-        Map<String, List<CraftPlan>> memo = new HashMap<>();
-        Set<String> visiting = new HashSet<>();
-        PlanBudget budget = new PlanBudget(options.maxPlans);
+    /**
+     * {@link #planAll} reusing the complete sub-plans found by the previous targets of a memo. The sub-plans found
+     * for this target are added to the memo when the call ends. Within the call, the complete sub-plans of a
+     * material from which no recipe cycle is reachable are solved once and reused at every depth they fit (filtered
+     * by {@link PlanNode#height()}); like memo hits, these reuses do not count against options.maxPlans.
+     *
+     * @param target desired output material
+     * @param memo   the memo (available materials and options)
+     * @return the craft plans
+     */
+    MemoPlans planAll(MaterialMatcher target, PlanMemo memo) {
+        AllSearch search = new AllSearch(memo);
+        List<PlanNode> roots = solve(target, 0, search);
+        search.complete.forEach(memo::put);
 
-        List<CraftPlan> result = solve(target, available, mode, k, options, 0, memo, visiting, budget);
+        List<CraftPlan> result = new ArrayList<>(roots.size());
+        for (PlanNode root : roots) result.add(new CraftPlan(root));
 
         // tri final
-        result.sort(Comparator.comparingInt(p -> p.totalCost));
+        result.sort(Comparator.comparingInt(CraftPlan::totalCost));
+        return new MemoPlans(result, search.budget.exhausted());
+    }
 
-        if (mode == Mode.BEST_ONLY && !result.isEmpty()) {
-            return List.of(result.get(0));
-        }
+    /**
+     * Creates an empty memo for targets planned with the same available materials and options.
+     *
+     * @param available available materials
+     * @param options   planning options
+     * @return the memo
+     */
+    PlanMemo newMemo(List<MaterialMatcher> available, PlanOptions options) {
+        return new PlanMemo(this, Availability.of(available), options);
+    }
 
-        if (mode == Mode.TOP_K) {
-            return result.size() <= k ? result : result.subList(0, k);
+    /**
+     * Lower bounds of an available set, reusing the last ones while the set does not change.
+     *
+     * @param stock available materials
+     * @return the lower bounds
+     */
+    LowerBounds boundsFor(Availability stock) {
+        LowerBounds b = bounds;
+        if (b == null || !b.available.equals(stock)) {
+            b = new LowerBounds(graph, stock);
+            bounds = b;
         }
-
-        // ALL
-        return result;
+        return b;
     }
 
     /**
      * Recursive solver
      *
-     * @param target    desired output material
-     * @param available available materials
-     * @param mode      planning mode
-     * @param k         number of plans to return (for TOP_K mode)
-     * @param options   planning options
-     * @param depth     current recursion depth
-     * @param memo      memoization map
-     * @param visiting  set of currently visiting target keys (for cycle detection)
-     * @param budget    plan budget tracker
-     * @return list of craft plans
-     */
-    private List<CraftPlan> solve(MaterialMatcher target,
-                                  List<MaterialMatcher> available,
-                                  Mode mode,
-                                  int k,
-                                  PlanOptions options,
-                                  int depth,
-                                  Map<String, List<CraftPlan>> memo,
-                                  Set<String> visiting,
-                                  PlanBudget budget) {
-
-        if (budget.exhausted()) return List.of();
+     * @param target desired output material
+     * @param depth  current recursion depth
+     * @param search state of the call
+     * @return list of sub-plans, by ascending cost
+     */
+    private List<PlanNode> solve(MaterialMatcher target, int depth, AllSearch search) {
+        PlanOptions options = search.options;
+        PlanBudget budget = search.budget;
+
+        if (budget.exhausted()) {
+            search.cutDepth = -1;
+            return List.of();
+        }
         if (depth > options.maxDepth) return List.of();
 
         // Si déjà dispo => plan vide
-        if (isAvailable(target, available)) {
-            return List.of(new CraftPlan(0, List.of()));
+        if (search.available.contains(target)) {
+            return List.of(PlanNode.available(target));
+        }
+
+        MemoKey memoKey = new MemoKey(target, depth);
+        Solved cached = search.solved.get(memoKey);
+        if (cached != null) {
+            search.cutDepth = Math.min(search.cutDepth, cached.cutDepth);
+            return cached.plans;
+        }
+
+        // sous-plans complets d'une cible précédente
+        List<PlanNode> shared = search.memo.plans(target, options.maxDepth - depth);
+        if (shared != null) {
+            search.solved.put(memoKey, new Solved(shared, Integer.MAX_VALUE));
+            return shared;
         }
 
-        String memoKey = target.key() + "|mode=" + mode + "|k=" + (mode == Mode.TOP_K ? k : 0) + "|depth=" + depth;
-        List<CraftPlan> cached = memo.get(memoKey);
-        if (cached != null) return cached;
+        // sous-plans complets trouvés plus tôt dans cet appel, à une autre profondeur
+        List<PlanNode> done = PlanMemo.fit(search.complete.get(target), options.maxDepth - depth);
+        if (done != null && !search.memo.reachesCycle(target)) {
+            search.solved.put(memoKey, new Solved(done, Integer.MAX_VALUE));
+            return done;
+        }
 
         // cycle
-        if (!visiting.add(target.key())) {
+        Integer onPath = search.visiting.putIfAbsent(target, depth);
+        if (onPath != null) {
+            search.cutDepth = Math.min(search.cutDepth, onPath);
             return List.of();
         }
+        int outerCut = search.cutDepth;
+        search.cutDepth = Integer.MAX_VALUE;
 
-        List<CraftPlan> allCandidates = new ArrayList<>();
+        List<PlanNode> allCandidates = new ArrayList<>();
 
-        for (ProcessRecipe r : recipesThatCanProduce(target)) {
+        for (ProcessRecipe r : graph.producersOf(target)) {
             if (budget.exhausted()) break;
 
             // 1) résoudre chaque input => liste de plans par input
-            List<List<CraftPlan>> perInputPlans = new ArrayList<>();
+            List<List<PlanNode>> perInputPlans = new ArrayList<>();
             boolean ok = true;
 
             for (MaterialMatcher in : r.inputs()) {
-                List<CraftPlan> subPlans = solve(in, available, mode, k, options, depth + 1, memo, visiting, budget);
+                List<PlanNode> subPlans = solve(in, depth + 1, search);
                 if (subPlans.isEmpty()) {
                     ok = false;
                     break;
                 }
 
-                // Dans TOP_K/BEST_ONLY, on limite déjà le fan-out par input
-                if (mode != Mode.ALL) {
-                    subPlans = trimTop(subPlans, k);
-                }
-
                 perInputPlans.add(subPlans);
             }
 
             if (!ok) continue;
 
             // 2) combiner les plans des inputs (cross product)
-            List<CraftPlan> combined = combine(perInputPlans, budget);
+            List<PlanNode[]> combined = combine(perInputPlans, budget);
             if (combined.isEmpty()) continue;
 
-            // 3) ajouter l’étape de la recette
-            for (CraftPlan base : combined) {
+            // 3) ajouter l’étape de la recette (les sous-plans sont partagés, pas copiés)
+            int recipeCost = graph.costOf(r);
+            for (PlanNode[] inputs : combined) {
                 if (budget.exhausted()) break;
 
-                List<PlanStep> steps = new ArrayList<>(base.steps);
-                steps.add(new PlanStep(r));
-
-                int totalCost = base.totalCost + r.cost().stream().mapToInt(Integer::intValue).sum();
-
-                CraftPlan candidate = new CraftPlan(totalCost, steps);
-                allCandidates.add(candidate);
+                allCandidates.add(PlanNode.craft(target, r, recipeCost, inputs));
                 budget.consumeOne();
             }
 
             // Petites optimisations
-            allCandidates.sort(Comparator.comparingInt(p -> p.totalCost));
+            allCandidates.sort(Comparator.comparingInt(PlanNode::cost));
 
-            if (mode == Mode.BEST_ONLY && !allCandidates.isEmpty()) {
-                // le meilleur suffit
-                allCandidates = List.of(allCandidates.get(0));
-                break;
-            }
-
-            if (mode == Mode.TOP_K && allCandidates.size() > k) {
-                allCandidates = new ArrayList<>(allCandidates.subList(0, k));
-            }
         }
 
-        visiting.remove(target.key());
+        search.visiting.remove(target);
 
         // Dedup
         if (options.deduplicate && allCandidates.size() > 1) {
-            LinkedHashMap<String, CraftPlan> map = new LinkedHashMap<>();
-            for (CraftPlan p : allCandidates) {
-                map.putIfAbsent(p.signature(), p);
-            }
-            allCandidates = new ArrayList<>(map.values());
-            allCandidates.sort(Comparator.comparingInt(p -> p.totalCost));
+            SignatureSet seen = new SignatureSet();
+            allCandidates.removeIf(p -> !seen.add(p));
         }
 
-        memo.put(memoKey, allCandidates);
+        if (budget.exhausted()) search.cutDepth = -1;
+        int cut = search.cutDepth;
+        search.solved.put(memoKey, new Solved(allCandidates, cut));
+        // aucune coupure sur un ancêtre ni budget épuisé : liste complète, réutilisable à toute profondeur
+        if (cut >= depth) {
+            search.complete.merge(target, new PlanMemo.Entry(options.maxDepth - depth, allCandidates),
+                    (a, b) -> a.remaining() >= b.remaining() ? a : b);
+        }
+        search.cutDepth = Math.min(outerCut, cut);
         return allCandidates;
     }
 
-    /**
-     * Verify if target is available in the list of available materials.
-     *
-     * @param target    desired material
-     * @param available list of available materials
-     * @return true if target is available, false otherwise
-     */
-    private boolean isAvailable(MaterialMatcher target, List<MaterialMatcher> available) {
-        // Simplifié:
-        // - ANY dispo => tout dispo
-        // - même key => dispo
-        for (MaterialMatcher a : available) {
-            if (a.getKind() == MaterialMatcher.Kind.ANY) return true;
-            if (a.key().equals(target.key())) return true;
-        }
-        return false;
-    }
 
     /**
-     * Finds all recipes that can produce the target material.
+     * Combine one list of choices per input:
+     * perInputPlans = [[p1,p2], [q1,q2,q3], [r1]]
+     * => p x q x r
+     * Each combination only references the input sub-plans.
      *
-     * @param target desired output material
-     * @return list of process recipes that can produce the target
-     */
-    private List<ProcessRecipe> recipesThatCanProduce(MaterialMatcher target) {
-        List<ProcessRecipe> list = new ArrayList<>();
-        for (ProcessRecipe r : recipes) {
-            for (MaterialMatcher out : r.outputs()) {
-                if (covers(out, target)) {
-                    list.add(r);
-                    break;
+     * @param perInputPlans list of lists of sub-plans per input
+     * @param budget        plan budget tracker
+     * @return combined input sub-plans, one array per combination
+     */
+    private List<PlanNode[]> combine(List<List<PlanNode>> perInputPlans, PlanBudget budget) {
+        int n = perInputPlans.size();
+        if (n == 0) return List.<PlanNode[]>of(new PlanNode[0]);
+
+        List<PlanNode[]> acc = new ArrayList<>();
+        for (PlanNode p : perInputPlans.get(0)) {
+            PlanNode[] combo = new PlanNode[n];
+            combo[0] = p;
+            acc.add(combo);
+        }
+        for (int i = 1; i < n; i++) {
+            if (budget.exhausted()) return List.of();
+
+            List<PlanNode> next = perInputPlans.get(i);
+            List<PlanNode[]> merged = new ArrayList<>();
+
+            for (PlanNode[] a : acc) {
+                if (budget.exhausted()) break;
+                for (PlanNode b : next) {
+                    if (budget.exhausted()) break;
+
+                    PlanNode[] combo = a.clone();
+                    combo[i] = b;
+                    merged.add(combo);
                 }
             }
+            acc = merged;
+            // petite réduction : garder les meilleurs en premier
+            int filled = i + 1;
+            acc.sort(Comparator.comparingInt(c -> partialCost(c, filled)));
         }
-        return list;
+        return acc;
     }
 
     /**
-     * "out cover target" :
-     * - exact ID cover ID
-     * - TYPE cover TYPE
-     * - CATEGORY cover CATEGORY
-     * - ANY cover All
+     * Cost of the first input sub-plans of a combination.
      *
-     * @param out    output material matcher from recipe
-     * @param target desired target material matcher
+     * @param combo the combination
+     * @param count number of filled inputs
+     * @return the summed cost
      */
-    private boolean covers(MaterialMatcher out, MaterialMatcher target) {
-        if (out.getKind() == MaterialMatcher.Kind.ANY) return true;
-        return out.key().equals(target.key());
+    private static int partialCost(PlanNode[] combo, int count) {
+        int cost = 0;
+        for (int i = 0; i < count; i++) cost += combo[i].cost();
+        return cost;
     }
 
 
     /**
-     * Trim the list to the top K plans based on total cost.
+     * Available materials of a planning call, hashed once.
+     * Simplifié : ANY dispo => tout dispo ; même key => dispo.
      *
-     * @param plans list of craft plans
-     * @param k     number of top plans to retain
-     * @return trimmed list of craft plans
-     */
-    private List<CraftPlan> trimTop(List<CraftPlan> plans, int k) {
-        if (plans.size() <= k) return plans;
-        plans.sort(Comparator.comparingInt(p -> p.totalCost));
-        return plans.subList(0, k);
+     * @param keys available matchers (quantity ignored)
+     * @param any  whether an ANY matcher is available
+     */
+    record Availability(Set<MaterialMatcher> keys, boolean any) {
+
+        /**
+         * Builds the availability of a list of materials.
+         *
+         * @param available available materials
+         * @return the availability
+         */
+        static Availability of(List<MaterialMatcher> available) {
+            Set<MaterialMatcher> keys = new HashSet<>(available);
+            return new Availability(keys, keys.contains(MaterialMatcher.any()));
+        }
+
+        /**
+         * Verify if target is available.
+         *
+         * @param target desired material
+         * @return true if target is available, false otherwise
+         */
+        boolean contains(MaterialMatcher target) {
+            return any || keys.contains(target);
+        }
     }
 
     /**
-     * Combine one list of choices per input:
-     * perInputPlans = [[p1,p2], [q1,q2,q3], [r1]]
-     * => p x q x r
+     * Plans of a target planned on a {@link PlanMemo}.
+     * <p>
+     * Sub-plans read from the memo do not count against the budget of the target: when it runs out, the plans
+     * depend on what the previous targets left in the memo. Otherwise they are the complete result of the target
+     * (within maxDepth), whatever the memo held.
      *
-     * @param perInputPlans list of lists of craft plans per input
-     * @param budget        plan budget tracker
-     * @return combined list of craft plans
+     * @param plans     the plans
+     * @param exhausted whether the budget of the target ran out
      */
-    private List<CraftPlan> combine(List<List<CraftPlan>> perInputPlans, PlanBudget budget) {
-        if (perInputPlans.isEmpty()) return List.of(new CraftPlan(0, List.of()));
+    record MemoPlans(List<CraftPlan> plans, boolean exhausted) {
+    }
 
-        List<CraftPlan> acc = new ArrayList<>(perInputPlans.get(0));
-        for (int i = 1; i < perInputPlans.size(); i++) {
-            if (budget.exhausted()) return List.of();
+    /**
+     * A plan found by {@link #planWithInventory} and the quantities it was planned with.
+     * <p>
+     * The {@link BillOfMaterials#rawNeeds() raw needs} of the bill are the amounts taken from the inventory, whether
+     * by an available node or by a crafted node whose stock only covered part of its quantity (its recipe then runs
+     * for the rest only). Unlike {@code BillOfMaterials.of(plan, quantity)}, equal sub-plans are not merged.
+     *
+     * @param plan the craft plan
+     * @param bill its quantities: amounts taken from the inventory, batches and surplus
+     */
+    public record InventoryPlan(CraftPlan plan, BillOfMaterials bill) {
+    }
 
-            List<CraftPlan> next = perInputPlans.get(i);
-            List<CraftPlan> merged = new ArrayList<>();
+    /**
+     * Memoization key of a sub-problem (matchers are interned, so hashing and equality are cheap).
+     *
+     * @param target the target matcher (quantity ignored)
+     * @param depth  recursion depth
+     */
+    private record MemoKey(MaterialMatcher target, int depth) {
+    }
 
-            for (CraftPlan a : acc) {
-                if (budget.exhausted()) break;
-                for (CraftPlan b : next) {
-                    if (budget.exhausted()) break;
+    /**
+     * Sub-plans of a (target, depth) found by one call.
+     *
+     * @param plans    the sub-plans, by ascending cost
+     * @param cutDepth shallowest path depth of a cycle cut below them (-1 after budget exhaustion)
+     */
+    private record Solved(List<PlanNode> plans, int cutDepth) {
+    }
 
-                    List<PlanStep> steps = new ArrayList<>(a.steps);
-                    steps.addAll(b.steps);
+    /**
+     * State of one {@link #planAll} call.
+     */
+    private static final class AllSearch {
+        /**
+         * memo shared with the other targets
+         */
+        final PlanMemo memo;
+        /**
+         * available materials
+         */
+        final Availability available;
+        /**
+         * planning options
+         */
+        final PlanOptions options;
+        /**
+         * plan budget tracker
+         */
+        final PlanBudget budget;
+        /**
+         * memoization map of this call
+         */
+        final Map<MemoKey, Solved> solved = new HashMap<>();
+        /**
+         * targets currently visited, with their depth (for cycle detection)
+         */
+        final Map<MaterialMatcher, Integer> visiting = new HashMap<>();
+        /**
+         * complete sub-plans found by this call, added to the memo at the end
+         */
+        final Map<MaterialMatcher, PlanMemo.Entry> complete = new HashMap<>();
+        /**
+         * shallowest path depth of a cut in the current sub-search (-1 after budget exhaustion)
+         */
+        int cutDepth = Integer.MAX_VALUE;
 
-                    merged.add(new CraftPlan(a.totalCost + b.totalCost, steps));
-                }
-            }
-            acc = merged;
-            // petite réduction : garder les meilleurs en premier
-            acc.sort(Comparator.comparingInt(p -> p.totalCost));
+        /**
+         * Creates the state of a call.
+         */
+        AllSearch(PlanMemo memo) {
+            this.memo = memo;
+            this.available = memo.available();
+            this.options = memo.options();
+            this.budget = new PlanBudget(options.maxPlans);
         }
-        return acc;
     }
 
-
     /**
      * Plan Budget tracker
      */
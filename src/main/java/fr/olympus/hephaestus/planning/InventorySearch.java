@@ -0,0 +1,478 @@
+package fr.olympus.hephaestus.planning;
+
+import fr.olympus.hephaestus.processing.MaterialMatcher;
+import fr.olympus.hephaestus.processing.ProcessRecipe;
+import fr.olympus.hephaestus.resources.HephaestusData;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static fr.olympus.hephaestus.planning.LowerBounds.INF;
+import static fr.olympus.hephaestus.planning.LowerBounds.UNKNOWN;
+
+/**
+ * Cheapest-plan search against a counted inventory, used by {@link CraftPlanner#planWithInventory}.
+ * <p>
+ * The plan tree is built goal by goal: a goal is a material with the quantity its parent needs, rounded up to whole
+ * batches of the producing recipe as in {@link BillOfMaterials}. An open goal is taken from the stock for its whole
+ * quantity, or made by one of its producers, whose inputs become open goals. When the stock covers only part of the
+ * quantity, the producer makes the rest: the goal takes what is left in stock, or none of it, to leave it to the
+ * other branches (amounts in between are not tried). The stock is shared by the whole tree: what one branch takes
+ * is no longer there for the others, so a branch asking for more than what is left is pruned at once instead of
+ * failing at execution time.
+ * <p>
+ * The stock is kept by inventory entry. A goal draws from the entry of its own material; when HephaestusData is
+ * given, a category goal then draws from the entries of the registered materials it matches, in inventory order
+ * (other ways of splitting it between them are not tried).
+ * <p>
+ * The open goals are solved depth-first (a depth-first branch-and-bound over the choices); a partial plan is pruned
+ * when its cost plus the {@link LowerBounds} of its open goals reaches the best plan found so far. The bounds are
+ * those of the materials in stock, so they stay admissible whatever the amounts. Like {@link BestFirstSearch}, a
+ * crafted material does not repeat on a path, the depth is limited by {@link CraftPlanner.PlanOptions#maxDepth()},
+ * each expanded producer consumes one unit of {@link CraftPlanner.PlanOptions#maxPlans()} and the best plan found
+ * so far is returned when it runs out. Plans have the same cost as those of {@link BestFirstSearch}, which counts
+ * recipes and not batches; when the stock holds the whole quantity of every available material the plan of
+ * {@link CraftPlanner#planBest} takes, the search finds a plan as cheap.
+ * <p>
+ * Not thread-safe: one instance per call.
+ */
+final class InventorySearch {
+
+    /**
+     * The lower bounds and the dense recipe graph.
+     */
+    private final LowerBounds bounds;
+
+    /**
+     * Maximum depth.
+     */
+    private final int maxDepth;
+
+    /**
+     * Remaining producer expansions.
+     */
+    private int budget;
+
+    /**
+     * Remaining stock of each inventory entry.
+     */
+    private final long[] stock;
+
+    /**
+     * Inventory key of each entry.
+     */
+    private final MaterialMatcher[] stockKey;
+
+    /**
+     * Entry of each inventory key.
+     */
+    private final Map<MaterialMatcher, Integer> entryOf = new HashMap<>();
+
+    /**
+     * Entries each material draws from, by material (computed on first use).
+     */
+    private final Map<MaterialMatcher, int[]> entriesOf = new HashMap<>();
+
+    /**
+     * HephaestusData for category lookups (null: a material only draws from its own entry).
+     */
+    private final HephaestusData data;
+
+    /**
+     * Open goals, the next one first.
+     */
+    private final Deque<Goal> open = new ArrayDeque<>();
+
+    /**
+     * Root goal.
+     */
+    private Goal root;
+
+    /**
+     * Cost of the best plan found so far.
+     */
+    private long best = INF;
+
+    /**
+     * The best plan found so far.
+     */
+    private PlanNode bestPlan;
+
+    /**
+     * The bill of materials of {@link #bestPlan}.
+     */
+    private BillOfMaterials bestBill;
+
+    /**
+     * Stock amounts tried by a goal crafted without a partial stock: none.
+     */
+    private static final long[] NONE_TAKEN = {0};
+
+    /**
+     * A material needed by the plan tree, and how it is obtained on the current branch.
+     */
+    private static final class Goal {
+        /**
+         * the material, as asked by the parent recipe
+         */
+        final MaterialMatcher target;
+        /**
+         * its dense index (or {@link LowerBounds#UNKNOWN})
+         */
+        final int material;
+        /**
+         * the quantity needed
+         */
+        final long need;
+        /**
+         * its depth
+         */
+        final int depth;
+        /**
+         * the goal whose recipe needs it (null for the root)
+         */
+        final Goal parent;
+        /**
+         * the chosen recipe, or -1 if taken from the stock
+         */
+        int recipe = -1;
+        /**
+         * the inventory entries it draws from
+         */
+        final int[] entries;
+        /**
+         * the quantity taken from the stock (the recipe makes the rest)
+         */
+        long taken;
+        /**
+         * the quantity taken from each of its entries
+         */
+        final long[] takenFrom;
+        /**
+         * the batches of the chosen recipe
+         */
+        long batches;
+        /**
+         * the input goals of the chosen recipe
+         */
+        Goal[] inputs;
+
+        /**
+         * Creates a goal.
+         */
+        Goal(MaterialMatcher target, int material, long need, int depth, Goal parent, int[] entries) {
+            this.target = target;
+            this.material = material;
+            this.need = need;
+            this.depth = depth;
+            this.parent = parent;
+            this.entries = entries;
+            this.takenFrom = new long[entries.length];
+        }
+    }
+
+    /**
+     * Constructs a search.
+     *
+     * @param bounds    lower bounds for the materials in stock
+     * @param inventory the amount of each material in stock
+     * @param data      HephaestusData for category lookups, or null
+     * @param options   planning options
+     */
+    InventorySearch(LowerBounds bounds, Map<MaterialMatcher, Long> inventory, HephaestusData data,
+                    CraftPlanner.PlanOptions options) {
+        this.bounds = bounds;
+        this.data = data;
+        this.maxDepth = options.maxDepth();
+        this.budget = options.maxPlans();
+        List<MaterialMatcher> keys = new ArrayList<>();
+        for (Map.Entry<MaterialMatcher, Long> e : inventory.entrySet()) {
+            if (e.getValue() > 0) keys.add(e.getKey());
+        }
+        this.stock = new long[keys.size()];
+        this.stockKey = keys.toArray(new MaterialMatcher[0]);
+        for (int k = 0; k < stockKey.length; k++) {
+            stock[k] = inventory.get(stockKey[k]);
+            entryOf.put(stockKey[k], k);
+        }
+    }
+
+    /**
+     * Finds the cheapest plan making a quantity of a target out of the stock.
+     *
+     * @param target   desired output material
+     * @param quantity the quantity to make
+     * @return the cheapest plan and its bill of materials, or empty if none fits the stock within the limits
+     */
+    Optional<CraftPlanner.InventoryPlan> plan(MaterialMatcher target, long quantity) {
+        root = new Goal(target, bounds.indexOf(target), quantity, 0, null, entriesOf(target));
+        open.push(root);
+        // une cible inconnue des recettes n'est bornée que par le stock
+        search(0, stockOf(root) >= quantity ? 0 : bounds.h(root.material));
+        if (bestPlan == null) return Optional.empty();
+        return Optional.of(new CraftPlanner.InventoryPlan(new CraftPlanner.CraftPlan(bestPlan), bestBill));
+    }
+
+    /**
+     * Solves the next open goal, then the following ones recursively. The open goals and the stock are restored
+     * before returning.
+     *
+     * @param cost  cost of the recipes chosen so far
+     * @param hOpen sum of the lower bounds of the open goals
+     */
+    private void search(long cost, long hOpen) {
+        if (cost + hOpen >= best) return;
+        Goal g = open.poll();
+        if (g == null) {
+            best = cost;
+            bestPlan = toPlan(root);
+            bestBill = bill();
+            return;
+        }
+        long rest = g == root ? 0 : hOpen - bounds.h(g.material);
+        long inStock = stockOf(g);
+
+        // depuis le stock : rien à payer, mais les autres branches n'y auront plus accès
+        if (inStock >= g.need) {
+            take(g, g.need);
+            search(cost, rest);
+            giveBack(g);
+        }
+
+        if (canCraft(g)) {
+            int[] producers = bounds.producers(g.material);
+            long[] f = new long[producers.length];
+            int[] order = new int[producers.length];
+            int count = 0;
+            for (int r : producers) {
+                long fr = bounds.estimate(r);
+                if (fr < INF && (bounds.inputs[r].length == 0 || g.depth < maxDepth)) {
+                    f[count] = fr;
+                    order[count++] = r;
+                }
+            }
+            sortByEstimate(order, f, count);
+
+            // stock partiel : on le prend et on fabrique le reste, ou on le laisse aux autres branches
+            long[] takes = inStock > 0 && inStock < g.need ? new long[]{inStock, 0} : NONE_TAKEN;
+            for (long t : takes) {
+                take(g, t);
+                for (int c = 0; c < count && cost + f[c] + rest < best; c++) {
+                    if (budget <= 0) break;
+                    budget--;
+
+                    int r = order[c];
+                    ProcessRecipe recipe = bounds.recipes.get(r);
+                    List<MaterialMatcher> ins = recipe.inputs();
+                    MaterialMatcher made = recipe.outputs().get(BillOfMaterials.output(recipe, g.target));
+                    long batches = Math.ceilDiv(g.need - t, made.getQuantity());
+                    Goal[] inputs = new Goal[ins.size()];
+                    for (int i = 0; i < inputs.length; i++) {
+                        long need = Math.multiplyExact(batches, ins.get(i).getQuantity());
+                        inputs[i] = new Goal(ins.get(i), bounds.inputs[r][i], need, g.depth + 1, g,
+                                entriesOf(ins.get(i)));
+                    }
+                    g.recipe = r;
+                    g.batches = batches;
+                    g.inputs = inputs;
+                    for (int i = inputs.length - 1; i >= 0; i--) open.push(inputs[i]);
+                    search(cost + bounds.cost[r], rest + f[c] - bounds.cost[r]);
+                    for (int i = 0; i < inputs.length; i++) open.pop();
+                }
+                giveBack(g);
+            }
+            g.recipe = -1;
+            g.batches = 0;
+            g.inputs = null;
+        }
+        open.push(g);
+    }
+
+    /**
+     * Whether a goal may be crafted: its material is not crafted by one of its ancestors.
+     *
+     * @param g the goal
+     * @return true if it may be crafted
+     */
+    private static boolean canCraft(Goal g) {
+        if (g.material == UNKNOWN) return true;
+        for (Goal a = g.parent; a != null; a = a.parent) {
+            if (a.material == g.material) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the inventory entries a material draws from: its own entry, then, for a category, the entries of the
+     * registered materials it matches.
+     *
+     * @param material the material
+     * @return entry indices
+     */
+    private int[] entriesOf(MaterialMatcher material) {
+        int[] entries = entriesOf.get(material);
+        if (entries != null) return entries;
+
+        Integer own = entryOf.get(material);
+        int[] buf = new int[stockKey.length];
+        int n = 0;
+        if (own != null) buf[n++] = own;
+        if (data != null) {
+            for (int k = 0; k < stockKey.length; k++) {
+                if (drawsFrom(material, stockKey[k], data)) buf[n++] = k;
+            }
+        }
+        entries = Arrays.copyOf(buf, n);
+        entriesOf.put(material, entries);
+        return entries;
+    }
+
+    /**
+     * Whether a material draws from the stock of another inventory key: the material is a category, and the key a
+     * registered material ID it matches.
+     *
+     * @param material the material
+     * @param key      the inventory key
+     * @param data     HephaestusData for category lookups
+     * @return true if the material may use the stock of the key
+     */
+    static boolean drawsFrom(MaterialMatcher material, MaterialMatcher key, HephaestusData data) {
+        MaterialMatcher.Kind kind = material.getKind();
+        if (kind != MaterialMatcher.Kind.ANY_OF_CATEGORIES && kind != MaterialMatcher.Kind.ALL_OF_CATEGORIES) {
+            return false;
+        }
+        if (key.getKind() != MaterialMatcher.Kind.ID) return false;
+        String id = key.getMaterialId();
+        return data.getAllMaterialIds().contains(id) && material.matches(id, data);
+    }
+
+    /**
+     * Returns the remaining stock a goal can draw from.
+     *
+     * @param g the goal
+     * @return the amount left
+     */
+    private long stockOf(Goal g) {
+        long total = 0;
+        for (int k : g.entries) total += stock[k];
+        return total;
+    }
+
+    /**
+     * Takes an amount from the entries of a goal, in order (the amount is at most {@link #stockOf(Goal)}).
+     *
+     * @param g      the goal
+     * @param amount the amount
+     */
+    private void take(Goal g, long amount) {
+        g.taken = amount;
+        for (int i = 0; i < g.entries.length && amount > 0; i++) {
+            long part = Math.min(stock[g.entries[i]], amount);
+            stock[g.entries[i]] -= part;
+            g.takenFrom[i] = part;
+            amount -= part;
+        }
+    }
+
+    /**
+     * Gives back what a goal took from the stock.
+     *
+     * @param g the goal
+     */
+    private void giveBack(Goal g) {
+        for (int i = 0; i < g.entries.length; i++) {
+            stock[g.entries[i]] += g.takenFrom[i];
+            g.takenFrom[i] = 0;
+        }
+        g.taken = 0;
+    }
+
+    /**
+     * Stable insertion sort of candidate recipes by estimate (producer lists are short).
+     *
+     * @param order recipe positions
+     * @param f     their estimates
+     * @param count number of candidates
+     */
+    private static void sortByEstimate(int[] order, long[] f, int count) {
+        for (int i = 1; i < count; i++) {
+            long fi = f[i];
+            int oi = order[i];
+            int j = i - 1;
+            while (j >= 0 && f[j] > fi) {
+                f[j + 1] = f[j];
+                order[j + 1] = order[j];
+                j--;
+            }
+            f[j + 1] = fi;
+            order[j + 1] = oi;
+        }
+    }
+
+    /**
+     * Bill of materials of the goals of the current branch: what they take from the stock and the batches they
+     * run, in execution order (children before parents).
+     *
+     * @return the bill of materials
+     */
+    private BillOfMaterials bill() {
+        Map<MaterialMatcher, Long> fromStock = new LinkedHashMap<>();
+        Map<MaterialMatcher, Long> surplus = new LinkedHashMap<>();
+        Map<ProcessRecipe, Long> batches = new LinkedHashMap<>();
+        long[] totals = new long[2];
+        addToBill(root, fromStock, surplus, batches, totals);
+        return new BillOfMaterials(root.target, root.need, fromStock, surplus, batches, totals[0], totals[1]);
+    }
+
+    /**
+     * Adds a goal and its inputs to a bill of materials.
+     *
+     * @param g         a solved goal
+     * @param fromStock amounts taken from the stock
+     * @param surplus   amounts made but not needed
+     * @param batches   batches of each recipe
+     * @param totals    total batches and total cost
+     */
+    private void addToBill(Goal g, Map<MaterialMatcher, Long> fromStock, Map<MaterialMatcher, Long> surplus,
+                           Map<ProcessRecipe, Long> batches, long[] totals) {
+        if (g.recipe >= 0) {
+            for (Goal in : g.inputs) addToBill(in, fromStock, surplus, batches, totals);
+        }
+        for (int i = 0; i < g.entries.length; i++) {
+            if (g.takenFrom[i] > 0) fromStock.merge(stockKey[g.entries[i]], g.takenFrom[i], Math::addExact);
+        }
+        if (g.recipe < 0) return;
+
+        ProcessRecipe recipe = bounds.recipes.get(g.recipe);
+        List<MaterialMatcher> outputs = recipe.outputs();
+        int made = BillOfMaterials.output(recipe, g.target);
+        for (int o = 0; o < outputs.size(); o++) {
+            long produced = Math.multiplyExact(g.batches, outputs.get(o).getQuantity());
+            long extra = o == made ? produced - (g.need - g.taken) : produced;
+            if (extra > 0) surplus.merge(o == made ? g.target : outputs.get(o), extra, Math::addExact);
+        }
+        batches.merge(recipe, g.batches, Math::addExact);
+        totals[0] = Math.addExact(totals[0], g.batches);
+        totals[1] = Math.addExact(totals[1], Math.multiplyExact(g.batches, bounds.cost[g.recipe]));
+    }
+
+    /**
+     * Converts the goals of the current branch to plan nodes.
+     *
+     * @param g a solved goal
+     * @return its plan node
+     */
+    private PlanNode toPlan(Goal g) {
+        if (g.recipe < 0) return PlanNode.available(g.target);
+        PlanNode[] inputs = new PlanNode[g.inputs.length];
+        for (int i = 0; i < inputs.length; i++) inputs[i] = toPlan(g.inputs[i]);
+        return PlanNode.craft(g.target, bounds.recipes.get(g.recipe), (int) bounds.cost[g.recipe], inputs);
+    }
+}
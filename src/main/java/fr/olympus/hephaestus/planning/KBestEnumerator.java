@@ -0,0 +1,424 @@
+package fr.olympus.hephaestus.planning;
+
+import fr.olympus.hephaestus.processing.MaterialMatcher;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static fr.olympus.hephaestus.planning.LowerBounds.INF;
+import static fr.olympus.hephaestus.planning.LowerBounds.UNKNOWN;
+
+/**
+ * Lazy enumeration of the plans of a target in ascending cost, used by {@link CraftPlanner#planTopK} and
+ * {@link CraftPlanner#planIterator}.
+ * <p>
+ * Lazy k-best over the recipe hypergraph unrolled by depth (node = material at a depth, hyperedge = producer
+ * recipe to its inputs one level deeper, so the unrolled graph is acyclic). Every node keeps the derivations found
+ * so far, in ascending cost, and a heap of candidates {@code (recipe, j)} where {@code j[i]} is the rank of the
+ * derivation used for input i. Popping a candidate pushes its neighbours {@code j + e_i}, which asks the child for
+ * its next derivation only then. The n-th plan thus costs about n x depth heap operations instead of the cross
+ * products of the inputs.
+ * <p>
+ * A derivation never crafts a material below itself (as with the recursive planner): a candidate whose input
+ * derivations craft the node's material is skipped, its neighbours are still explored. Producers whose lower bound
+ * is infinite are ignored. Each popped candidate consumes one unit of {@link CraftPlanner.PlanOptions#maxPlans()};
+ * the enumeration ends when it runs out.
+ * <p>
+ * The unrolled nodes do not depend on the target: a {@link Forest} can be shared by the enumerations of several
+ * targets with the same available materials and maxDepth, concurrently. The derivations of a node are found in the
+ * same order whichever enumeration asks for them first, as long as no budget runs out.
+ */
+final class KBestEnumerator implements Iterator<CraftPlanner.CraftPlan> {
+
+    /**
+     * The unrolled graph.
+     */
+    private final Forest forest;
+
+    /**
+     * Whether plans with an already returned signature are skipped.
+     */
+    private final boolean deduplicate;
+
+    /**
+     * Remaining candidate pops.
+     */
+    private final Budget budget = new Budget();
+
+    /**
+     * The target.
+     */
+    private final MaterialMatcher target;
+
+    /**
+     * The target node (null when the target is available).
+     */
+    private final Forest.Node root;
+
+    /**
+     * Rank of the next root derivation.
+     */
+    private int rank;
+
+    /**
+     * Signatures already returned.
+     */
+    private final CraftPlanner.SignatureSet signatures = new CraftPlanner.SignatureSet();
+
+    /**
+     * The next plan, or null if not computed yet.
+     */
+    private CraftPlanner.CraftPlan next;
+
+    /**
+     * Whether the enumeration is over.
+     */
+    private boolean done;
+
+    /**
+     * A derivation of a node: recipe and input derivations (recipe -1 when the material is available).
+     *
+     * @param cost    total cost
+     * @param recipe  recipe position, or -1 for an available material
+     * @param inputs  derivations of the inputs, in input order
+     * @param crafted crafted materials (dense indices)
+     */
+    private record Derivation(long cost, int recipe, Derivation[] inputs, BitSet crafted) {
+    }
+
+    /**
+     * A candidate derivation: a producer and the rank of the derivation of each input.
+     *
+     * @param cost     total cost
+     * @param producer rank of the producer in the node's producer list
+     * @param ranks    rank of each input derivation
+     * @param inputs   the input derivations
+     */
+    private record Candidate(long cost, int producer, int[] ranks, Derivation[] inputs) {
+    }
+
+    /**
+     * Candidate pops left to an enumeration.
+     */
+    private static final class Budget {
+
+        /**
+         * Remaining pops.
+         */
+        int remaining;
+    }
+
+    /**
+     * The recipe graph unrolled by depth for some available materials and maxDepth, with the derivations found so
+     * far. Thread-safe: a node is locked while it computes derivations, always before its children (one level
+     * deeper), so enumerations sharing nodes cannot deadlock.
+     */
+    static final class Forest {
+
+        /**
+         * The lower bounds and the dense recipe graph.
+         */
+        private final LowerBounds bounds;
+
+        /**
+         * Maximum depth.
+         */
+        private final int maxDepth;
+
+        /**
+         * Unrolled nodes, by (material, depth).
+         */
+        private final Map<Long, Node> nodes = new ConcurrentHashMap<>();
+
+        /**
+         * Plan nodes of the derivations already converted, so that returned plans share their sub-plans.
+         */
+        private final Map<Derivation, PlanNode> converted = Collections.synchronizedMap(new IdentityHashMap<>());
+
+        /**
+         * Constructs an empty forest.
+         *
+         * @param bounds   lower bounds for the available materials
+         * @param maxDepth maximum depth
+         */
+        Forest(LowerBounds bounds, int maxDepth) {
+            this.bounds = bounds;
+            this.maxDepth = maxDepth;
+        }
+
+        /**
+         * Returns the node of a material at a depth, creating it on first use.
+         */
+        private Node node(int material, int depth) {
+            return nodes.computeIfAbsent((long) material * (maxDepth + 2) + depth, k -> new Node(material, depth));
+        }
+
+        /**
+         * Converts a derivation to plan nodes, reusing the nodes of the derivations already converted.
+         *
+         * @param d      the derivation
+         * @param target the material it makes
+         * @return the plan node
+         */
+        private PlanNode toPlan(Derivation d, MaterialMatcher target) {
+            if (d.recipe < 0) return PlanNode.available(target);
+            PlanNode plan = converted.get(d);
+            if (plan != null) return plan;
+
+            List<MaterialMatcher> ins = bounds.recipes.get(d.recipe).inputs();
+            PlanNode[] inputs = new PlanNode[d.inputs.length];
+            for (int i = 0; i < inputs.length; i++) inputs[i] = toPlan(d.inputs[i], ins.get(i));
+            plan = PlanNode.craft(target, bounds.recipes.get(d.recipe), (int) bounds.cost[d.recipe], inputs);
+            // les dérivations d'un matériau inconnu servent à plusieurs cibles : pas de partage
+            if (bounds.indexOf(target) != UNKNOWN) converted.put(d, plan);
+            return plan;
+        }
+
+        /**
+         * A material at a depth.
+         */
+        private final class Node {
+
+            /**
+             * Dense index of the material (or {@link LowerBounds#UNKNOWN}).
+             */
+            final int material;
+
+            /**
+             * Depth of the node.
+             */
+            final int depth;
+
+            /**
+             * Derivations found so far, ascending.
+             */
+            final List<Derivation> found = new ArrayList<>();
+
+            /**
+             * Pending candidates (null until first use).
+             */
+            PriorityQueue<Candidate> heap;
+
+            /**
+             * Rank vectors already pushed, by producer.
+             */
+            Set<List<Integer>> pushed;
+
+            /**
+             * Candidates left incomplete when the budget ran out, as {producer, ranks...}: offered again by the next
+             * {@link #get}, so that an enumeration sharing the node later misses none.
+             */
+            List<int[]> deferred;
+
+            /**
+             * Constructs a node.
+             */
+            Node(int material, int depth) {
+                this.material = material;
+                this.depth = depth;
+            }
+
+            /**
+             * Returns the derivation of a rank, computing the missing ones.
+             *
+             * @param k      the rank
+             * @param budget pops left to the enumeration
+             * @return the derivation, or null if the node has fewer derivations or the budget ran out
+             */
+            synchronized Derivation get(int k, Budget budget) {
+                if (k < found.size()) return found.get(k);
+                if (heap == null) start(budget);
+                if (!deferred.isEmpty()) retry(budget);
+                while (found.size() <= k && !heap.isEmpty()) {
+                    if (budget.remaining <= 0) return null;
+                    budget.remaining--;
+
+                    Candidate c = heap.poll();
+                    for (int i = 0; i < c.ranks.length; i++) push(c.producer, c.ranks, i, budget);
+                    if (valid(c)) {
+                        BitSet crafted = new BitSet();
+                        if (material != UNKNOWN) crafted.set(material);
+                        for (Derivation d : c.inputs) crafted.or(d.crafted);
+                        found.add(new Derivation(c.cost, producers()[c.producer], c.inputs, crafted));
+                    }
+                }
+                return k < found.size() ? found.get(k) : null;
+            }
+
+            /**
+             * Seeds the heap with the best candidate of every producer.
+             */
+            private void start(Budget budget) {
+                heap = new PriorityQueue<>((a, b) -> a.cost != b.cost
+                        ? Long.compare(a.cost, b.cost) : Integer.compare(a.producer, b.producer));
+                pushed = new HashSet<>();
+                deferred = new ArrayList<>();
+                if (depth > maxDepth) return;
+                if (material != UNKNOWN && bounds.availableAt.get(material)) {
+                    found.add(new Derivation(0, -1, new Derivation[0], new BitSet()));
+                    return;
+                }
+                int[] producers = producers();
+                for (int p = 0; p < producers.length; p++) {
+                    if (bounds.estimate(producers[p]) >= INF) continue;
+                    int[] ranks = new int[bounds.inputs[producers[p]].length];
+                    offer(p, ranks, budget);
+                }
+            }
+
+            /**
+             * Offers again the candidates deferred for lack of budget.
+             */
+            private void retry(Budget budget) {
+                List<int[]> again = deferred;
+                deferred = new ArrayList<>();
+                for (int[] c : again) {
+                    int[] ranks = Arrays.copyOfRange(c, 1, c.length);
+                    pushed.remove(key(c[0], ranks));
+                    offer(c[0], ranks, budget);
+                }
+            }
+
+            /**
+             * Pushes the neighbour of a candidate with one more rank on an input.
+             */
+            private void push(int producer, int[] ranks, int input, Budget budget) {
+                int[] next = ranks.clone();
+                next[input]++;
+                offer(producer, next, budget);
+            }
+
+            /**
+             * Pushes a candidate if all its input derivations exist and it was not pushed yet.
+             */
+            private void offer(int producer, int[] ranks, Budget budget) {
+                if (!pushed.add(key(producer, ranks))) return;
+
+                int recipe = producers()[producer];
+                int[] inputs = bounds.inputs[recipe];
+                Derivation[] subs = new Derivation[inputs.length];
+                long cost = bounds.cost[recipe];
+                for (int i = 0; i < inputs.length; i++) {
+                    subs[i] = node(inputs[i], depth + 1).get(ranks[i], budget);
+                    if (subs[i] == null) {
+                        // budget épuisé : l'entrée existe peut-être, à reprendre plus tard
+                        if (budget.remaining <= 0) {
+                            int[] c = new int[ranks.length + 1];
+                            c[0] = producer;
+                            System.arraycopy(ranks, 0, c, 1, ranks.length);
+                            deferred.add(c);
+                        }
+                        return;
+                    }
+                    cost += subs[i].cost;
+                }
+                heap.add(new Candidate(cost, producer, ranks, subs));
+            }
+
+            /**
+             * Key of a candidate in {@link #pushed}.
+             */
+            private static List<Integer> key(int producer, int[] ranks) {
+                List<Integer> key = new ArrayList<>(ranks.length + 1);
+                key.add(producer);
+                for (int r : ranks) key.add(r);
+                return key;
+            }
+
+            /**
+             * Checks that no input derivation crafts this node's material.
+             */
+            private boolean valid(Candidate c) {
+                if (material == UNKNOWN) return true;
+                for (Derivation d : c.inputs) {
+                    if (d.crafted.get(material)) return false;
+                }
+                return true;
+            }
+
+            /**
+             * Producer positions of the material.
+             */
+            private int[] producers() {
+                return bounds.producers(material);
+            }
+        }
+    }
+
+    /**
+     * Constructs an enumerator on its own forest.
+     *
+     * @param target  desired output material
+     * @param bounds  lower bounds for the available materials
+     * @param options planning options
+     */
+    KBestEnumerator(MaterialMatcher target, LowerBounds bounds, CraftPlanner.PlanOptions options) {
+        this(target, new Forest(bounds, options.maxDepth()), options);
+    }
+
+    /**
+     * Constructs an enumerator on a shared forest.
+     *
+     * @param target  desired output material
+     * @param forest  the forest (same available materials and maxDepth as the options)
+     * @param options planning options
+     */
+    KBestEnumerator(MaterialMatcher target, Forest forest, CraftPlanner.PlanOptions options) {
+        this.forest = forest;
+        this.deduplicate = options.deduplicate();
+        this.budget.remaining = options.maxPlans();
+        this.target = target;
+        if (forest.bounds.available.contains(target)) {
+            this.root = null;
+            this.next = new CraftPlanner.CraftPlan(PlanNode.available(target));
+        } else {
+            this.root = forest.node(forest.bounds.indexOf(target), 0);
+        }
+    }
+
+    /**
+     * Whether the budget ran out: the enumeration may have ended before the last plan.
+     *
+     * @return true if no candidate pop is left
+     */
+    boolean exhausted() {
+        return budget.remaining <= 0;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next != null) return true;
+        if (done || root == null) return false;
+        while (true) {
+            Derivation d = root.get(rank++, budget);
+            if (d == null) {
+                done = true;
+                return false;
+            }
+            PlanNode plan = forest.toPlan(d, target);
+            if (!deduplicate || signatures.add(plan)) {
+                next = new CraftPlanner.CraftPlan(plan);
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public CraftPlanner.CraftPlan next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        CraftPlanner.CraftPlan plan = next;
+        next = null;
+        return plan;
+    }
+}
@@ -0,0 +1,268 @@
+package fr.olympus.hephaestus.planning;
+
+import fr.olympus.hephaestus.processing.MaterialMatcher;
+import fr.olympus.hephaestus.processing.ProcessRecipe;
+import fr.olympus.hephaestus.processing.RecipeGraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Admissible lower bounds of a recipe graph for a set of available materials, with the graph in dense form
+ * (materials and recipes by index), used by the planner searches.
+ * <p>
+ * {@code h(m)} is the cost of the cheapest derivation of material m ignoring depth and cycle limits, computed by
+ * Knuth's generalization of Dijkstra's algorithm (available materials cost 0). Immutable; built once per
+ * (graph, available materials) and shared by the searches.
+ */
+final class LowerBounds {
+
+    /**
+     * Cost of an underivable material.
+     */
+    static final long INF = Long.MAX_VALUE / 4;
+
+    /**
+     * Index of a material no recipe mentions (only producible by {@code ANY} outputs).
+     */
+    static final int UNKNOWN = -1;
+
+    /**
+     * The available materials the bounds were computed for.
+     */
+    final CraftPlanner.Availability available;
+
+    /**
+     * Recipes by position.
+     */
+    final List<ProcessRecipe> recipes;
+
+    /**
+     * Total cost of each recipe.
+     */
+    final long[] cost;
+
+    /**
+     * Dense input indices of each recipe.
+     */
+    final int[][] inputs;
+
+    /**
+     * Dense index of every material mentioned by a recipe.
+     */
+    private final Map<MaterialMatcher, Integer> index;
+
+    /**
+     * Producer positions of each material (with {@code ANY} producers, in recipe order).
+     */
+    private final int[][] producers;
+
+    /**
+     * Positions of the {@code ANY} producers.
+     */
+    private final int[] anyProducers;
+
+    /**
+     * Available materials, by dense index.
+     */
+    final BitSet availableAt;
+
+    /**
+     * Cheapest derivation cost of each material.
+     */
+    final long[] h;
+
+    /**
+     * Cheapest derivation cost of a material no recipe mentions (made by an {@code ANY} output).
+     */
+    private final long anyCost;
+
+    /**
+     * Builds the bounds of a graph for the given available materials.
+     *
+     * @param graph     the recipes
+     * @param available the available materials
+     */
+    LowerBounds(RecipeGraph graph, CraftPlanner.Availability available) {
+        this.available = available;
+        this.recipes = graph.recipes();
+        int rc = recipes.size();
+
+        index = new HashMap<>();
+        List<MaterialMatcher> materials = new ArrayList<>();
+        Map<ProcessRecipe, Integer> position = new IdentityHashMap<>();
+        cost = new long[rc];
+        inputs = new int[rc][];
+        List<Integer> any = new ArrayList<>();
+        for (int r = 0; r < rc; r++) {
+            ProcessRecipe recipe = recipes.get(r);
+            position.putIfAbsent(recipe, r);
+            cost[r] = graph.costOf(recipe);
+            List<MaterialMatcher> ins = recipe.inputs();
+            inputs[r] = new int[ins.size()];
+            for (int i = 0; i < ins.size(); i++) inputs[r][i] = denseIndex(ins.get(i), materials);
+            for (MaterialMatcher out : recipe.outputs()) {
+                if (out.getKind() != MaterialMatcher.Kind.ANY) denseIndex(out, materials);
+                else if (any.isEmpty() || any.getLast() != r) any.add(r);
+            }
+        }
+        anyProducers = any.stream().mapToInt(Integer::intValue).toArray();
+
+        int n = materials.size();
+        producers = new int[n][];
+        availableAt = new BitSet(n);
+        for (int m = 0; m < n; m++) {
+            MaterialMatcher mat = materials.get(m);
+            if (available.contains(mat)) availableAt.set(m);
+            List<ProcessRecipe> ps = graph.producersOf(mat);
+            producers[m] = new int[ps.size()];
+            for (int p = 0; p < ps.size(); p++) producers[m][p] = position.get(ps.get(p));
+        }
+
+        h = new long[n];
+        anyCost = knuth(n);
+    }
+
+    /**
+     * Returns the dense index of a material, assigning one if needed.
+     */
+    private int denseIndex(MaterialMatcher m, List<MaterialMatcher> materials) {
+        Integer i = index.get(m);
+        if (i != null) return i;
+        index.put(m, materials.size());
+        materials.add(m);
+        return materials.size() - 1;
+    }
+
+    /**
+     * Computes {@link #h} by Knuth's algorithm: a recipe fires once all its inputs are settled, offering
+     * {@code cost(r) + sum h(inputs)} to the materials it produces.
+     *
+     * @param n number of materials
+     * @return the cheapest {@code ANY} producer cost
+     */
+    private long knuth(int n) {
+        Arrays.fill(h, INF);
+        int rc = recipes.size();
+        int[] remaining = new int[rc];
+        long[] partial = new long[rc];
+
+        // consommateurs par matériau, une entrée par occurrence
+        int[] degree = new int[n + 1];
+        for (int r = 0; r < rc; r++) for (int in : inputs[r]) degree[in + 1]++;
+        for (int m = 0; m < n; m++) degree[m + 1] += degree[m];
+        int[] consumers = new int[degree[n]];
+        int[] fill = Arrays.copyOf(degree, n);
+        for (int r = 0; r < rc; r++) for (int in : inputs[r]) consumers[fill[in]++] = r;
+
+        PriorityQueue<long[]> queue = new PriorityQueue<>((a, b) -> Long.compare(a[0], b[0]));
+        for (int m = availableAt.nextSetBit(0); m >= 0; m = availableAt.nextSetBit(m + 1)) {
+            h[m] = 0;
+            queue.add(new long[]{0, m});
+        }
+        long anyBest = INF;
+        for (int r = 0; r < rc; r++) {
+            remaining[r] = inputs[r].length;
+            partial[r] = cost[r];
+            if (remaining[r] == 0) anyBest = Math.min(anyBest, fire(r, partial[r], queue));
+        }
+
+        BitSet settled = new BitSet(n);
+        while (!queue.isEmpty()) {
+            long[] top = queue.poll();
+            int m = (int) top[1];
+            if (settled.get(m) || top[0] > h[m]) continue;
+            settled.set(m);
+            for (int c = degree[m]; c < degree[m + 1]; c++) {
+                int r = consumers[c];
+                partial[r] += h[m];
+                if (--remaining[r] == 0) anyBest = Math.min(anyBest, fire(r, partial[r], queue));
+            }
+        }
+        return anyBest;
+    }
+
+    /**
+     * Offers a fired recipe's cost to the materials it produces.
+     *
+     * @param r     recipe position
+     * @param value its derivation cost
+     * @param queue the settling queue
+     * @return the value if the recipe has an {@code ANY} output, INF otherwise
+     */
+    private long fire(int r, long value, PriorityQueue<long[]> queue) {
+        boolean anyOutput = false;
+        for (MaterialMatcher out : recipes.get(r).outputs()) {
+            if (out.getKind() == MaterialMatcher.Kind.ANY) {
+                anyOutput = true;
+                continue;
+            }
+            offer(index.get(out), value, queue);
+        }
+        if (!anyOutput) return INF;
+        for (int m = 0; m < h.length; m++) offer(m, value, queue);
+        return value;
+    }
+
+    /**
+     * Lowers the bound of a material.
+     */
+    private void offer(int m, long value, PriorityQueue<long[]> queue) {
+        if (value < h[m]) {
+            h[m] = value;
+            queue.add(new long[]{value, m});
+        }
+    }
+
+    /**
+     * Returns the dense index of a material.
+     *
+     * @param m the material
+     * @return its index, or {@link #UNKNOWN} if no recipe mentions it
+     */
+    int indexOf(MaterialMatcher m) {
+        Integer i = index.get(m);
+        return i == null ? UNKNOWN : i;
+    }
+
+    /**
+     * Returns the lower bound of a material.
+     *
+     * @param m dense index (or {@link #UNKNOWN})
+     * @return the bound
+     */
+    long h(int m) {
+        return m == UNKNOWN ? anyCost : h[m];
+    }
+
+    /**
+     * Returns the producer positions of a material.
+     *
+     * @param m dense index (or {@link #UNKNOWN})
+     * @return the producers, in recipe order
+     */
+    int[] producers(int m) {
+        return m == UNKNOWN ? anyProducers : producers[m];
+    }
+
+    /**
+     * Returns the lower bound of a recipe: {@code cost(r) + sum h(inputs)}.
+     *
+     * @param r recipe position
+     * @return the bound (at least INF if an input is underivable)
+     */
+    long estimate(int r) {
+        long f = cost[r];
+        for (int in : inputs[r]) {
+            f += h[in];
+            if (f >= INF) return INF;
+        }
+        return f;
+    }
+}
@@ -4,8 +4,8 @@ import fr.olympus.hephaestus.processing.MaterialMatcher;
 import fr.olympus.hephaestus.resources.HephaestusData;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
-import java.util.Set;
 
 /**
  * Utils for expanding material targets.
@@ -23,6 +23,7 @@ public final class MaterialTargetExpander {
     /**
      * Transforms a "category" target into multiple "ID" targets (all compatible materials).
      * If the target is already ID/ANY, returns it as is.
+     * Materials are returned in registration order.
      *
      * @param target the target to expand
      * @param data   the HephaestusData instance to query materials
@@ -38,37 +39,15 @@ public final class MaterialTargetExpander {
             case ANY -> List.of(MaterialMatcher.any());
             case ID -> List.of(target);
 
-            case ANY_OF_CATEGORIES -> {
-                List<MaterialMatcher> out = new ArrayList<>();
-                Set<String> wanted = target.getCategoryKeys();
+            case ANY_OF_CATEGORIES, ALL_OF_CATEGORIES -> {
+                // index inversé : union / intersection des catégories, sans parcourir tous les matériaux
+                BitSet found = target.getKind() == MaterialMatcher.Kind.ANY_OF_CATEGORIES
+                        ? data.getMaterialsWithAnyCategory(target.getCategoryMask())
+                        : data.getMaterialsWithAllCategories(target.getCategoryMask());
 
-                for (String id : data.getAllMaterialIds()) {
-                    Set<String> cats = data.getMaterialCategoryKeys(id);
-                    boolean ok = false;
-                    for (String w : wanted) {
-                        if (cats.contains(w)) {
-                            ok = true;
-                            break;
-                        }
-                    }
-                    if (ok) {
-                        out.add(MaterialMatcher.id(id));
-                        if (out.size() >= limit) break;
-                    }
-                }
-                yield out;
-            }
-
-            case ALL_OF_CATEGORIES -> {
-                List<MaterialMatcher> out = new ArrayList<>();
-                Set<String> wanted = target.getCategoryKeys();
-
-                for (String id : data.getAllMaterialIds()) {
-                    Set<String> cats = data.getMaterialCategoryKeys(id);
-                    if (cats.containsAll(wanted)) {
-                        out.add(MaterialMatcher.id(id));
-                        if (out.size() >= limit) break;
-                    }
+                List<MaterialMatcher> out = new ArrayList<>(Math.min(limit, found.cardinality()));
+                for (int i = found.nextSetBit(0); i >= 0 && out.size() < limit; i = found.nextSetBit(i + 1)) {
+                    out.add(MaterialMatcher.id(data.getMaterialIdAt(i)));
                 }
                 yield out;
             }
@@ -0,0 +1,271 @@
+package fr.olympus.hephaestus.planning;
+
+import fr.olympus.hephaestus.processing.MaterialMatcher;
+import fr.olympus.hephaestus.processing.ProcessRecipe;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sub-plans memoized across the targets planned with the same available materials and options, e.g. the concrete
+ * targets of one {@link PlannerFacade} call.
+ * <p>
+ * Each mode keeps its own structure, all independent of the target:
+ * <ul>
+ *     <li>best plan: the path-independent optimal sub-plans and proven lower bounds of {@link BestFirstSearch};</li>
+ *     <li>top-K: one {@link KBestEnumerator.Forest} whose derivations are shared by the enumerations (k only decides
+ *     how far each enumeration goes);</li>
+ *     <li>all plans: the sub-plans of every material computed without cycle cut nor budget exhaustion, with the
+ *     remaining depth they were computed for. A lookup with less remaining depth keeps the sub-plans whose
+ *     {@link PlanNode#height()} fits, so the entry does not depend on the depth it was found at. Only materials
+ *     from which no recipe cycle is reachable are kept: the recursive planner cuts cycles along its current path,
+ *     so the sub-plans of the other materials depend on where they are asked from.</li>
+ * </ul>
+ * What a target reads from the memo is what it would have computed itself, whichever targets ran before: the plans
+ * of a target do not depend on the order (or concurrency) of the targets, as long as its budget does not run out.
+ * Memoized sub-plans are reused for free: the budget of a target only counts the plans built for it. A target whose
+ * budget runs out is reported by {@link CraftPlanner.MemoPlans#exhausted()}; {@link PlannerFacade} then plans it
+ * again on a fresh memo.
+ * Thread-safe.
+ */
+final class PlanMemo {
+
+    /**
+     * The planner.
+     */
+    private final CraftPlanner planner;
+
+    /**
+     * The available materials.
+     */
+    private final CraftPlanner.Availability available;
+
+    /**
+     * The planning options.
+     */
+    private final CraftPlanner.PlanOptions options;
+
+    /**
+     * Memo of the best plan searches (null until first use).
+     */
+    private BestFirstSearch.Shared best;
+
+    /**
+     * Unrolled graph of the top-K enumerations (null until first use).
+     */
+    private KBestEnumerator.Forest forest;
+
+    /**
+     * Complete sub-plans of the materials, for the "all plans" mode.
+     */
+    private final Map<MaterialMatcher, Entry> all = new ConcurrentHashMap<>();
+
+    /**
+     * Whether a recipe cycle is reachable from a material, for the materials already analysed.
+     */
+    private final Map<MaterialMatcher, Boolean> cyclic = new ConcurrentHashMap<>();
+
+    /**
+     * Complete sub-plans of a material.
+     *
+     * @param remaining remaining depth they were computed for
+     * @param plans     the sub-plans, by ascending cost
+     */
+    record Entry(int remaining, List<PlanNode> plans) {
+    }
+
+    /**
+     * Constructs an empty memo.
+     *
+     * @param planner   the planner
+     * @param available the available materials
+     * @param options   the planning options
+     */
+    PlanMemo(CraftPlanner planner, CraftPlanner.Availability available, CraftPlanner.PlanOptions options) {
+        this.planner = planner;
+        this.available = available;
+        this.options = options;
+    }
+
+    /**
+     * Returns the available materials.
+     *
+     * @return the availability
+     */
+    CraftPlanner.Availability available() {
+        return available;
+    }
+
+    /**
+     * Returns the planning options.
+     *
+     * @return the options
+     */
+    CraftPlanner.PlanOptions options() {
+        return options;
+    }
+
+    /**
+     * Creates a best plan search on the shared memo.
+     *
+     * @return a new search (for one thread)
+     */
+    synchronized BestFirstSearch search() {
+        if (best == null) best = new BestFirstSearch.Shared();
+        return new BestFirstSearch(planner.boundsFor(available), options, best);
+    }
+
+    /**
+     * Returns the top-K forest, creating it on first use.
+     *
+     * @return the forest
+     */
+    synchronized KBestEnumerator.Forest forest() {
+        if (forest == null) forest = new KBestEnumerator.Forest(planner.boundsFor(available), options.maxDepth());
+        return forest;
+    }
+
+    /**
+     * Returns the memoized sub-plans of a material for a remaining depth.
+     *
+     * @param target    the material
+     * @param remaining the remaining depth
+     * @return the sub-plans fitting the remaining depth, or null if none were memoized for at least that depth
+     */
+    List<PlanNode> plans(MaterialMatcher target, int remaining) {
+        return fit(all.get(target), remaining);
+    }
+
+    /**
+     * Returns the sub-plans of an entry fitting a remaining depth.
+     *
+     * @param e         the entry (may be null)
+     * @param remaining the remaining depth
+     * @return the sub-plans of height at most remaining, or null if the entry was computed for less
+     */
+    static List<PlanNode> fit(Entry e, int remaining) {
+        if (e == null || e.remaining < remaining) return null;
+        if (e.remaining == remaining) return e.plans;
+
+        List<PlanNode> fit = new ArrayList<>(e.plans.size());
+        for (PlanNode p : e.plans) {
+            if (p.height() <= remaining) fit.add(p);
+        }
+        return fit;
+    }
+
+    /**
+     * Memoizes complete sub-plans, unless sub-plans for a larger remaining depth are already known or a recipe cycle
+     * is reachable from the material.
+     *
+     * @param target the material
+     * @param entry  its sub-plans
+     */
+    void put(MaterialMatcher target, Entry entry) {
+        if (reachesCycle(target)) return;
+        all.merge(target, entry, (a, b) -> a.remaining >= b.remaining ? a : b);
+    }
+
+    /**
+     * Whether a recipe cycle is reachable from a material, through the inputs of its producers (available materials
+     * are leaves). Tarjan's strongly connected components over the materials not analysed yet, iterative.
+     *
+     * @param target the material
+     * @return true if a cycle is reachable
+     */
+    boolean reachesCycle(MaterialMatcher target) {
+        Boolean known = cyclic.get(target);
+        if (known != null) return known;
+
+        Map<MaterialMatcher, int[]> seen = new HashMap<>(); // {index, lowlink, onStack}
+        Deque<MaterialMatcher> stack = new ArrayDeque<>();
+        Deque<Frame> calls = new ArrayDeque<>();
+        calls.push(open(target, seen, stack));
+        while (!calls.isEmpty()) {
+            Frame f = calls.peek();
+            if (f.next < f.successors.size()) {
+                MaterialMatcher s = f.successors.get(f.next++);
+                if (cyclic.containsKey(s)) continue;
+                int[] st = seen.get(s);
+                if (st == null) calls.push(open(s, seen, stack));
+                else if (st[2] == 1) seen.get(f.material)[1] = Math.min(seen.get(f.material)[1], st[0]);
+                continue;
+            }
+
+            calls.pop();
+            int[] st = seen.get(f.material);
+            if (!calls.isEmpty()) {
+                int[] parent = seen.get(calls.peek().material);
+                parent[1] = Math.min(parent[1], st[1]);
+            }
+            if (st[1] != st[0]) continue;
+
+            // racine d'une composante : cyclique si plusieurs matériaux, une boucle, ou un successeur cyclique
+            List<MaterialMatcher> component = new ArrayList<>();
+            MaterialMatcher m;
+            do {
+                m = stack.pop();
+                seen.get(m)[2] = 0;
+                component.add(m);
+            } while (!m.equals(f.material));
+            boolean cycle = component.size() > 1;
+            for (MaterialMatcher c : component) {
+                for (MaterialMatcher s : successors(c)) {
+                    cycle |= s.equals(c) || Boolean.TRUE.equals(cyclic.get(s));
+                }
+            }
+            for (MaterialMatcher c : component) cyclic.putIfAbsent(c, cycle);
+        }
+        return cyclic.get(target);
+    }
+
+    /**
+     * A material being explored by {@link #reachesCycle}.
+     */
+    private static final class Frame {
+        /**
+         * the material
+         */
+        final MaterialMatcher material;
+        /**
+         * its successors
+         */
+        final List<MaterialMatcher> successors;
+        /**
+         * index of the next successor to explore
+         */
+        int next;
+
+        /**
+         * Creates a frame.
+         */
+        Frame(MaterialMatcher material, List<MaterialMatcher> successors) {
+            this.material = material;
+            this.successors = successors;
+        }
+    }
+
+    /**
+     * Starts the exploration of a material.
+     */
+    private Frame open(MaterialMatcher m, Map<MaterialMatcher, int[]> seen, Deque<MaterialMatcher> stack) {
+        seen.put(m, new int[]{seen.size(), seen.size(), 1});
+        stack.push(m);
+        return new Frame(m, successors(m));
+    }
+
+    /**
+     * Inputs of the producers of a material (none when it is available).
+     */
+    private List<MaterialMatcher> successors(MaterialMatcher m) {
+        if (available.contains(m)) return List.of();
+        List<MaterialMatcher> out = new ArrayList<>();
+        for (ProcessRecipe r : planner.graph().producersOf(m)) out.addAll(r.inputs());
+        return out;
+    }
+}
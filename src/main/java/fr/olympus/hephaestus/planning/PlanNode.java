@@ -0,0 +1,304 @@
+package fr.olympus.hephaestus.planning;
+
+import fr.olympus.hephaestus.processing.MaterialMatcher;
+import fr.olympus.hephaestus.processing.ProcessRecipe;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Immutable node of a craft plan: the recipe making a material and the sub-plans of its inputs.
+ * <p>
+ * Sub-plans are shared, not copied: plans built by the planners reference the same input nodes, so a set of plans
+ * forms a DAG whose size is linear in the explored alternatives instead of the sum of the plan lengths. Every node
+ * caches its total cost, its step count and a 64-bit hash of its step sequence, all computed from its inputs in
+ * O(inputs); the steps themselves are only listed by {@link #steps()}.
+ * <p>
+ * The target of a shared node is the first matcher it was planned for: quantities of an input are those of the
+ * consuming recipe's {@link ProcessRecipe#inputs()}.
+ */
+public final class PlanNode {
+
+    /**
+     * Multiplier of the step sequence hash (odd, so every power is invertible).
+     */
+    private static final long BASE = 0x9E3779B97F4A7C15L;
+
+    /**
+     * The material this node makes.
+     */
+    private final MaterialMatcher target;
+
+    /**
+     * The recipe, or null when the material is available.
+     */
+    private final ProcessRecipe recipe;
+
+    /**
+     * Sub-plans of the recipe inputs, in input order.
+     */
+    private final PlanNode[] inputs;
+
+    /**
+     * Total cost of the sub-plan.
+     */
+    private final int cost;
+
+    /**
+     * Number of steps of the sub-plan.
+     */
+    private final int stepCount;
+
+    /**
+     * Depth of the deepest input below this node (0 for an available material or a recipe without input).
+     */
+    private final int height;
+
+    /**
+     * Hash of the step sequence: {@code sum h(step_i) * BASE^(n-1-i)}.
+     */
+    private final long hash;
+
+    /**
+     * {@code BASE^stepCount}, to append this sequence after another one.
+     */
+    private final long shift;
+
+    /**
+     * Constructs a PlanNode.
+     */
+    private PlanNode(MaterialMatcher target, ProcessRecipe recipe, PlanNode[] inputs, int cost,
+                     int stepCount, int height, long hash, long shift) {
+        this.target = target;
+        this.recipe = recipe;
+        this.inputs = inputs;
+        this.cost = cost;
+        this.stepCount = stepCount;
+        this.height = height;
+        this.hash = hash;
+        this.shift = shift;
+    }
+
+    /**
+     * Leaf of an available material (no step, cost 0).
+     *
+     * @param target the available material
+     * @return the leaf
+     */
+    static PlanNode available(MaterialMatcher target) {
+        return new PlanNode(Objects.requireNonNull(target, "target"), null, new PlanNode[0], 0, 0, 0, 0L, 1L);
+    }
+
+    /**
+     * Node crafting a material with a recipe from sub-plans of its inputs.
+     *
+     * @param target     the crafted material
+     * @param recipe     the recipe
+     * @param recipeCost total cost of the recipe
+     * @param inputs     sub-plans of the recipe inputs, in input order (the array is kept)
+     * @return the node
+     */
+    static PlanNode craft(MaterialMatcher target, ProcessRecipe recipe, int recipeCost, PlanNode[] inputs) {
+        int cost = recipeCost;
+        int steps = 1;
+        int height = 0;
+        long hash = 0L;
+        long shift = BASE;
+        for (PlanNode in : inputs) {
+            cost += in.cost;
+            steps += in.stepCount;
+            height = Math.max(height, in.height + 1);
+            // concaténation : h(a + b) = h(a) * BASE^|b| + h(b)
+            hash = hash * in.shift + in.hash;
+            shift *= in.shift;
+        }
+        hash = hash * BASE + stepHash(recipe);
+        return new PlanNode(target, recipe, inputs, cost, steps, height, hash, shift);
+    }
+
+    /**
+     * Hash of one step, from the recipe ID (as the plan signature).
+     */
+    private static long stepHash(ProcessRecipe recipe) {
+        long h = Objects.hashCode(recipe.id());
+        // splitmix64
+        h += 0x9E3779B97F4A7C15L;
+        h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+        return h ^ (h >>> 31);
+    }
+
+    /**
+     * Returns the material this node makes.
+     *
+     * @return the target matcher
+     */
+    public MaterialMatcher target() {
+        return target;
+    }
+
+    /**
+     * Returns the recipe making the material.
+     *
+     * @return the recipe, or null if the material is available
+     */
+    public ProcessRecipe recipe() {
+        return recipe;
+    }
+
+    /**
+     * Whether the material is available (a leaf without step).
+     *
+     * @return true if available
+     */
+    public boolean isAvailable() {
+        return recipe == null;
+    }
+
+    /**
+     * Returns the sub-plans of the recipe inputs.
+     *
+     * @return unmodifiable list, in input order (empty for an available material)
+     */
+    public List<PlanNode> inputs() {
+        return List.of(inputs);
+    }
+
+    /**
+     * Returns the number of inputs.
+     *
+     * @return the input count
+     */
+    public int inputCount() {
+        return inputs.length;
+    }
+
+    /**
+     * Returns the sub-plan of one input.
+     *
+     * @param i the input index
+     * @return the sub-plan
+     */
+    public PlanNode input(int i) {
+        return inputs[i];
+    }
+
+    /**
+     * Returns the total cost of this sub-plan (cached).
+     *
+     * @return the cost
+     */
+    public int cost() {
+        return cost;
+    }
+
+    /**
+     * Returns the number of steps of this sub-plan (cached).
+     *
+     * @return the step count
+     */
+    public int stepCount() {
+        return stepCount;
+    }
+
+    /**
+     * Returns the depth of the deepest input below this node (cached): the plan fits a
+     * {@link CraftPlanner.PlanOptions#maxDepth()} of at least its height.
+     *
+     * @return the height (0 for an available material)
+     */
+    public int height() {
+        return height;
+    }
+
+    /**
+     * Returns a 64-bit hash of the step sequence (cached): plans with the same steps have the same hash.
+     *
+     * @return the hash
+     */
+    public long hash() {
+        return hash;
+    }
+
+    /**
+     * Lists the steps: the steps of the inputs, in input order, then the recipe.
+     *
+     * @return new list of steps (O(stepCount))
+     */
+    public List<CraftPlanner.PlanStep> steps() {
+        List<CraftPlanner.PlanStep> out = new ArrayList<>(stepCount);
+        appendSteps(out);
+        return out;
+    }
+
+    /**
+     * Appends the steps of this sub-plan.
+     *
+     * @param out the step list
+     */
+    void appendSteps(List<CraftPlanner.PlanStep> out) {
+        if (recipe == null) return;
+        for (PlanNode in : inputs) in.appendSteps(out);
+        out.add(new CraftPlanner.PlanStep(recipe));
+    }
+
+    /**
+     * Whether two sub-plans have the same signature, i.e. the same recipe IDs in the same order (the hashes are
+     * compared first).
+     *
+     * @param other the other sub-plan
+     * @return true if the signatures are equal
+     */
+    boolean sameSteps(PlanNode other) {
+        if (this == other) return true;
+        if (hash != other.hash || stepCount != other.stepCount) return false;
+        List<CraftPlanner.PlanStep> a = steps();
+        List<CraftPlanner.PlanStep> b = other.steps();
+        for (int i = 0; i < a.size(); i++) {
+            if (!Objects.equals(a.get(i).recipe().id(), b.get(i).recipe().id())) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Structural equality: same target, recipe and input sub-plans.
+     *
+     * @param o the other object
+     * @return true if equal
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof PlanNode other)) return false;
+        if (hash != other.hash || cost != other.cost || recipe != other.recipe) return false;
+        return target.equals(other.target) && Arrays.equals(inputs, other.inputs);
+    }
+
+    /**
+     * Hash code derived from the cached 64-bit hash.
+     *
+     * @return the hash code
+     */
+    @Override
+    public int hashCode() {
+        return Long.hashCode(hash);
+    }
+
+    /**
+     * String representation: the target, and the recipe with its inputs when crafted.
+     *
+     * @return the string
+     */
+    @Override
+    public String toString() {
+        if (recipe == null) return target.key();
+        StringBuilder sb = new StringBuilder(target.key()).append(" <- ").append(recipe.id()).append('(');
+        for (int i = 0; i < inputs.length; i++) {
+            if (i > 0) sb.append(", ");
+            sb.append(inputs[i]);
+        }
+        return sb.append(')').toString();
+    }
+}
@@ -2,12 +2,32 @@ package fr.olympus.hephaestus.planning;
 
 import fr.olympus.hephaestus.Hephaestus;
 import fr.olympus.hephaestus.processing.MaterialMatcher;
+import fr.olympus.hephaestus.processing.RecipeGraph;
 import fr.olympus.hephaestus.resources.HephaestusData;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * Facade for the CraftPlanner, providing simplified methods to obtain crafting plans.
+ * <p>
+ * The concrete targets of one call are planned in parallel on a fork-join pool and share a thread-safe
+ * {@link PlanMemo}: sub-plans found for one target are reused by the others. Each target keeps its own
+ * {@link CraftPlanner.PlanOptions#maxPlans()} budget, which memoized sub-plans do not consume, and the results are
+ * merged in target order. What each target gets:
+ * <ul>
+ *     <li>if its search ends within its budget: its complete result (best plan, K best or all plans), which does
+ *     not depend on the other targets nor on the order they ran in;</li>
+ *     <li>if its budget runs out: the result would depend on which targets filled the memo first, so the target is
+ *     planned again alone once the others are done (one at a time, in target order) and gets exactly what
+ *     {@link CraftPlanner} returns for it.</li>
+ * </ul>
+ * Parallel and sequential calls (see {@link #PlannerFacade(CraftPlanner, HephaestusData, int, ForkJoinPool)})
+ * therefore return the same plans, with one exception: a target that runs out of budget when planned alone but not
+ * with the sub-plans of the others may get either result, depending on which targets ran before it.
+ * Results can also be kept across calls in a bounded LRU cache
+ * (see {@link #PlannerFacade(CraftPlanner, HephaestusData, int)}), cleared whenever the registry changes.
  */
 public final class PlannerFacade {
 
@@ -19,15 +39,108 @@ public final class PlannerFacade {
      * The HephaestusData instance used for material data expansion.
      */
     private final HephaestusData data;
+    /**
+     * Pool planning the concrete targets (null to plan them on the calling thread).
+     */
+    private final ForkJoinPool pool;
+    /**
+     * Results of previous calls, least recently used first (null when the cache is disabled).
+     */
+    private final Map<CacheKey, List<CraftPlanner.CraftPlan>> cache;
+    /**
+     * Registry version the cached results were computed for.
+     */
+    private long cacheVersion;
 
     /**
-     * Constructs a PlannerFacade with the specified CraftPlanner and HephaestusData.
+     * Key of a cached result.
+     *
+     * @param mode        planning mode
+     * @param target      requested target
+     * @param available   available materials
+     * @param options     planning options
+     * @param k           number of plans (TOP_K)
+     * @param expandLimit limit for material expansion
+     */
+    private record CacheKey(Mode mode, MaterialMatcher target, CraftPlanner.Availability available,
+                            CraftPlanner.PlanOptions options, int k, int expandLimit) {
+    }
+
+    /**
+     * Constructs a PlannerFacade planning over every registered recipe of a registry, through its shared
+     * {@link HephaestusData#getRecipeGraph() recipe graph}.
+     *
+     * @param data The registry.
+     */
+    public PlannerFacade(HephaestusData data) {
+        this(new CraftPlanner(Objects.requireNonNull(data, "data").getRecipeGraph()), data);
+    }
+
+    /**
+     * Constructs a PlannerFacade with the specified CraftPlanner, on the registry of the default context.
      *
      * @param planner The CraftPlanner instance to use for planning.
+     * @throws IllegalStateException if Hephaestus is not initialized.
      */
     public PlannerFacade(CraftPlanner planner) {
+        this(planner, Hephaestus.getData());
+    }
+
+    /**
+     * Constructs a PlannerFacade with the specified CraftPlanner and HephaestusData.
+     *
+     * @param planner The CraftPlanner instance to use for planning.
+     * @param data    The registry used to expand category targets.
+     */
+    public PlannerFacade(CraftPlanner planner, HephaestusData data) {
+        this(planner, data, 0);
+    }
+
+    /**
+     * Constructs a PlannerFacade keeping the results of its last calls.
+     * <p>
+     * Up to planCacheSize results are kept, keyed by (mode, target, available materials, options, k, expandLimit),
+     * and evicted least recently used first. The cache is cleared when {@link HephaestusData#getVersion()} changes,
+     * i.e. after any registration; the planner must plan over the recipes of that registry.
+     *
+     * @param planner       The CraftPlanner instance to use for planning.
+     * @param data          The registry used to expand category targets.
+     * @param planCacheSize Maximum number of cached results (0 disables the cache).
+     * @throws IllegalArgumentException if planCacheSize is negative.
+     */
+    public PlannerFacade(CraftPlanner planner, HephaestusData data, int planCacheSize) {
+        this(planner, data, planCacheSize, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructs a PlannerFacade planning the concrete targets of a call on the given pool.
+     *
+     * @param planner       The CraftPlanner instance to use for planning.
+     * @param data          The registry used to expand category targets.
+     * @param planCacheSize Maximum number of cached results (0 disables the cache).
+     * @param pool          The pool planning the concrete targets, or null to plan them on the calling thread.
+     * @throws IllegalArgumentException if planCacheSize is negative.
+     */
+    public PlannerFacade(CraftPlanner planner, HephaestusData data, int planCacheSize, ForkJoinPool pool) {
+        if (planCacheSize < 0) throw new IllegalArgumentException("planCacheSize must be >= 0.");
         this.planner = Objects.requireNonNull(planner, "planner");
-        this.data = Objects.requireNonNull(Hephaestus.getData(), "data");
+        this.data = Objects.requireNonNull(data, "data");
+        this.pool = pool;
+        this.cache = planCacheSize == 0 ? null : new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<CacheKey, List<CraftPlanner.CraftPlan>> eldest) {
+                return size() > planCacheSize;
+            }
+        };
+    }
+
+    /**
+     * Returns the producer/consumer index of the recipes the facade plans with.
+     *
+     * @return The recipe graph of the underlying planner.
+     */
+    public RecipeGraph graph() {
+        return planner.graph();
     }
 
     /**
@@ -98,29 +211,82 @@ public final class PlannerFacade {
                                                      int expandLimit,
                                                      Mode mode,
                                                      int k) {
+        if (cache == null) return plan(target, available, opt, expandLimit, mode, k);
+
+        CacheKey key = new CacheKey(mode, target, CraftPlanner.Availability.of(available), opt, k, expandLimit);
+        long version = data.getVersion();
+        synchronized (cache) {
+            if (version != cacheVersion) {
+                cache.clear();
+                cacheVersion = version;
+            }
+            List<CraftPlanner.CraftPlan> hit = cache.get(key);
+            if (hit != null) return hit;
+        }
+
+        List<CraftPlanner.CraftPlan> result = List.copyOf(plan(target, available, opt, expandLimit, mode, k));
+        synchronized (cache) {
+            // le registre a pu changer pendant le calcul
+            if (version == cacheVersion && version == data.getVersion()) cache.put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * Plans the concrete targets of a target, sharing one memo between them (in parallel when there are several).
+     *
+     * @param target      The target material to craft.
+     * @param available   The list of available materials.
+     * @param opt         The planning options.
+     * @param expandLimit The limit for material expansion.
+     * @param mode        The mode of planning (BEST_ONLY, TOP_K, ALL).
+     * @param k           The number of top plans to retrieve (used in TOP_K mode).
+     * @return A list of CraftPlans based on the specified mode.
+     */
+    private List<CraftPlanner.CraftPlan> plan(MaterialMatcher target,
+                                              List<MaterialMatcher> available,
+                                              CraftPlanner.PlanOptions opt,
+                                              int expandLimit,
+                                              Mode mode,
+                                              int k) {
+        Objects.requireNonNull(available, "available");
+        Objects.requireNonNull(opt, "opt");
 
         List<MaterialMatcher> concreteTargets = MaterialTargetExpander.expandToConcreteIds(target, data, expandLimit);
 
-        List<CraftPlanner.CraftPlan> all = new ArrayList<>();
+        List<MaterialMatcher> targets = new ArrayList<>(concreteTargets.size());
         for (MaterialMatcher t : concreteTargets) {
-            if (t.getKind() == MaterialMatcher.Kind.ANY) {
-                // demander "ANY" n'a pas de sens comme objectif final => on ignore ou on renvoie vide
-                continue;
-            }
+            // demander "ANY" n'a pas de sens comme objectif final => on ignore
+            if (t.getKind() != MaterialMatcher.Kind.ANY) targets.add(t);
+        }
 
-            switch (mode) {
-                case BEST_ONLY -> planner.planBest(t, available, opt).ifPresent(all::add);
-                case TOP_K -> all.addAll(planner.planTopK(t, available, k, opt));
-                case ALL -> all.addAll(planner.planAll(t, available, opt));
+        PlanMemo memo = planner.newMemo(available, opt);
+        List<CraftPlanner.MemoPlans> planned = new ArrayList<>(targets.size());
+        if (pool == null || targets.size() < 2) {
+            for (MaterialMatcher t : targets) planned.add(planTarget(t, memo, mode, k));
+        } else {
+            // une tâche par cible ; fusion dans l'ordre des cibles, comme en séquentiel
+            List<ForkJoinTask<CraftPlanner.MemoPlans>> tasks = new ArrayList<>(targets.size());
+            for (MaterialMatcher t : targets) tasks.add(pool.submit(() -> planTarget(t, memo, mode, k)));
+            for (ForkJoinTask<CraftPlanner.MemoPlans> task : tasks) planned.add(task.join());
+        }
+
+        List<CraftPlanner.CraftPlan> all = new ArrayList<>();
+        for (int i = 0; i < targets.size(); i++) {
+            CraftPlanner.MemoPlans p = planned.get(i);
+            if (p.exhausted()) {
+                // budget épuisé : résultat dépendant du mémo => la cible seule, sur un mémo neuf
+                p = planTarget(targets.get(i), planner.newMemo(available, opt), mode, k);
             }
+            all.addAll(p.plans());
         }
 
         // Dedup + tri
-        LinkedHashMap<String, CraftPlanner.CraftPlan> map = new LinkedHashMap<>();
+        CraftPlanner.SignatureSet seen = new CraftPlanner.SignatureSet();
+        List<CraftPlanner.CraftPlan> out = new ArrayList<>();
         for (CraftPlanner.CraftPlan p : all) {
-            map.putIfAbsent(p.signature(), p);
+            if (seen.add(p.root())) out.add(p);
         }
-        List<CraftPlanner.CraftPlan> out = new ArrayList<>(map.values());
         out.sort(Comparator.comparingInt(p -> p.totalCost()));
 
         if (mode == Mode.BEST_ONLY) {
@@ -131,4 +297,21 @@ public final class PlannerFacade {
         }
         return out;
     }
+
+    /**
+     * Plans one concrete target.
+     *
+     * @param target The concrete target.
+     * @param memo   The memo shared by the targets of the call.
+     * @param mode   The mode of planning (BEST_ONLY, TOP_K, ALL).
+     * @param k      The number of top plans to retrieve (used in TOP_K mode).
+     * @return The plans of the target, and whether its budget ran out.
+     */
+    private CraftPlanner.MemoPlans planTarget(MaterialMatcher target, PlanMemo memo, Mode mode, int k) {
+        return switch (mode) {
+            case BEST_ONLY -> planner.planBest(target, memo);
+            case TOP_K -> planner.planTopK(target, k, memo);
+            case ALL -> planner.planAll(target, memo);
+        };
+    }
 }
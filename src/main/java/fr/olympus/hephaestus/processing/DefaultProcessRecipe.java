@@ -1,12 +1,14 @@
 package fr.olympus.hephaestus.processing;
 
-import fr.olympus.hephaestus.materials.MaterialInstance;
+import fr.olympus.hephaestus.materials.MaterialContents;
 import fr.olympus.hephaestus.register.RecipeSelector;
 import fr.olympus.hephaestus.resources.HephaestusData;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import java.util.Set;
 
 
 /**
@@ -24,6 +26,27 @@ public abstract class DefaultProcessRecipe implements ProcessRecipe {
 
     protected final TimeWindow window;
 
+    /**
+     * Whether a subclass overrides one of the per-tick callbacks.
+     */
+    private final boolean requiresTick;
+
+    /**
+     * Whether {@code canStart} is the one of this class (a subclass may check more than the contents).
+     */
+    private final boolean canStartOnContentsOnly;
+
+    /**
+     * Distinct materials required by {@code ID} inputs, with their summed quantities.
+     */
+    private final String[] demandIds;
+    private final int[] demandCounts;
+
+    /**
+     * Inputs that are not {@code ID} matchers (categories, ANY); they need a full assignment.
+     */
+    private final MaterialMatcher[] looseInputs;
+
 
     /**
      * Constructor.
@@ -42,6 +65,18 @@ public abstract class DefaultProcessRecipe implements ProcessRecipe {
         this.outputs = List.copyOf(outputs);
         this.cost = this.inputs.stream().map(MaterialMatcher::getQuantity).toList(); // simple: cost = number of inputs
         this.window = window;
+        this.requiresTick = overridesTickCallbacks(getClass());
+        this.canStartOnContentsOnly = !overridesCanStart(getClass());
+
+        Map<String, Integer> demand = new LinkedHashMap<>();
+        List<MaterialMatcher> loose = new ArrayList<>();
+        for (MaterialMatcher in : this.inputs) {
+            if (in.getKind() == MaterialMatcher.Kind.ID) demand.merge(in.getMaterialId(), in.getQuantity(), Integer::sum);
+            else loose.add(in);
+        }
+        this.demandIds = demand.keySet().toArray(new String[0]);
+        this.demandCounts = demand.values().stream().mapToInt(Integer::intValue).toArray();
+        this.looseInputs = loose.toArray(new MaterialMatcher[0]);
     }
 
 
@@ -108,25 +143,27 @@ public abstract class DefaultProcessRecipe implements ProcessRecipe {
         return window;
     }
 
+    @Override
+    public boolean requiresTick() {
+        return requiresTick;
+    }
+
+    @Override
+    public boolean canStartOnContentsOnly() {
+        return canStartOnContentsOnly;
+    }
+
     @Override
     public boolean canStart(ProcessContext ctx, HephaestusData data) {
-        // Démo: si tous les inputs sont présents (unordered)
-        List<MaterialInstance> contents = ctx.contents();
-        boolean[] used = new boolean[contents.size()];
-
-        for (MaterialMatcher need : inputs) {
-            int found = -1;
-            for (int i = 0; i < contents.size(); i++) {
-                if (used[i]) continue;
-                if (matches(need, contents.get(i).materialId(), data)) {
-                    found = i;
-                    break;
-                }
+        // Démo: si tous les inputs sont présents en quantité suffisante
+        if (!ordered && looseInputs.length == 0 && ctx.contents() instanceof MaterialContents stacked) {
+            // ID inputs only: one count lookup per distinct material, no assignment needed
+            for (int i = 0; i < demandIds.length; i++) {
+                if (stacked.count(demandIds[i]) < demandCounts[i]) return false;
             }
-            if (found == -1) return false;
-            used[found] = true;
+            return true;
         }
-        return true;
+        return InputAssignment.canAssign(inputs, ordered, ctx.contents(), data);
     }
 
     @Override
@@ -145,33 +182,38 @@ public abstract class DefaultProcessRecipe implements ProcessRecipe {
     }
 
     /**
-     * Checks if the given material ID matches the given matcher.
+     * Checks whether the given recipe class overrides {@code onTick}, {@code onOverProcessed} or {@code tryComplete}.
+     * Without such overrides, nothing happens between the time window boundaries.
      *
-     * @param matcher    Material matcher.
-     * @param materialId Material ID to check.
-     * @param data       Hephaestus data for category lookups.
-     * @return True if the material ID matches the matcher, false otherwise.
+     * @param type Recipe class.
+     * @return True if one of the per-tick callbacks is overridden.
      */
-    private boolean matches(MaterialMatcher matcher, String materialId, HephaestusData data) {
-        return switch (matcher.getKind()) {
-            case ANY -> true;
-            case ID -> matcher.getMaterialId().equals(materialId);
-            case ANY_OF_CATEGORIES -> {
-                Set<String> cats = data.getMaterialCategoryKeys(materialId);
-                boolean ok = false;
-                for (String w : matcher.getCategoryKeys()) {
-                    if (cats.contains(w)) {
-                        ok = true;
-                        break;
-                    }
-                }
-                yield ok;
-            }
-            case ALL_OF_CATEGORIES -> {
-                Set<String> cats = data.getMaterialCategoryKeys(materialId);
-                yield cats.containsAll(matcher.getCategoryKeys());
-            }
-        };
+    private static boolean overridesTickCallbacks(Class<?> type) {
+        try {
+            return type.getMethod("onTick", ProcessContext.class, HephaestusData.class, float.class, ProcessingPhase.class)
+                    .getDeclaringClass() != ProcessRecipe.class
+                    || type.getMethod("onOverProcessed", ProcessContext.class, HephaestusData.class, float.class)
+                    .getDeclaringClass() != ProcessRecipe.class
+                    || type.getMethod("tryComplete", ProcessContext.class, HephaestusData.class, float.class, ProcessingPhase.class)
+                    .getDeclaringClass() != DefaultProcessRecipe.class;
+        } catch (NoSuchMethodException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Checks whether the given recipe class overrides {@code canStart}.
+     *
+     * @param type Recipe class.
+     * @return True if canStart is overridden.
+     */
+    private static boolean overridesCanStart(Class<?> type) {
+        try {
+            return type.getMethod("canStart", ProcessContext.class, HephaestusData.class)
+                    .getDeclaringClass() != DefaultProcessRecipe.class;
+        } catch (NoSuchMethodException e) {
+            return true;
+        }
     }
 
 
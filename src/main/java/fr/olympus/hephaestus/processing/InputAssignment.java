@@ -0,0 +1,310 @@
+package fr.olympus.hephaestus.processing;
+
+import fr.olympus.hephaestus.materials.MaterialContents;
+import fr.olympus.hephaestus.materials.MaterialInstance;
+import fr.olympus.hephaestus.resources.HephaestusData;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assigns recipe inputs to factory contents.
+ * <p>
+ * Unordered recipes are solved as a bipartite assignment (max-flow between the inputs, weighted by their
+ * quantity, and the distinct materials present, weighted by their count), so a broad matcher never steals
+ * a unit a narrower one needed. Ordered recipes take their inputs as a subsequence of the contents, each
+ * input taking the earliest matching units after the previous one, which is optimal for subsequences.
+ * <p>
+ * Since matchers only look at material IDs, the flow works on distinct materials, not on units: its size
+ * does not depend on how many units of each material a factory holds.
+ */
+public final class InputAssignment {
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private InputAssignment() {
+    }
+
+    /**
+     * Checks whether the inputs can be assigned to the contents.
+     *
+     * @param inputs   The input matchers (with quantities).
+     * @param ordered  Whether the inputs must appear in order in the contents.
+     * @param contents The contents.
+     * @param data     HephaestusData for category lookups.
+     * @return True if an assignment exists.
+     */
+    public static boolean canAssign(List<MaterialMatcher> inputs, boolean ordered,
+                                    List<MaterialInstance> contents, HephaestusData data) {
+        if (ordered) return assignOrdered(inputs, contents, data, null);
+
+        Groups groups = Groups.of(contents);
+        return solve(inputs, groups, data) != null;
+    }
+
+    /**
+     * Assigns the inputs to the contents.
+     * <p>
+     * The result holds one content index per required unit, grouped by input in input order
+     * (the {@code quantity} indices of the first input, then those of the second, ...).
+     *
+     * @param inputs   The input matchers (with quantities).
+     * @param ordered  Whether the inputs must appear in order in the contents.
+     * @param contents The contents.
+     * @param data     HephaestusData for category lookups.
+     * @return The chosen content indices, or null if no assignment exists.
+     */
+    public static int[] assign(List<MaterialMatcher> inputs, boolean ordered,
+                               List<MaterialInstance> contents, HephaestusData data) {
+        if (ordered) {
+            int[] out = new int[totalQuantity(inputs)];
+            return assignOrdered(inputs, contents, data, out) ? out : null;
+        }
+
+        Groups groups = Groups.of(contents);
+        int[][] flow = solve(inputs, groups, data);
+        if (flow == null) return null;
+
+        // hand out concrete units of each material, in content order
+        int[][] unitsByGroup = groups.unitIndices(contents);
+        int[] nextUnit = new int[groups.size()];
+        int[] out = new int[totalQuantity(inputs)];
+        int k = 0;
+        for (int i = 0; i < inputs.size(); i++) {
+            for (int g = 0; g < groups.size(); g++) {
+                for (int n = flow[i][g]; n > 0; n--) out[k++] = unitsByGroup[g][nextUnit[g]++];
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Ordered assignment: each input takes the earliest matching units after those of the previous input.
+     *
+     * @param inputs   The input matchers.
+     * @param contents The contents.
+     * @param data     HephaestusData for category lookups.
+     * @param out      Receives the chosen content indices (null to only check).
+     * @return True if the inputs appear in order.
+     */
+    private static boolean assignOrdered(List<MaterialMatcher> inputs, List<MaterialInstance> contents,
+                                         HephaestusData data, int[] out) {
+        int k = 0;
+        int pos = 0;
+        int size = contents.size();
+        // index loop: no iterator on the tick path
+        for (int i = 0; i < inputs.size(); i++) {
+            MaterialMatcher need = inputs.get(i);
+            int missing = need.getQuantity();
+            while (missing > 0 && pos < size) {
+                if (need.matches(contents.get(pos).materialId(), data)) {
+                    if (out != null) out[k++] = pos;
+                    missing--;
+                }
+                pos++;
+            }
+            if (missing > 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Solves the unordered assignment as a max-flow (Edmonds-Karp).
+     *
+     * @param inputs The input matchers.
+     * @param groups The distinct materials present.
+     * @param data   HephaestusData for category lookups.
+     * @return Units of each group assigned to each input ({@code [input][group]}), or null if infeasible.
+     */
+    private static int[][] solve(List<MaterialMatcher> inputs, Groups groups, HephaestusData data) {
+        int in = inputs.size();
+        int gs = groups.size();
+        int required = totalQuantity(inputs);
+        if (required == 0) return new int[in][gs];
+        if (required > groups.total) return null;
+
+        // nodes: 0 = source, 1..in = inputs, in+1..in+gs = groups, in+gs+1 = sink
+        int source = 0, sink = in + gs + 1, n = sink + 1;
+        int[][] cap = new int[n][n];
+        boolean[][] edge = new boolean[n][n];
+        for (int i = 0; i < in; i++) {
+            MaterialMatcher need = inputs.get(i);
+            cap[source][1 + i] = need.getQuantity();
+            edge[source][1 + i] = true;
+            boolean any = false;
+            for (int g = 0; g < gs; g++) {
+                if (need.matches(groups.ids[g], data)) {
+                    cap[1 + i][in + 1 + g] = Integer.MAX_VALUE;
+                    edge[1 + i][in + 1 + g] = true;
+                    any = true;
+                }
+            }
+            if (!any) return null;
+        }
+        for (int g = 0; g < gs; g++) {
+            cap[in + 1 + g][sink] = groups.counts[g];
+            edge[in + 1 + g][sink] = true;
+        }
+
+        int[][] adj = adjacency(edge);
+        int[] parent = new int[n];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        int flow = 0;
+        while (flow < required) {
+            Arrays.fill(parent, -1);
+            parent[source] = source;
+            queue.clear();
+            queue.add(source);
+            while (!queue.isEmpty() && parent[sink] == -1) {
+                int u = queue.poll();
+                for (int v : adj[u]) {
+                    if (parent[v] == -1 && cap[u][v] > 0) {
+                        parent[v] = u;
+                        queue.add(v);
+                    }
+                }
+            }
+            if (parent[sink] == -1) return null;
+
+            int push = Integer.MAX_VALUE;
+            for (int v = sink; v != source; v = parent[v]) push = Math.min(push, cap[parent[v]][v]);
+            for (int v = sink; v != source; v = parent[v]) {
+                int u = parent[v];
+                if (cap[u][v] != Integer.MAX_VALUE) cap[u][v] -= push;
+                if (cap[v][u] != Integer.MAX_VALUE) cap[v][u] += push;
+            }
+            flow += push;
+        }
+
+        // flow on input->group edges is what came back on the reverse edges
+        int[][] result = new int[in][gs];
+        for (int i = 0; i < in; i++) {
+            for (int g = 0; g < gs; g++) result[i][g] = cap[in + 1 + g][1 + i];
+        }
+        return result;
+    }
+
+    /**
+     * Builds the residual adjacency lists (both directions of every edge).
+     *
+     * @param edge Edge matrix.
+     * @return Neighbours of each node.
+     */
+    private static int[][] adjacency(boolean[][] edge) {
+        int n = edge.length;
+        int[][] adj = new int[n][];
+        int[] buf = new int[n];
+        for (int u = 0; u < n; u++) {
+            int k = 0;
+            for (int v = 0; v < n; v++) {
+                if (edge[u][v] || edge[v][u]) buf[k++] = v;
+            }
+            adj[u] = Arrays.copyOf(buf, k);
+        }
+        return adj;
+    }
+
+    /**
+     * Sums the quantities of the inputs.
+     *
+     * @param inputs The input matchers.
+     * @return Total number of units required.
+     */
+    private static int totalQuantity(List<MaterialMatcher> inputs) {
+        int total = 0;
+        for (MaterialMatcher m : inputs) total += m.getQuantity();
+        return total;
+    }
+
+    /**
+     * Distinct materials of the contents with their counts.
+     */
+    private static final class Groups {
+
+        /**
+         * Material IDs and unit counts, by group.
+         */
+        final String[] ids;
+        final int[] counts;
+
+        /**
+         * Total number of units.
+         */
+        final int total;
+
+        Groups(String[] ids, int[] counts, int total) {
+            this.ids = ids;
+            this.counts = counts;
+            this.total = total;
+        }
+
+        /**
+         * Groups the contents by material (uses the stack index of factory contents).
+         *
+         * @param contents The contents.
+         * @return The groups.
+         */
+        static Groups of(List<MaterialInstance> contents) {
+            if (contents instanceof MaterialContents stacked) {
+                int n = stacked.stackCount();
+                String[] ids = new String[n];
+                int[] counts = new int[n];
+                for (int s = 0; s < n; s++) {
+                    ids[s] = stacked.stackMaterialId(s);
+                    counts[s] = stacked.stackSize(s);
+                }
+                return new Groups(ids, counts, stacked.size());
+            }
+            Map<String, Integer> index = new HashMap<>();
+            List<String> ids = new ArrayList<>();
+            List<Integer> counts = new ArrayList<>();
+            for (MaterialInstance m : contents) {
+                Integer g = index.get(m.materialId());
+                if (g == null) {
+                    index.put(m.materialId(), ids.size());
+                    ids.add(m.materialId());
+                    counts.add(1);
+                } else {
+                    counts.set(g, counts.get(g) + 1);
+                }
+            }
+            return new Groups(ids.toArray(new String[0]),
+                    counts.stream().mapToInt(Integer::intValue).toArray(), contents.size());
+        }
+
+        /**
+         * Number of groups.
+         *
+         * @return The size.
+         */
+        int size() {
+            return ids.length;
+        }
+
+        /**
+         * Lists the content indices of each group, in content order.
+         *
+         * @param contents The contents the groups were built from.
+         * @return Indices by group.
+         */
+        int[][] unitIndices(List<MaterialInstance> contents) {
+            Map<String, Integer> index = new HashMap<>();
+            int[][] units = new int[ids.length][];
+            for (int g = 0; g < ids.length; g++) {
+                index.put(ids[g], g);
+                units[g] = new int[counts[g]];
+            }
+            int[] fill = new int[ids.length];
+            for (int i = 0; i < contents.size(); i++) {
+                int g = index.get(contents.get(i).materialId());
+                units[g][fill[g]++] = i;
+            }
+            return units;
+        }
+    }
+}
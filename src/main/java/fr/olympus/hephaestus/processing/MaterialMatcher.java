@@ -1,13 +1,26 @@
 package fr.olympus.hephaestus.processing;
 
+import fr.olympus.hephaestus.materials.CategoryMask;
 import fr.olympus.hephaestus.materials.MaterialCategory;
+import fr.olympus.hephaestus.resources.HephaestusData;
 
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A matcher for materials based on different criteria.
+ * <p>
+ * Matchers are interned flyweights: the factory methods return the same instance for the same arguments
+ * (e.g. {@code MaterialMatcher.id("x") == MaterialMatcher.id("x")}), with the key and hash computed once.
+ * The intern table holds them weakly, so matchers built for transient ids or quantities do not accumulate: a matcher
+ * nobody references any more is dropped and built again on next use, with no older instance left to tell them apart.
  */
 public final class MaterialMatcher {
 
@@ -47,21 +60,119 @@ public final class MaterialMatcher {
      */
     private final Set<String> categoryKeys;   // enum.name() triés
 
+    /**
+     * The category keys compiled to a bitmask (empty for ID / ANY).
+     */
+    private final CategoryMask categoryMask;
+
     /**
      * The quantity associated with the matcher, representing either the minimum required quantity for inputs or the produced quantity for outputs.
      */
     private final int quantity;
 
+    /**
+     * The unique key of the matcher (computed once).
+     */
+    private final String key;
+
+    /**
+     * Hash code of {@link #key}.
+     */
+    private final int hash;
+
+    /**
+     * The quantity-1 matcher with the same key, shared by every quantity (itself when quantity is 1).
+     * Matchers are interned, so two matchers are equal exactly when they share it.
+     */
+    private final MaterialMatcher canonical;
+
+    /**
+     * Interned matchers, weakly referenced.
+     */
+    private static final Map<Signature, Interned> INTERNED = new ConcurrentHashMap<>();
+
+    /**
+     * Entries of {@link #INTERNED} whose matcher was collected.
+     */
+    private static final ReferenceQueue<MaterialMatcher> COLLECTED = new ReferenceQueue<>();
+
+    /**
+     * Identity of an interned matcher.
+     */
+    private record Signature(Kind kind, String materialId, Set<String> categoryKeys, int quantity) {
+    }
+
+    /**
+     * Entry of {@link #INTERNED}: a weak reference remembering its signature, to be removed once collected.
+     */
+    private static final class Interned extends WeakReference<MaterialMatcher> {
+        /**
+         * The signature of the matcher.
+         */
+        private final Signature signature;
+
+        /**
+         * Creates an entry.
+         */
+        private Interned(MaterialMatcher matcher, Signature signature) {
+            super(matcher, COLLECTED);
+            this.signature = signature;
+        }
+    }
+
     // Constructor
 
     /**
      * Private constructor to initialize the MaterialMatcher.
      */
-    private MaterialMatcher(Kind kind, String materialId, Set<String> categoryKeys, int quantity) {
+    private MaterialMatcher(Kind kind, String materialId, SortedSet<String> categoryKeys, int quantity, MaterialMatcher canonical) {
         this.kind = Objects.requireNonNull(kind, "kind");
         this.materialId = materialId;
-        this.categoryKeys = categoryKeys == null ? null : Set.copyOf(categoryKeys);
+        this.categoryKeys = categoryKeys == null ? null : Collections.unmodifiableSortedSet(new TreeSet<>(categoryKeys));
+        this.categoryMask = categoryKeys == null ? CategoryMask.EMPTY : CategoryMask.ofKeys(categoryKeys);
         this.quantity = quantity;
+        this.key = switch (kind) {
+            case ANY -> "ANY";
+            case ID -> "ID:" + materialId;
+            case ANY_OF_CATEGORIES -> "CAT_ANY:" + categoryKeys;
+            case ALL_OF_CATEGORIES -> "CAT_ALL:" + categoryKeys;
+        };
+        this.hash = key.hashCode();
+        this.canonical = canonical == null ? this : canonical;
+    }
+
+    /**
+     * Returns the interned matcher for the given fields, creating it on first use.
+     */
+    private static MaterialMatcher of(Kind kind, String materialId, SortedSet<String> categoryKeys, int quantity) {
+        Signature sig = new Signature(kind, materialId, categoryKeys, quantity);
+        Interned entry = INTERNED.get(sig);
+        MaterialMatcher m = entry == null ? null : entry.get();
+        if (m != null) return m;
+
+        expungeCollected();
+        // le canonique est tenu fortement par chaque quantité : il vit au moins aussi longtemps qu'elles
+        MaterialMatcher canonical = quantity == 1 ? null : of(kind, materialId, categoryKeys, 1);
+        MaterialMatcher created = new MaterialMatcher(kind, materialId, categoryKeys, quantity, canonical);
+        Interned fresh = new Interned(created, sig);
+        while (true) {
+            // remplace une entrée collectée, ou prend celle qu'un autre thread vient d'ajouter
+            boolean installed = entry == null ? INTERNED.putIfAbsent(sig, fresh) == null : INTERNED.replace(sig, entry, fresh);
+            if (installed) return created;
+            entry = INTERNED.get(sig);
+            m = entry == null ? null : entry.get();
+            if (m != null) return m;
+        }
+    }
+
+    /**
+     * Removes the entries whose matcher was collected (an entry replaced since then is kept).
+     */
+    private static void expungeCollected() {
+        for (Object ref; (ref = COLLECTED.poll()) != null; ) {
+            Interned e = (Interned) ref;
+            INTERNED.remove(e.signature, e);
+        }
     }
 
     // Static factory methods
@@ -72,7 +183,7 @@ public final class MaterialMatcher {
      * @return a MaterialMatcher that matches any material
      */
     public static MaterialMatcher any() {
-        return new MaterialMatcher(Kind.ANY, null, null, 1);
+        return of(Kind.ANY, null, null, 1);
     }
 
     /**
@@ -83,7 +194,7 @@ public final class MaterialMatcher {
      */
     public static MaterialMatcher any(int quantity) {
         if (quantity <= 0) throw new IllegalArgumentException("quantity must be positive.");
-        return new MaterialMatcher(Kind.ANY, null, null, quantity);
+        return of(Kind.ANY, null, null, quantity);
     }
 
     /**
@@ -96,7 +207,7 @@ public final class MaterialMatcher {
     public static MaterialMatcher id(String id, int quantity) {
         if (id == null || id.isBlank()) throw new IllegalArgumentException("id cannot be null/blank.");
         if (quantity <= 0) throw new IllegalArgumentException("quantity must be positive.");
-        return new MaterialMatcher(Kind.ID, id, null, quantity);
+        return of(Kind.ID, id, null, quantity);
     }
 
     /**
@@ -107,7 +218,7 @@ public final class MaterialMatcher {
      */
     public static MaterialMatcher id(String id) {
         if (id == null || id.isBlank()) throw new IllegalArgumentException("id cannot be null/blank.");
-        return new MaterialMatcher(Kind.ID, id, null, 1);
+        return of(Kind.ID, id, null, 1);
     }
 
     /**
@@ -117,7 +228,7 @@ public final class MaterialMatcher {
      * @return a MaterialMatcher that matches if any of the specified categories are present
      */
     public static MaterialMatcher anyOfCategories(Set<? extends MaterialCategory> categories) {
-        return new MaterialMatcher(Kind.ANY_OF_CATEGORIES, null, toKeys(categories), 1);
+        return of(Kind.ANY_OF_CATEGORIES, null, toKeys(categories), 1);
     }
 
     /**
@@ -128,7 +239,7 @@ public final class MaterialMatcher {
      */
     public static MaterialMatcher anyOfCategories(Set<? extends MaterialCategory> categories, int quantity) {
         if (quantity <= 0) throw new IllegalArgumentException("quantity must be positive.");
-        return new MaterialMatcher(Kind.ANY_OF_CATEGORIES, null, toKeys(categories), quantity);
+        return of(Kind.ANY_OF_CATEGORIES, null, toKeys(categories), quantity);
     }
 
     /**
@@ -138,7 +249,7 @@ public final class MaterialMatcher {
      * @return a MaterialMatcher that matches only if all of the specified categories are present
      */
     public static MaterialMatcher allOfCategories(Set<? extends MaterialCategory> categories) {
-        return new MaterialMatcher(Kind.ALL_OF_CATEGORIES, null, toKeys(categories), 1);
+        return of(Kind.ALL_OF_CATEGORIES, null, toKeys(categories), 1);
     }
 
     /**
@@ -149,7 +260,7 @@ public final class MaterialMatcher {
      */
     public static MaterialMatcher allOfCategories(Set<? extends MaterialCategory> categories, int quantity) {
         if (quantity <= 0) throw new IllegalArgumentException("quantity must be positive.");
-        return new MaterialMatcher(Kind.ALL_OF_CATEGORIES, null, toKeys(categories), quantity);
+        return of(Kind.ALL_OF_CATEGORIES, null, toKeys(categories), quantity);
     }
 
     // Helper method to convert categories to their string keys
@@ -160,7 +271,7 @@ public final class MaterialMatcher {
      * @param categories the set of material categories
      * @return a set of string keys representing the categories
      */
-    private static Set<String> toKeys(Set<? extends MaterialCategory> categories) {
+    private static SortedSet<String> toKeys(Set<? extends MaterialCategory> categories) {
         if (categories == null || categories.isEmpty()) {
             throw new IllegalArgumentException("categories cannot be null/empty.");
         }
@@ -213,6 +324,32 @@ public final class MaterialMatcher {
         return quantity;
     }
 
+    /**
+     * Returns the category keys compiled to a bitmask.
+     *
+     * @return the category mask (empty for ID / ANY matchers)
+     */
+    public CategoryMask getCategoryMask() {
+        return categoryMask;
+    }
+
+    /**
+     * Checks whether a material matches this matcher (quantity is not considered).
+     *
+     * @param materialId the material ID to test
+     * @param data       the HephaestusData used for category lookups
+     * @return true if the material matches
+     * @throws IllegalArgumentException if a category matcher is tested against an unknown material ID
+     */
+    public boolean matches(String materialId, HephaestusData data) {
+        return switch (kind) {
+            case ANY -> true;
+            case ID -> this.materialId.equals(materialId);
+            case ANY_OF_CATEGORIES -> data.getMaterialCategoryMask(materialId).intersects(categoryMask);
+            case ALL_OF_CATEGORIES -> data.getMaterialCategoryMask(materialId).containsAll(categoryMask);
+        };
+    }
+
     // Other methods
 
     /**
@@ -235,12 +372,7 @@ public final class MaterialMatcher {
      * @return the unique key for the matcher
      */
     public String key() {
-        return switch (kind) {
-            case ANY -> "ANY";
-            case ID -> "ID:" + materialId;
-            case ANY_OF_CATEGORIES -> "CAT_ANY:" + categoryKeys;
-            case ALL_OF_CATEGORIES -> "CAT_ALL:" + categoryKeys;
-        };
+        return key;
     }
     // Overrides
 
@@ -255,23 +387,24 @@ public final class MaterialMatcher {
     }
 
     /**
-     * Computes the hash code based on the matcher's key.
+     * Returns the hash code of the matcher's key (precomputed).
      *
      * @return the hash code of the matcher
      */
     @Override
     public int hashCode() {
-        return Objects.hash(key());
+        return hash;
     }
 
     /**
-     * Checks equality based on the matcher's key.
+     * Checks equality based on the matcher's key (quantity is ignored).
+     * Matchers are interned, so this is an identity comparison.
      *
      * @param o the object to compare with
      * @return true if the objects are equal, false otherwise
      */
     @Override
     public boolean equals(Object o) {
-        return (o instanceof MaterialMatcher other) && Objects.equals(this.key(), other.key());
+        return this == o || (o instanceof MaterialMatcher other && other.canonical == canonical);
     }
 }
@@ -1,7 +1,9 @@
 package fr.olympus.hephaestus.processing;
 
+import fr.olympus.hephaestus.materials.MaterialContents;
 import fr.olympus.hephaestus.materials.MaterialInstance;
 
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -30,4 +32,51 @@ public record ProcessContext(List<MaterialInstance> contents, List<MaterialInsta
     public void removeContentAt(int idx) {
         contents.remove(idx);
     }
+
+    /**
+     * Returns the number of units of a material in the contents (O(1) on factory contents).
+     *
+     * @param materialId the material ID
+     * @return the count
+     */
+    public int count(String materialId) {
+        if (contents instanceof MaterialContents stacked) return stacked.count(materialId);
+        int n = 0;
+        for (MaterialInstance m : contents) {
+            if (m.materialId().equals(materialId)) n++;
+        }
+        return n;
+    }
+
+    /**
+     * Removes units of a material from the contents, oldest first.
+     *
+     * @param materialId the material ID
+     * @param amount     the maximum number of units to remove
+     * @return the number of units removed
+     */
+    public int removeContents(String materialId, int amount) {
+        if (contents instanceof MaterialContents stacked) return stacked.removeAmount(materialId, amount);
+        int removed = 0;
+        for (int i = 0; i < contents.size() && removed < amount; ) {
+            if (contents.get(i).materialId().equals(materialId)) {
+                contents.remove(i);
+                removed++;
+            } else {
+                i++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Removes the contents at the given indices (e.g. those chosen by {@link ProcessRecipe#selectInputs}).
+     *
+     * @param indices the indices to remove (any order, no duplicates)
+     */
+    public void removeContentsAt(int[] indices) {
+        int[] sorted = indices.clone();
+        Arrays.sort(sorted);
+        for (int i = sorted.length - 1; i >= 0; i--) contents.remove(sorted[i]);
+    }
 }
@@ -90,8 +90,23 @@ public interface ProcessRecipe {
      */
     TimeWindow timeWindowOrNull();
 
+    /**
+     * Whether a running session must be updated on every tick.
+     * Recipes returning false are only updated when their time window boundaries are reached
+     * or when an event arrives, which lets a {@code FactoryWorld} park the factory in between.
+     *
+     * @return true if the recipe needs per-tick updates
+     */
+    default boolean requiresTick() {
+        return true;
+    }
+
     /**
      * Check if the process can start
+     * <p>
+     * A factory without a session asks its recipes again on every update, unless all of them
+     * {@link #canStartOnContentsOnly() only depend on the contents}: it then asks only after the contents, the
+     * attached recipes or the session changed, or an event was pushed.
      *
      * @param ctx  Process context
      * @param data Hephaestus data
@@ -99,6 +114,42 @@ public interface ProcessRecipe {
      */
     boolean canStart(ProcessContext ctx, fr.olympus.hephaestus.resources.HephaestusData data);
 
+    /**
+     * Whether {@link #canStart} only depends on the contents of the context (and on the registered materials).
+     * Factories whose recipes all return true skip the selection while the contents do not change and can be
+     * parked until then; recipes returning false (the default) are asked on every update of an idle factory.
+     *
+     * @return true if canStart only depends on the contents
+     */
+    default boolean canStartOnContentsOnly() {
+        return false;
+    }
+
+    /**
+     * Whether a factory removes the inputs of this recipe from its contents when a session completes.
+     * The inputs are chosen once with {@link #selectInputs} when the session starts and removed with
+     * {@link ProcessContext#removeContentsAt(int[])}, just before the factory is notified of the outputs.
+     * Recipes returning false (the default) consume their inputs themselves, if at all.
+     *
+     * @return true if the factory consumes the inputs
+     */
+    default boolean consumesInputs() {
+        return false;
+    }
+
+    /**
+     * Chooses the contents consumed by this recipe (see {@link InputAssignment#assign}).
+     * The indices can be passed to {@link ProcessContext#removeContentsAt(int[])}; factories use them for recipes
+     * that {@link #consumesInputs() consume their inputs}.
+     *
+     * @param ctx  Process context
+     * @param data Hephaestus data
+     * @return content indices grouped by input, or null if the inputs cannot be assigned
+     */
+    default int[] selectInputs(ProcessContext ctx, fr.olympus.hephaestus.resources.HephaestusData data) {
+        return InputAssignment.assign(inputs(), ordered(), ctx.contents(), data);
+    }
+
     /**
      * Tick the process
      *
@@ -0,0 +1,209 @@
+package fr.olympus.hephaestus.processing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable producer/consumer index of a recipe set: "who makes X" and "who uses X".
+ * <p>
+ * Recipes are indexed by the matchers of their outputs (producers) and of their inputs (consumers). Matchers are
+ * compared as in the planner: by key, quantity ignored, and an {@code ANY} output produces every target (an
+ * {@code ANY} input consumes every material). Lists keep the order of the recipe set.
+ * <p>
+ * Build it once per recipe set and share it: {@link #of(List)} for a given list,
+ * {@code HephaestusData.getRecipeGraph()} for the registered recipes.
+ */
+public final class RecipeGraph {
+
+    /**
+     * The recipes, in order.
+     */
+    private final List<ProcessRecipe> recipes;
+
+    /**
+     * Total cost of each recipe (sum of {@link ProcessRecipe#cost()}).
+     */
+    private final Map<ProcessRecipe, Integer> costs;
+
+    /**
+     * Recipes producing each output key ({@code ANY} producers merged in).
+     */
+    private final Map<MaterialMatcher, List<ProcessRecipe>> producers;
+
+    /**
+     * Recipes with an {@code ANY} output.
+     */
+    private final List<ProcessRecipe> anyProducers;
+
+    /**
+     * Recipes consuming each input key ({@code ANY} consumers merged in).
+     */
+    private final Map<MaterialMatcher, List<ProcessRecipe>> consumers;
+
+    /**
+     * Recipes with an {@code ANY} input.
+     */
+    private final List<ProcessRecipe> anyConsumers;
+
+    /**
+     * Constructs a RecipeGraph (the collections must already be immutable).
+     */
+    private RecipeGraph(List<ProcessRecipe> recipes, Map<ProcessRecipe, Integer> costs,
+                        Map<MaterialMatcher, List<ProcessRecipe>> producers, List<ProcessRecipe> anyProducers,
+                        Map<MaterialMatcher, List<ProcessRecipe>> consumers, List<ProcessRecipe> anyConsumers) {
+        this.recipes = recipes;
+        this.costs = costs;
+        this.producers = producers;
+        this.anyProducers = anyProducers;
+        this.consumers = consumers;
+        this.anyConsumers = anyConsumers;
+    }
+
+    /**
+     * Builds the graph of a recipe set.
+     *
+     * @param recipes The recipes.
+     * @return The graph.
+     * @throws IllegalArgumentException if recipes is null or contains null.
+     */
+    public static RecipeGraph of(List<ProcessRecipe> recipes) {
+        if (recipes == null) throw new IllegalArgumentException("recipes cannot be null.");
+        List<ProcessRecipe> list = List.copyOf(recipes);
+
+        Map<ProcessRecipe, Integer> costs = new IdentityHashMap<>();
+        Map<MaterialMatcher, List<Integer>> produced = new HashMap<>();
+        Map<MaterialMatcher, List<Integer>> consumed = new HashMap<>();
+        List<Integer> anyOut = new ArrayList<>();
+        List<Integer> anyIn = new ArrayList<>();
+
+        for (int i = 0; i < list.size(); i++) {
+            ProcessRecipe r = list.get(i);
+            int cost = 0;
+            for (Integer c : r.cost()) cost += c;
+            costs.put(r, cost);
+            link(i, r.outputs(), produced, anyOut);
+            link(i, r.inputs(), consumed, anyIn);
+        }
+
+        return new RecipeGraph(list, Collections.unmodifiableMap(costs),
+                resolve(list, produced, anyOut), recipesAt(list, anyOut),
+                resolve(list, consumed, anyIn), recipesAt(list, anyIn));
+    }
+
+    /**
+     * Indexes one recipe under each distinct key of its matchers.
+     *
+     * @param recipe   Index of the recipe.
+     * @param matchers Its outputs or inputs.
+     * @param byKey    Recipe indices by matcher key.
+     * @param any      Indices of the recipes having an {@code ANY} matcher.
+     */
+    private static void link(int recipe, List<MaterialMatcher> matchers,
+                             Map<MaterialMatcher, List<Integer>> byKey, List<Integer> any) {
+        Set<MaterialMatcher> seen = new HashSet<>();
+        for (MaterialMatcher m : matchers) {
+            if (!seen.add(m)) continue;
+            if (m.getKind() == MaterialMatcher.Kind.ANY) any.add(recipe);
+            else byKey.computeIfAbsent(m, k -> new ArrayList<>()).add(recipe);
+        }
+    }
+
+    /**
+     * Merges the {@code ANY} recipes into every key, keeping the order of the recipe set.
+     *
+     * @param recipes The recipes.
+     * @param byKey   Recipe indices by matcher key (sorted).
+     * @param any     Indices of the {@code ANY} recipes (sorted).
+     * @return Unmodifiable recipe lists by key.
+     */
+    private static Map<MaterialMatcher, List<ProcessRecipe>> resolve(List<ProcessRecipe> recipes,
+                                                                     Map<MaterialMatcher, List<Integer>> byKey,
+                                                                     List<Integer> any) {
+        Map<MaterialMatcher, List<ProcessRecipe>> out = new HashMap<>();
+        byKey.forEach((key, indices) -> {
+            List<ProcessRecipe> merged = new ArrayList<>(indices.size() + any.size());
+            int i = 0, j = 0;
+            while (i < indices.size() || j < any.size()) {
+                int next = j == any.size() || (i < indices.size() && indices.get(i) < any.get(j))
+                        ? indices.get(i) : any.get(j);
+                merged.add(recipes.get(next));
+                // une recette ayant aussi un matcher ANY n'apparaît qu'une fois
+                if (i < indices.size() && indices.get(i) == next) i++;
+                if (j < any.size() && any.get(j) == next) j++;
+            }
+            out.put(key, List.copyOf(merged));
+        });
+        return Collections.unmodifiableMap(out);
+    }
+
+    /**
+     * Recipes at the given indices.
+     *
+     * @param recipes The recipes.
+     * @param indices The indices.
+     * @return Unmodifiable list of the recipes.
+     */
+    private static List<ProcessRecipe> recipesAt(List<ProcessRecipe> recipes, List<Integer> indices) {
+        List<ProcessRecipe> out = new ArrayList<>(indices.size());
+        for (int i : indices) out.add(recipes.get(i));
+        return List.copyOf(out);
+    }
+
+    /**
+     * Returns the recipes of the graph, in order.
+     *
+     * @return Unmodifiable list of recipes.
+     */
+    public List<ProcessRecipe> recipes() {
+        return recipes;
+    }
+
+    /**
+     * Returns the recipes producing a material: an output with the same key, or an {@code ANY} output.
+     *
+     * @param target The produced material (quantity ignored).
+     * @return Unmodifiable list of recipes, in order (empty if none).
+     */
+    public List<ProcessRecipe> producersOf(MaterialMatcher target) {
+        return producers.getOrDefault(target, anyProducers);
+    }
+
+    /**
+     * Returns the recipes consuming a material: an input with the same key, or an {@code ANY} input.
+     *
+     * @param material The consumed material (quantity ignored).
+     * @return Unmodifiable list of recipes, in order (empty if none).
+     */
+    public List<ProcessRecipe> consumersOf(MaterialMatcher material) {
+        return consumers.getOrDefault(material, anyConsumers);
+    }
+
+    /**
+     * Returns the total cost of a recipe (sum of {@link ProcessRecipe#cost()}), precomputed for graph recipes.
+     *
+     * @param recipe The recipe.
+     * @return The total cost.
+     */
+    public int costOf(ProcessRecipe recipe) {
+        Integer cost = costs.get(recipe);
+        if (cost != null) return cost;
+        int sum = 0;
+        for (Integer c : recipe.cost()) sum += c;
+        return sum;
+    }
+
+    /**
+     * Returns the number of recipes.
+     *
+     * @return The recipe count.
+     */
+    public int size() {
+        return recipes.size();
+    }
+}
@@ -49,4 +49,17 @@ public record TimeWindow(float minSeconds, float maxSeconds) {
     public boolean afterMax(float t) {
         return t > maxSeconds;
     }
+
+    /**
+     * Returns the time left before the phase computed for {@code t} can change.
+     *
+     * @param t time in seconds
+     * @return seconds until minSeconds (before the window), until maxSeconds (inside it),
+     * or {@link Float#POSITIVE_INFINITY} once the window is over
+     */
+    public float secondsUntilNextBoundary(float t) {
+        if (t < minSeconds) return minSeconds - t;
+        if (t <= maxSeconds) return maxSeconds - t;
+        return Float.POSITIVE_INFINITY;
+    }
 }
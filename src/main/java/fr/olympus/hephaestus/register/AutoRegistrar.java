@@ -12,109 +12,268 @@ import io.github.classgraph.ClassGraph;
 import io.github.classgraph.ClassInfo;
 import io.github.classgraph.ScanResult;
 
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Constructor;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.EnumMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
 
 /**
  * Utility class for automatically registering materials, factories, and process recipes
  * by scanning specified base packages for annotated classes.
+ * <p>
+ * When the classes were compiled with {@link RegistrationIndexProcessor}, the registration index generated at
+ * compile time is used instead of a classpath scan. ClassGraph is only used when the index lists no class in
+ * the requested packages (e.g. a jar compiled without the processor); a scan collects the three kinds at once
+ * and is kept, so registering each kind separately over the same packages scans only once.
+ * <p>
+ * Materials and recipes are instantiated in parallel, then registered in a deterministic order (index or scan
+ * order). Factory suppliers call the no-arg constructor through a {@link LambdaMetafactory}-generated
+ * {@link Supplier}, as cheap as a plain {@code new}.
  */
 public final class AutoRegistrar {
 
+    /**
+     * Annotated classes found by the ClassGraph scans, by base packages.
+     */
+    private static final Map<List<String>, Map<RegisterType, List<Class<?>>>> SCANS = new ConcurrentHashMap<>();
+
+    /**
+     * The concrete registration types.
+     */
+    private static final RegisterType[] KINDS = {RegisterType.MATERIAL, RegisterType.FACTORY, RegisterType.RECIPE};
+
     // Prevent instantiation
     private AutoRegistrar() {
     }
 
 
     /**
-     * Registers components based on the specified type and base packages.
+     * Registers components into the default context ({@link Hephaestus#getData()}) based on the specified type
+     * and base packages.
      *
      * @param type         The type of components to register. see {@link RegisterType}.
      * @param basePackages The base packages to scan for components.
      * @throws IllegalArgumentException if type is null or basePackages is null/empty.
-     * @throws IllegalStateException    if any annotated class is invalid or cannot be instantiated.
+     * @throws IllegalStateException    if Hephaestus is not initialized, or if any annotated class is invalid or
+     *                                  cannot be instantiated.
      */
     public static void register(RegisterType type, String... basePackages) {
+        register(Hephaestus.getData(), type, basePackages);
+    }
+
+    /**
+     * Registers components into a registry based on the specified type and base packages.
+     * Every registry gets its own material and recipe instances.
+     *
+     * @param data         The registry to fill.
+     * @param type         The type of components to register. see {@link RegisterType}.
+     * @param basePackages The base packages to scan for components.
+     * @throws IllegalArgumentException if data or type is null or basePackages is null/empty.
+     * @throws IllegalStateException    if any annotated class is invalid or cannot be instantiated.
+     */
+    public static void register(HephaestusData data, RegisterType type, String... basePackages) {
+        if (data == null) throw new IllegalArgumentException("data cannot be null.");
         if (type == null) throw new IllegalArgumentException("type cannot be null.");
         if (basePackages == null || basePackages.length == 0)
             throw new IllegalArgumentException("basePackages required.");
 
-        HephaestusData data = Hephaestus.getData();
+        RegistrationIndex index = RegistrationIndex.get();
+        Map<RegisterType, List<Class<?>>> classes;
+        if (index.covers(basePackages)) {
+            // index généré à la compilation : pas de scan du classpath
+            classes = new EnumMap<>(RegisterType.class);
+            for (RegisterType t : KINDS) classes.put(t, index.classes(t, basePackages));
+        } else {
+            classes = SCANS.computeIfAbsent(List.of(basePackages), AutoRegistrar::scan);
+        }
 
+        if (type == RegisterType.ALL || type == RegisterType.MATERIAL) {
+            registerMaterials(data, classes.get(RegisterType.MATERIAL));
+        }
+        if (type == RegisterType.ALL || type == RegisterType.FACTORY) {
+            registerFactories(data, classes.get(RegisterType.FACTORY));
+        }
+        if (type == RegisterType.ALL || type == RegisterType.RECIPE) {
+            registerRecipes(data, classes.get(RegisterType.RECIPE));
+        }
+    }
+
+    /**
+     * Scans packages once for the three registration annotations.
+     *
+     * @param basePackages The base packages.
+     * @return The annotated classes by registration type.
+     */
+    private static Map<RegisterType, List<Class<?>>> scan(List<String> basePackages) {
         try (ScanResult scan = new ClassGraph()
                 .enableClassInfo()
                 .enableAnnotationInfo()
-                .acceptPackages(basePackages)
+                .acceptPackages(basePackages.toArray(new String[0]))
                 .scan()) {
+            Map<RegisterType, List<Class<?>>> classes = new EnumMap<>(RegisterType.class);
+            classes.put(RegisterType.MATERIAL, load(scan, MaterialAnnotation.class));
+            classes.put(RegisterType.FACTORY, load(scan, FactoryAnnotation.class));
+            classes.put(RegisterType.RECIPE, load(scan, RecipeAnnotation.class));
+            return classes;
+        }
+    }
 
-            if (type == RegisterType.ALL || type == RegisterType.MATERIAL) {
-                for (ClassInfo ci : scan.getClassesWithAnnotation(MaterialAnnotation.class.getName())) {
-                    Class<?> raw = ci.loadClass();
-                    if (!Material.class.isAssignableFrom(raw)) {
-                        throw new IllegalStateException("@MaterialAnnotation on non-Material: " + raw.getName());
-                    }
-                    @SuppressWarnings("unchecked")
-                    Class<? extends Material> clazz = (Class<? extends Material>) raw;
-
-                    MaterialAnnotation ann = clazz.getAnnotation(MaterialAnnotation.class);
-                    data.registerMaterial(ann.id(), newInstance(clazz));
-                }
+    /**
+     * Loads the scanned classes carrying an annotation.
+     *
+     * @param scan       The scan result.
+     * @param annotation The annotation.
+     * @return The classes.
+     */
+    private static List<Class<?>> load(ScanResult scan, Class<?> annotation) {
+        List<Class<?>> out = new ArrayList<>();
+        for (ClassInfo ci : scan.getClassesWithAnnotation(annotation.getName())) out.add(ci.loadClass());
+        return List.copyOf(out);
+    }
+
+    /**
+     * Registers {@code @MaterialAnnotation} classes (instantiated in parallel, registered in order).
+     *
+     * @param data    The registry.
+     * @param classes The annotated classes.
+     */
+    private static void registerMaterials(HephaestusData data, List<Class<?>> classes) {
+        for (Class<?> raw : classes) {
+            if (!Material.class.isAssignableFrom(raw)) {
+                throw new IllegalStateException("@MaterialAnnotation on non-Material: " + raw.getName());
+            }
+        }
+        Object[] instances = instantiateAll(classes);
+        for (int i = 0; i < instances.length; i++) {
+            MaterialAnnotation ann = classes.get(i).getAnnotation(MaterialAnnotation.class);
+            data.registerMaterial(ann.id(), (Material) instances[i]);
+        }
+    }
+
+    /**
+     * Registers {@code @FactoryAnnotation} classes.
+     *
+     * @param data    The registry.
+     * @param classes The annotated classes.
+     */
+    private static void registerFactories(HephaestusData data, List<Class<?>> classes) {
+        for (Class<?> raw : classes) {
+            if (!Factory.class.isAssignableFrom(raw)) {
+                throw new IllegalStateException("@FactoryAnnotation on non-Factory: " + raw.getName());
             }
+            @SuppressWarnings("unchecked")
+            Class<? extends Factory> clazz = (Class<? extends Factory>) raw;
 
-            if (type == RegisterType.ALL || type == RegisterType.FACTORY) {
-                for (ClassInfo ci : scan.getClassesWithAnnotation(FactoryAnnotation.class.getName())) {
-                    Class<?> raw = ci.loadClass();
-                    if (!Factory.class.isAssignableFrom(raw)) {
-                        throw new IllegalStateException("@FactoryAnnotation on non-Factory: " + raw.getName());
-                    }
-                    @SuppressWarnings("unchecked")
-                    Class<? extends Factory> clazz = (Class<? extends Factory>) raw;
-
-                    FactoryAnnotation ann = clazz.getAnnotation(FactoryAnnotation.class);
-
-                    Set<String> groups = new HashSet<>(Arrays.asList(ann.groups()));
-                    FactoryRegistryEntry entry = new FactoryRegistryEntry(
-                            ann.id(),
-                            groups,
-                            ann.level(),
-                            () -> newInstance(clazz)
-                    );
-
-                    data.registerFactory(entry);
-                }
+            FactoryAnnotation ann = clazz.getAnnotation(FactoryAnnotation.class);
+
+            Set<String> groups = new HashSet<>(Arrays.asList(ann.groups()));
+            FactoryRegistryEntry entry = new FactoryRegistryEntry(
+                    ann.id(),
+                    groups,
+                    ann.level(),
+                    constructorSupplier(clazz)
+            );
+
+            data.registerFactory(entry);
+        }
+    }
+
+    /**
+     * Registers {@code @RecipeAnnotation} classes (instantiated in parallel, registered in order).
+     *
+     * @param data    The registry.
+     * @param classes The annotated classes.
+     */
+    private static void registerRecipes(HephaestusData data, List<Class<?>> classes) {
+        for (Class<?> raw : classes) {
+            if (!ProcessRecipe.class.isAssignableFrom(raw)) {
+                throw new IllegalStateException("@RecipeAnnotation on non-ProcessRecipe: " + raw.getName());
             }
+        }
+        Object[] instances = instantiateAll(classes);
+        for (int i = 0; i < instances.length; i++) {
+            RecipeAnnotation ann = classes.get(i).getAnnotation(RecipeAnnotation.class);
+
+            RecipeSelector selector = new RecipeSelector(
+                    Set.of(ann.factoryIds()),
+                    Set.of(ann.factoryGroups()),
+                    ann.minFactoryLevel()
+            );
+
+            ProcessRecipe recipe = (ProcessRecipe) instances[i];
+            recipe.registerMeta(ann.id(), selector);
+
+            ProcessRecipeRegistryEntry entry = new ProcessRecipeRegistryEntry(
+                    ann.id(),
+                    selector,
+                    recipe
+            );
 
-            if (type == RegisterType.ALL || type == RegisterType.RECIPE) {
-                for (ClassInfo ci : scan.getClassesWithAnnotation(RecipeAnnotation.class.getName())) {
-                    Class<?> raw = ci.loadClass();
-                    if (!ProcessRecipe.class.isAssignableFrom(raw)) {
-                        throw new IllegalStateException("@RecipeAnnotation on non-ProcessRecipe: " + raw.getName());
-                    }
-                    @SuppressWarnings("unchecked")
-                    Class<? extends ProcessRecipe> clazz = (Class<? extends ProcessRecipe>) raw;
-
-                    RecipeAnnotation ann = clazz.getAnnotation(RecipeAnnotation.class);
-
-                    RecipeSelector selector = new RecipeSelector(
-                            Set.of(ann.factoryIds()),
-                            Set.of(ann.factoryGroups()),
-                            ann.minFactoryLevel()
-                    );
-
-                    ProcessRecipe recipe = newInstance(clazz);
-                    recipe.registerMeta(ann.id(), selector);
-
-                    ProcessRecipeRegistryEntry entry = new ProcessRecipeRegistryEntry(
-                            ann.id(),
-                            selector,
-                            recipe
-                    );
-
-                    data.registerProcessRecipe(entry);
+            data.registerProcessRecipe(entry);
+        }
+    }
+
+    /**
+     * Instantiates classes in parallel with their no-arg constructors.
+     *
+     * @param classes The classes.
+     * @return The instances, in the order of the classes.
+     * @throws IllegalStateException if a class cannot be instantiated.
+     */
+    private static Object[] instantiateAll(List<Class<?>> classes) {
+        Object[] out = new Object[classes.size()];
+        IntStream.range(0, out.length).parallel().forEach(i -> out[i] = newInstance(classes.get(i)));
+        return out;
+    }
+
+    /**
+     * Creates a supplier calling the no-arg constructor of a class through a generated lambda
+     * (falls back to a method handle if the class is not accessible to the lambda metafactory).
+     *
+     * @param clazz The class.
+     * @param <T>   The type of the class.
+     * @return The supplier.
+     * @throws IllegalStateException if the class has no no-arg constructor.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> Supplier<T> constructorSupplier(Class<T> clazz) {
+        MethodHandle ctor;
+        MethodHandles.Lookup lookup;
+        try {
+            lookup = MethodHandles.privateLookupIn(clazz, MethodHandles.lookup());
+            ctor = lookup.findConstructor(clazz, MethodType.methodType(void.class));
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("No-arg constructor required for auto-register: " + clazz.getName(), e);
+        } catch (IllegalAccessException e) {
+            // module non ouvert : réflexion classique
+            return () -> newInstance(clazz);
+        }
+        try {
+            return (Supplier<T>) LambdaMetafactory.metafactory(lookup, "get",
+                    MethodType.methodType(Supplier.class), MethodType.methodType(Object.class), ctor,
+                    MethodType.methodType(clazz)).getTarget().invokeExact();
+        } catch (Throwable e) {
+            MethodHandle generic = ctor.asType(MethodType.methodType(Object.class));
+            return () -> {
+                try {
+                    return (T) generic.invokeExact();
+                } catch (RuntimeException | Error ex) {
+                    throw ex;
+                } catch (Throwable ex) {
+                    throw new IllegalStateException("Cannot instantiate: " + clazz.getName(), ex);
                 }
-            }
+            };
         }
     }
 
@@ -0,0 +1,184 @@
+package fr.olympus.hephaestus.register;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Enumeration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Registration index generated at compile time by {@link RegistrationIndexProcessor}.
+ * <p>
+ * Every jar (or output directory) compiled with the processor holds a {@code META-INF/hephaestus/registration.index}
+ * resource listing its annotated classes, one per line: {@code MATERIAL|FACTORY|RECIPE <binary class name>}.
+ * The index is the union of all these resources visible to the class loader, read once.
+ */
+final class RegistrationIndex {
+
+    /**
+     * Resource path of the index.
+     */
+    static final String RESOURCE = "META-INF/hephaestus/registration.index";
+
+    /**
+     * The index loaded from the default class loader (empty if no resource was found).
+     */
+    private static volatile RegistrationIndex loaded;
+
+    /**
+     * Class names by registration type (MATERIAL, FACTORY and RECIPE only).
+     */
+    private final Map<RegisterType, List<String>> classes;
+
+    /**
+     * The class loader the index was read from.
+     */
+    private final ClassLoader loader;
+
+    /**
+     * Constructs a RegistrationIndex.
+     *
+     * @param classes Class names by registration type.
+     * @param loader  The class loader the index was read from.
+     */
+    private RegistrationIndex(Map<RegisterType, List<String>> classes, ClassLoader loader) {
+        this.classes = classes;
+        this.loader = loader;
+    }
+
+    /**
+     * Returns the index visible to the context class loader (or to the Hephaestus class loader), read once.
+     *
+     * @return The index (empty if no index resource exists).
+     * @throws IllegalStateException if an index resource is malformed or cannot be read.
+     */
+    static RegistrationIndex get() {
+        RegistrationIndex index = loaded;
+        if (index == null) {
+            synchronized (RegistrationIndex.class) {
+                index = loaded;
+                if (index == null) {
+                    ClassLoader cl = Thread.currentThread().getContextClassLoader();
+                    index = load(cl != null ? cl : RegistrationIndex.class.getClassLoader());
+                    loaded = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Reads and merges every index resource visible to a class loader.
+     *
+     * @param loader The class loader.
+     * @return The index (empty if no index resource exists).
+     * @throws IllegalStateException if an index resource is malformed or cannot be read.
+     */
+    static RegistrationIndex load(ClassLoader loader) {
+        Map<RegisterType, Set<String>> names = new EnumMap<>(RegisterType.class);
+        try {
+            Enumeration<URL> urls = loader.getResources(RESOURCE);
+            while (urls.hasMoreElements()) {
+                URL url = urls.nextElement();
+                try (BufferedReader in = new BufferedReader(
+                        new InputStreamReader(url.openStream(), StandardCharsets.UTF_8))) {
+                    String line;
+                    while ((line = in.readLine()) != null) {
+                        line = line.strip();
+                        if (line.isEmpty() || line.startsWith("#")) continue;
+                        int sp = line.indexOf(' ');
+                        RegisterType type = sp < 0 ? null : parseType(line.substring(0, sp));
+                        if (type == null) {
+                            throw new IllegalStateException("Malformed registration index line in " + url + ": " + line);
+                        }
+                        names.computeIfAbsent(type, t -> new LinkedHashSet<>()).add(line.substring(sp + 1).strip());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read the registration index.", e);
+        }
+
+        Map<RegisterType, List<String>> classes = new EnumMap<>(RegisterType.class);
+        names.forEach((type, set) -> classes.put(type, List.copyOf(set)));
+        return new RegistrationIndex(classes, loader);
+    }
+
+    /**
+     * Parses a registration type of the index (ALL is not allowed).
+     *
+     * @param s The type name.
+     * @return The type, or null if invalid.
+     */
+    private static RegisterType parseType(String s) {
+        return switch (s) {
+            case "MATERIAL" -> RegisterType.MATERIAL;
+            case "FACTORY" -> RegisterType.FACTORY;
+            case "RECIPE" -> RegisterType.RECIPE;
+            default -> null;
+        };
+    }
+
+    /**
+     * Checks whether the index lists at least one class in the given packages (or their sub-packages).
+     *
+     * @param basePackages The base packages.
+     * @return True if the index covers these packages.
+     */
+    boolean covers(String... basePackages) {
+        for (List<String> names : classes.values()) {
+            for (String name : names) {
+                if (inPackages(name, basePackages)) return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Loads the indexed classes of a registration type within the given packages, in index order.
+     *
+     * @param type         The registration type (not ALL).
+     * @param basePackages The base packages.
+     * @return The classes.
+     * @throws IllegalStateException if an indexed class cannot be loaded.
+     */
+    List<Class<?>> classes(RegisterType type, String... basePackages) {
+        List<String> names = classes.getOrDefault(type, List.of());
+        if (names.isEmpty()) return Collections.emptyList();
+        List<Class<?>> out = new ArrayList<>();
+        for (String name : names) {
+            if (!inPackages(name, basePackages)) continue;
+            try {
+                out.add(Class.forName(name, false, loader));
+            } catch (ClassNotFoundException e) {
+                throw new IllegalStateException("Indexed class not found (stale registration index?): " + name, e);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Checks whether a class belongs to one of the packages (or their sub-packages), as ClassGraph does.
+     *
+     * @param className    Binary class name.
+     * @param basePackages The base packages.
+     * @return True if inside.
+     */
+    private static boolean inPackages(String className, String... basePackages) {
+        for (String p : basePackages) {
+            if (p.isEmpty() || (className.startsWith(p) && className.length() > p.length()
+                    && className.charAt(p.length()) == '.')) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,155 @@
+package fr.olympus.hephaestus.register;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Annotation processor generating the registration index read by {@link AutoRegistrar}.
+ * <p>
+ * It collects the classes annotated with {@code @MaterialAnnotation}, {@code @FactoryAnnotation} and
+ * {@code @RecipeAnnotation}, checks at compile time what auto-registration would otherwise check at startup
+ * (concrete class, right supertype, no-arg constructor) and writes {@value RegistrationIndex#RESOURCE}.
+ * <p>
+ * Enable it with {@code annotationProcessor 'fr.olympus-engine:Hephaestus-Engine:<version>'} (Gradle).
+ */
+@SupportedAnnotationTypes({
+        RegistrationIndexProcessor.MATERIAL_ANNOTATION,
+        RegistrationIndexProcessor.FACTORY_ANNOTATION,
+        RegistrationIndexProcessor.RECIPE_ANNOTATION
+})
+public final class RegistrationIndexProcessor extends AbstractProcessor {
+
+    /**
+     * Qualified names of the registration annotations (not referenced as classes: the processor only needs names).
+     */
+    static final String MATERIAL_ANNOTATION = "fr.olympus.hephaestus.materials.MaterialAnnotation";
+    static final String FACTORY_ANNOTATION = "fr.olympus.hephaestus.factory.FactoryAnnotation";
+    static final String RECIPE_ANNOTATION = "fr.olympus.hephaestus.processing.RecipeAnnotation";
+
+    /**
+     * Indexed classes: binary name to index line, sorted for a reproducible output.
+     */
+    private final Map<String, String> lines = new TreeMap<>();
+
+    /**
+     * Elements that produced the index (originating elements of the resource).
+     */
+    private final List<Element> origins = new ArrayList<>();
+
+    /**
+     * Constructs the processor (instantiated by the compiler).
+     */
+    public RegistrationIndexProcessor() {
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment round) {
+        collect(round, MATERIAL_ANNOTATION, "fr.olympus.hephaestus.materials.Material", RegisterType.MATERIAL);
+        collect(round, FACTORY_ANNOTATION, "fr.olympus.hephaestus.factory.Factory", RegisterType.FACTORY);
+        collect(round, RECIPE_ANNOTATION, "fr.olympus.hephaestus.processing.ProcessRecipe", RegisterType.RECIPE);
+
+        if (round.processingOver() && !lines.isEmpty()) write();
+        return false;
+    }
+
+    /**
+     * Collects and checks the classes carrying one registration annotation.
+     *
+     * @param round      The round.
+     * @param annotation Qualified name of the annotation.
+     * @param supertype  Qualified name of the type the classes must extend or implement.
+     * @param type       The registration type.
+     */
+    private void collect(RoundEnvironment round, String annotation, String supertype, RegisterType type) {
+        TypeElement ann = processingEnv.getElementUtils().getTypeElement(annotation);
+        TypeElement sup = processingEnv.getElementUtils().getTypeElement(supertype);
+        if (ann == null || sup == null) return;
+
+        Messager messager = processingEnv.getMessager();
+        TypeMirror required = processingEnv.getTypeUtils().erasure(sup.asType());
+        for (Element e : round.getElementsAnnotatedWith(ann)) {
+            if (e.getKind() != ElementKind.CLASS) {
+                messager.printMessage(Diagnostic.Kind.ERROR, "@" + ann.getSimpleName() + " must be on a class.", e);
+                continue;
+            }
+            TypeElement clazz = (TypeElement) e;
+            if (clazz.getModifiers().contains(Modifier.ABSTRACT)) {
+                messager.printMessage(Diagnostic.Kind.ERROR, "@" + ann.getSimpleName() + " class cannot be abstract.", e);
+                continue;
+            }
+            if (!processingEnv.getTypeUtils().isAssignable(clazz.asType(), required)) {
+                messager.printMessage(Diagnostic.Kind.ERROR,
+                        "@" + ann.getSimpleName() + " on non-" + sup.getSimpleName() + ": " + clazz.getQualifiedName(), e);
+                continue;
+            }
+            if (!hasNoArgConstructor(clazz)) {
+                messager.printMessage(Diagnostic.Kind.ERROR,
+                        "No-arg constructor required for auto-register: " + clazz.getQualifiedName(), e);
+                continue;
+            }
+            String name = processingEnv.getElementUtils().getBinaryName(clazz).toString();
+            lines.put(name, type.name() + " " + name);
+            origins.add(clazz);
+        }
+    }
+
+    /**
+     * Checks whether a class has a no-arg constructor (any visibility, reflection is used).
+     *
+     * @param clazz The class.
+     * @return True if it has one.
+     */
+    private static boolean hasNoArgConstructor(TypeElement clazz) {
+        if (clazz.getNestingKind().isNested() && !clazz.getModifiers().contains(Modifier.STATIC)) return false;
+        for (ExecutableElement c : ElementFilter.constructorsIn(clazz.getEnclosedElements())) {
+            if (c.getParameters().isEmpty()) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Writes the index resource.
+     */
+    private void write() {
+        Filer filer = processingEnv.getFiler();
+        try {
+            FileObject file = filer.createResource(StandardLocation.CLASS_OUTPUT, "", RegistrationIndex.RESOURCE,
+                    origins.toArray(new Element[0]));
+            try (Writer w = new OutputStreamWriter(file.openOutputStream(), StandardCharsets.UTF_8)) {
+                w.write("# Generated by " + RegistrationIndexProcessor.class.getName() + ", do not edit.\n");
+                for (String line : lines.values()) w.write(line + "\n");
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Cannot write " + RegistrationIndex.RESOURCE + ": " + e.getMessage());
+        }
+    }
+}
@@ -1,17 +1,26 @@
 package fr.olympus.hephaestus.resources;
 
 import fr.olympus.hephaestus.factory.Factory;
+import fr.olympus.hephaestus.factory.RecipeNetwork;
+import fr.olympus.hephaestus.materials.CategoryMask;
 import fr.olympus.hephaestus.materials.Material;
 import fr.olympus.hephaestus.materials.MaterialCategory;
 import fr.olympus.hephaestus.processing.ProcessRecipe;
+import fr.olympus.hephaestus.processing.RecipeGraph;
 import fr.olympus.hephaestus.register.FactoryRegistryEntry;
 import fr.olympus.hephaestus.register.ProcessRecipeRegistryEntry;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Central registry for materials, factories, and process recipes in the Hephaestus system.
+ * <p>
+ * Once registration is done, {@link #freeze()} publishes an immutable snapshot of the registry: from then on,
+ * factory creation and recipe/factory/category lookups read it without taking any lock. Registrations after the
+ * freeze are still accepted and publish a new snapshot (copy-on-write).
  */
 public final class HephaestusData {
 
@@ -20,6 +29,22 @@ public final class HephaestusData {
      */
     private final Map<String, Material> materials = new ConcurrentHashMap<>();
 
+    /**
+     * Category keys of each registered material, computed once at registration.
+     */
+    private final Map<String, Set<String>> materialCategoryKeys = new ConcurrentHashMap<>();
+
+    /**
+     * Registered material IDs by dense index, in registration order (guarded by {@link #categoryIndex}).
+     */
+    private final List<String> materialIdsByIndex = new ArrayList<>();
+
+    /**
+     * Inverted category index: dense indices of the materials of each category, by category bit
+     * (see {@link CategoryMask#bitOf(String)}).
+     */
+    private final List<BitSet> categoryIndex = new ArrayList<>();
+
     /**
      * Map of registered factory entries by their unique IDs.
      */
@@ -29,6 +54,32 @@ public final class HephaestusData {
      */
     private final List<ProcessRecipeRegistryEntry> recipeEntries = Collections.synchronizedList(new ArrayList<>());
 
+    /**
+     * Index of the recipe selectors by factory id, group and minimum level (guarded by {@link #recipeEntries}).
+     */
+    private final RecipeSelectorIndex selectorIndex = new RecipeSelectorIndex();
+
+    /**
+     * Recipe networks shared by the factories of each type (cleared when a recipe is registered).
+     */
+    private final Map<String, RecipeNetwork> recipeNetworks = new ConcurrentHashMap<>();
+
+    /**
+     * Producer/consumer graph of the registered recipes, built on first use (guarded by {@link #recipeEntries},
+     * cleared when a recipe is registered).
+     */
+    private RecipeGraph recipeGraph;
+
+    /**
+     * Registration counter (see {@link #getVersion()}).
+     */
+    private final AtomicLong version = new AtomicLong();
+
+    /**
+     * Immutable registry published by {@link #freeze()}, or null while registering.
+     */
+    private final AtomicReference<RegistrySnapshot> frozen = new AtomicReference<>();
+
     /**
      * Constructs a new HephaestusData instance.
      */
@@ -55,6 +106,27 @@ public final class HephaestusData {
         if (materials.putIfAbsent(id, material) != null) {
             throw new IllegalArgumentException("Material already registered: " + id);
         }
+        Set<String> keys = new HashSet<>();
+        for (MaterialCategory c : material.getCategories()) {
+            if (c instanceof Enum<?> e) keys.add(e.name());
+        }
+        materialCategoryKeys.put(id, Set.copyOf(keys));
+
+        CategoryMask mask = material.getCategoryMask();
+        synchronized (categoryIndex) {
+            if (frozen.get() == null) {
+                int index = materialIdsByIndex.size();
+                materialIdsByIndex.add(id);
+                for (int bit = mask.nextSetBit(0); bit >= 0; bit = mask.nextSetBit(bit + 1)) {
+                    while (categoryIndex.size() <= bit) categoryIndex.add(new BitSet());
+                    categoryIndex.get(bit).set(index);
+                }
+                version.incrementAndGet();
+                return;
+            }
+        }
+        frozen.updateAndGet(snapshot -> snapshot.withMaterial(id, mask));
+        version.incrementAndGet();
     }
 
     /**
@@ -65,9 +137,17 @@ public final class HephaestusData {
      */
     public void registerFactory(FactoryRegistryEntry entry) {
         if (entry == null) throw new IllegalArgumentException("entry cannot be null.");
-        if (factories.putIfAbsent(entry.id(), entry) != null) {
-            throw new IllegalArgumentException("Factory already registered: " + entry.id());
+        synchronized (recipeEntries) {
+            if (factories.putIfAbsent(entry.id(), entry) != null) {
+                throw new IllegalArgumentException("Factory already registered: " + entry.id());
+            }
+            if (frozen.get() == null) {
+                version.incrementAndGet();
+                return;
+            }
         }
+        frozen.updateAndGet(snapshot -> snapshot.withFactory(entry));
+        version.incrementAndGet();
     }
 
     /**
@@ -78,7 +158,54 @@ public final class HephaestusData {
      */
     public void registerProcessRecipe(ProcessRecipeRegistryEntry entry) {
         if (entry == null) throw new IllegalArgumentException("entry cannot be null.");
-        recipeEntries.add(entry);
+        synchronized (recipeEntries) {
+            if (frozen.get() == null) {
+                selectorIndex.add(recipeEntries.size(), entry.selector());
+                recipeEntries.add(entry);
+                recipeNetworks.clear();
+                recipeGraph = null;
+                version.incrementAndGet();
+                return;
+            }
+        }
+        frozen.updateAndGet(snapshot -> snapshot.withRecipe(entry));
+        version.incrementAndGet();
+    }
+
+    /**
+     * Publishes an immutable snapshot of the registry, read without locks from then on.
+     * <p>
+     * Call it once registration is done, before worker threads start creating factories. Later registrations
+     * remain possible but each one copies the affected parts of the snapshot. Calling it again has no effect.
+     */
+    public void freeze() {
+        synchronized (recipeEntries) {
+            synchronized (categoryIndex) {
+                if (frozen.get() != null) return;
+                frozen.set(RegistrySnapshot.of(materialIdsByIndex, categoryIndex, factories, recipeEntries,
+                        selectorIndex));
+                recipeNetworks.clear();
+            }
+        }
+    }
+
+    /**
+     * Returns the registration counter: it changes after every registered material, factory or recipe, so a
+     * result computed from the registry (e.g. a cached plan) is still valid while the version is the same.
+     *
+     * @return The registry version.
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Checks whether {@link #freeze()} was called.
+     *
+     * @return True if the registry is frozen.
+     */
+    public boolean isFrozen() {
+        return frozen.get() != null;
     }
 
     /**
@@ -89,7 +216,8 @@ public final class HephaestusData {
      * @return A new Factory instance with attached compatible process recipes.
      */
     public Factory createFactory(String factoryId) {
-        FactoryRegistryEntry reg = factories.get(factoryId);
+        RegistrySnapshot snapshot = frozen.get();
+        FactoryRegistryEntry reg = snapshot != null ? snapshot.factories.get(factoryId) : factories.get(factoryId);
         if (reg == null) throw new IllegalArgumentException("Unknown factory id: " + factoryId);
 
         Factory instance = reg.supplier().get();
@@ -97,20 +225,43 @@ public final class HephaestusData {
 
         instance.setRegistryMeta(reg.id(), reg.groups(), reg.level());
 
-        // Attacher toutes les process-recipes compatibles (id/group/level)
-        List<ProcessRecipe> attach = new ArrayList<>();
-        synchronized (recipeEntries) {
-            for (ProcessRecipeRegistryEntry re : recipeEntries) {
-                if (re.selector().matchesFactory(reg.id(), reg.groups(), reg.level())) {
-                    attach.add(re.recipe());
-                }
-            }
-        }
-        instance.addRecipes(attach);
+        // Attacher toutes les process-recipes compatibles (id/group/level), via le réseau partagé du type
+        instance.setRecipeNetwork(snapshot != null ? snapshot.networks.get(reg.id()) : getRecipeNetwork(reg.id()));
 
         return instance;
     }
 
+    /**
+     * Retrieves the recipe network shared by the factories of the given type, building it on first use.
+     *
+     * @param factoryId The unique identifier of the factory type.
+     * @return The network of all compatible process recipes (id/group/level).
+     * @throws IllegalArgumentException if the factory ID is unknown.
+     */
+    public RecipeNetwork getRecipeNetwork(String factoryId) {
+        RegistrySnapshot snapshot = frozen.get();
+        if (snapshot != null) {
+            RecipeNetwork network = snapshot.networks.get(factoryId);
+            if (network == null) throw new IllegalArgumentException("Unknown factory id: " + factoryId);
+            return network;
+        }
+
+        RecipeNetwork network = recipeNetworks.get(factoryId);
+        if (network != null) return network;
+        FactoryRegistryEntry reg = getFactoryRegistryEntryById(factoryId);
+
+        synchronized (recipeEntries) {
+            // gelé entre-temps : le snapshot a déjà tous les réseaux
+            if (frozen.get() != null) return getRecipeNetwork(factoryId);
+            network = recipeNetworks.get(factoryId);
+            if (network != null) return network;
+
+            network = RegistrySnapshot.networkOf(reg, recipeEntries, selectorIndex);
+            recipeNetworks.put(factoryId, network);
+            return network;
+        }
+    }
+
 
 
 
@@ -131,25 +282,107 @@ public final class HephaestusData {
      * Retrieves the set of material category keys for the given material ID.
      *
      * @param id Unique identifier of the material.
-     * @return Set of category keys associated with the material.
+     * @return Unmodifiable set of category keys associated with the material.
      * @throws IllegalArgumentException if the material ID is unknown.
      */
     public Set<String> getMaterialCategoryKeys(String id) {
-        Material m = getMaterialDef(id);
-        Set<String> keys = new HashSet<>();
-        for (MaterialCategory c : m.getCategories()) {
-            if (c instanceof Enum<?> e) keys.add(e.name());
-        }
+        Set<String> keys = materialCategoryKeys.get(id);
+        if (keys == null) throw new IllegalArgumentException("Unknown material id: " + id);
         return keys;
     }
 
+    /**
+     * Retrieves the categories of the given material compiled to a bitmask.
+     *
+     * @param id Unique identifier of the material.
+     * @return The category mask of the material.
+     * @throws IllegalArgumentException if the material ID is unknown.
+     */
+    public CategoryMask getMaterialCategoryMask(String id) {
+        return getMaterialDef(id).getCategoryMask();
+    }
+
+    /**
+     * Retrieves the IDs of the materials having all the given categories, in registration order.
+     *
+     * @param categories The categories.
+     * @return List of material IDs (every material if no category is given).
+     */
     public List<String> getMaterialWithCategory(MaterialCategory... categories) {
-        List<String> results = new ArrayList<>();
-        for (Map.Entry<String, Material> e : materials.entrySet()) {
-            if (e.getValue().hasCategories(categories)) {
-                results.add(e.getKey());
-            }
+        for (MaterialCategory c : categories) {
+            // les catégories des matériaux sont toujours des enums
+            if (!(c instanceof Enum<?>)) return new ArrayList<>();
+        }
+        CategoryMask mask = CategoryMask.of(List.of(categories));
+        RegistrySnapshot snapshot = frozen.get();
+        if (snapshot != null) {
+            return idsOf(RegistrySnapshot.allOf(snapshot.categoryIndex, mask, snapshot.materialIds.size()),
+                    snapshot.materialIds);
+        }
+        synchronized (categoryIndex) {
+            return idsOf(RegistrySnapshot.allOf(categoryIndex, mask, materialIdsByIndex.size()), materialIdsByIndex);
+        }
+    }
+
+    /**
+     * Retrieves the materials having at least one of the given categories (union of the category index).
+     *
+     * @param categories The categories.
+     * @return A new BitSet of dense material indices (see {@link #getMaterialIdAt(int)}).
+     * @throws IllegalArgumentException if categories is null.
+     */
+    public BitSet getMaterialsWithAnyCategory(CategoryMask categories) {
+        if (categories == null) throw new IllegalArgumentException("categories cannot be null.");
+        RegistrySnapshot snapshot = frozen.get();
+        if (snapshot != null) return RegistrySnapshot.anyOf(snapshot.categoryIndex, categories);
+        synchronized (categoryIndex) {
+            return RegistrySnapshot.anyOf(categoryIndex, categories);
         }
+    }
+
+    /**
+     * Retrieves the materials having all the given categories (intersection of the category index).
+     *
+     * @param categories The categories.
+     * @return A new BitSet of dense material indices (every material if the mask is empty).
+     * @throws IllegalArgumentException if categories is null.
+     */
+    public BitSet getMaterialsWithAllCategories(CategoryMask categories) {
+        if (categories == null) throw new IllegalArgumentException("categories cannot be null.");
+        RegistrySnapshot snapshot = frozen.get();
+        if (snapshot != null) {
+            return RegistrySnapshot.allOf(snapshot.categoryIndex, categories, snapshot.materialIds.size());
+        }
+        synchronized (categoryIndex) {
+            return RegistrySnapshot.allOf(categoryIndex, categories, materialIdsByIndex.size());
+        }
+    }
+
+    /**
+     * Retrieves the ID of a material from its dense index.
+     *
+     * @param index Dense index, as found in the category index results.
+     * @return The material ID.
+     * @throws IndexOutOfBoundsException if no material has this index.
+     */
+    public String getMaterialIdAt(int index) {
+        RegistrySnapshot snapshot = frozen.get();
+        if (snapshot != null) return snapshot.materialIds.get(index);
+        synchronized (categoryIndex) {
+            return materialIdsByIndex.get(index);
+        }
+    }
+
+    /**
+     * Maps dense material indices to material IDs.
+     *
+     * @param indices Dense material indices.
+     * @param ids     Material IDs by dense index.
+     * @return List of material IDs, in index order.
+     */
+    private static List<String> idsOf(BitSet indices, List<String> ids) {
+        List<String> results = new ArrayList<>(indices.cardinality());
+        for (int i = indices.nextSetBit(0); i >= 0; i = indices.nextSetBit(i + 1)) results.add(ids.get(i));
         return results;
     }
 
@@ -168,11 +401,29 @@ public final class HephaestusData {
      * @return List of ProcessRecipeRegistryEntry instances.
      */
     public List<ProcessRecipeRegistryEntry> getProcessRecipeEntriesSnapshot() {
+        RegistrySnapshot snapshot = frozen.get();
+        if (snapshot != null) return snapshot.recipes;
         synchronized (recipeEntries) {
             return List.copyOf(recipeEntries);
         }
     }
 
+    /**
+     * Retrieves the producer/consumer graph of all registered recipes, in registration order.
+     * Built once per recipe set and shared (e.g. by every {@code CraftPlanner} created from it).
+     *
+     * @return The recipe graph.
+     */
+    public RecipeGraph getRecipeGraph() {
+        RegistrySnapshot snapshot = frozen.get();
+        if (snapshot != null) return snapshot.recipeGraph();
+        synchronized (recipeEntries) {
+            if (frozen.get() != null) return getRecipeGraph();
+            if (recipeGraph == null) recipeGraph = RegistrySnapshot.graphOf(recipeEntries);
+            return recipeGraph;
+        }
+    }
+
     /**
      * Retrieves all process recipes compatible with the given factory ID, groups, and level.
      *
@@ -182,15 +433,13 @@ public final class HephaestusData {
      * @return List of compatible ProcessRecipeRegistryEntry instances.
      */
     public List<ProcessRecipeRegistryEntry> getProcessRecipesByFactoryId(String factoryId, Set<String> factoryGroupsOfInstance, int factoryLevel) {
-        List<ProcessRecipeRegistryEntry> results = new ArrayList<>();
+        RegistrySnapshot snapshot = frozen.get();
+        if (snapshot != null) {
+            return snapshot.selectors.select(snapshot.recipes, factoryId, factoryGroupsOfInstance, factoryLevel);
+        }
         synchronized (recipeEntries) {
-            for (ProcessRecipeRegistryEntry re : recipeEntries) {
-                if (re.selector().matchesFactory(factoryId, factoryGroupsOfInstance, factoryLevel)) {
-                    results.add(re);
-                }
-            }
+            return selectorIndex.select(recipeEntries, factoryId, factoryGroupsOfInstance, factoryLevel);
         }
-        return results;
     }
 
     /**
@@ -201,6 +450,12 @@ public final class HephaestusData {
      * @throws IllegalArgumentException if the recipe ID is unknown.
      */
     public ProcessRecipeRegistryEntry getProcessRecipeById(String recipeId) {
+        RegistrySnapshot snapshot = frozen.get();
+        if (snapshot != null) {
+            ProcessRecipeRegistryEntry re = snapshot.recipesById.get(recipeId);
+            if (re == null) throw new IllegalArgumentException("Unknown recipe id: " + recipeId);
+            return re;
+        }
         synchronized (recipeEntries) {
             for (ProcessRecipeRegistryEntry re : recipeEntries) {
                 if (re.recipe().id().equals(recipeId)) {
@@ -219,7 +474,8 @@ public final class HephaestusData {
      * @throws IllegalArgumentException if the factory ID is unknown.
      */
     public FactoryRegistryEntry getFactoryRegistryEntryById(String factoryId) {
-        FactoryRegistryEntry entry = factories.get(factoryId);
+        RegistrySnapshot snapshot = frozen.get();
+        FactoryRegistryEntry entry = snapshot != null ? snapshot.factories.get(factoryId) : factories.get(factoryId);
         if (entry == null) {
             throw new IllegalArgumentException("Unknown factory id: " + factoryId);
         }
@@ -232,6 +488,8 @@ public final class HephaestusData {
      * @return List of factory IDs.
      */
     public List<String> getFactoryIdsSnapshot() {
+        RegistrySnapshot snapshot = frozen.get();
+        if (snapshot != null) return new ArrayList<>(snapshot.factoryIds);
         ArrayList<String> ids = new ArrayList<>(factories.keySet());
         Collections.sort(ids);
         return ids;
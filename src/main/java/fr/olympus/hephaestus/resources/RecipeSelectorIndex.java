@@ -0,0 +1,142 @@
+package fr.olympus.hephaestus.resources;
+
+import fr.olympus.hephaestus.register.RecipeSelector;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Index of the recipe selectors, answering "which recipes can this factory run" without testing every recipe.
+ * <p>
+ * Recipes are identified by their registration position. The index keeps, as bitsets, the recipes naming each
+ * factory ID, the recipes naming each group, the recipes without ID (resp. group) constraint, and the recipes of
+ * each {@code minFactoryLevel}. A query is the intersection of three unions: accepted by ID, accepted by group and
+ * accepted by level, which gives exactly the recipes whose {@link RecipeSelector#matchesFactory} is true.
+ */
+final class RecipeSelectorIndex {
+
+    /**
+     * Recipes listing each factory ID.
+     */
+    private final Map<String, BitSet> byFactoryId;
+
+    /**
+     * Recipes accepting any factory ID.
+     */
+    private final BitSet anyFactoryId;
+
+    /**
+     * Recipes listing each factory group.
+     */
+    private final Map<String, BitSet> byGroup;
+
+    /**
+     * Recipes accepting any factory group.
+     */
+    private final BitSet anyGroup;
+
+    /**
+     * Recipes by minimum factory level.
+     */
+    private final TreeMap<Integer, BitSet> byMinLevel;
+
+    /**
+     * Constructs an empty index.
+     */
+    RecipeSelectorIndex() {
+        this(new HashMap<>(), new BitSet(), new HashMap<>(), new BitSet(), new TreeMap<>());
+    }
+
+    /**
+     * Constructs an index over the given postings (owned by the index).
+     */
+    private RecipeSelectorIndex(Map<String, BitSet> byFactoryId, BitSet anyFactoryId, Map<String, BitSet> byGroup,
+                                BitSet anyGroup, TreeMap<Integer, BitSet> byMinLevel) {
+        this.byFactoryId = byFactoryId;
+        this.anyFactoryId = anyFactoryId;
+        this.byGroup = byGroup;
+        this.anyGroup = anyGroup;
+        this.byMinLevel = byMinLevel;
+    }
+
+    /**
+     * Indexes the selector of a recipe.
+     *
+     * @param position Registration position of the recipe.
+     * @param selector Its selector.
+     */
+    void add(int position, RecipeSelector selector) {
+        if (selector.factoryIds().isEmpty()) anyFactoryId.set(position);
+        for (String id : selector.factoryIds()) byFactoryId.computeIfAbsent(id, k -> new BitSet()).set(position);
+
+        if (selector.factoryGroups().isEmpty()) anyGroup.set(position);
+        for (String g : selector.factoryGroups()) byGroup.computeIfAbsent(g, k -> new BitSet()).set(position);
+
+        byMinLevel.computeIfAbsent(selector.minFactoryLevel(), k -> new BitSet()).set(position);
+    }
+
+    /**
+     * Returns the recipes whose selector accepts the given factory.
+     *
+     * @param factoryId    The factory ID.
+     * @param groups       The groups of the factory.
+     * @param factoryLevel The level of the factory.
+     * @return A new BitSet of recipe positions.
+     */
+    BitSet select(String factoryId, Set<String> groups, int factoryLevel) {
+        BitSet result = (BitSet) anyFactoryId.clone();
+        BitSet named = byFactoryId.get(factoryId);
+        if (named != null) result.or(named);
+        if (result.isEmpty()) return result;
+
+        BitSet byGroups = (BitSet) anyGroup.clone();
+        for (String g : groups) {
+            BitSet b = byGroup.get(g);
+            if (b != null) byGroups.or(b);
+        }
+        result.and(byGroups);
+        if (result.isEmpty()) return result;
+
+        BitSet levels = new BitSet();
+        for (BitSet b : byMinLevel.headMap(factoryLevel, true).values()) levels.or(b);
+        result.and(levels);
+        return result;
+    }
+
+    /**
+     * Returns the recipes whose selector accepts the given factory.
+     *
+     * @param recipes      The recipes, by registration position.
+     * @param factoryId    The factory ID.
+     * @param groups       The groups of the factory.
+     * @param factoryLevel The level of the factory.
+     * @param <T>          Recipe (or entry) type.
+     * @return List of the accepted recipes, in registration order.
+     */
+    <T> List<T> select(List<T> recipes, String factoryId, Set<String> groups, int factoryLevel) {
+        BitSet found = select(factoryId, groups, factoryLevel);
+        List<T> out = new ArrayList<>(found.cardinality());
+        for (int i = found.nextSetBit(0); i >= 0; i = found.nextSetBit(i + 1)) out.add(recipes.get(i));
+        return out;
+    }
+
+    /**
+     * Copies the index (for copy-on-write updates).
+     *
+     * @return An independent copy.
+     */
+    RecipeSelectorIndex copy() {
+        Map<String, BitSet> ids = new HashMap<>();
+        byFactoryId.forEach((k, v) -> ids.put(k, (BitSet) v.clone()));
+        Map<String, BitSet> groups = new HashMap<>();
+        byGroup.forEach((k, v) -> groups.put(k, (BitSet) v.clone()));
+        TreeMap<Integer, BitSet> levels = new TreeMap<>();
+        byMinLevel.forEach((k, v) -> levels.put(k, (BitSet) v.clone()));
+        return new RecipeSelectorIndex(ids, (BitSet) anyFactoryId.clone(), groups, (BitSet) anyGroup.clone(), levels);
+    }
+}
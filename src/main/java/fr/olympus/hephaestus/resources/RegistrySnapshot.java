@@ -0,0 +1,282 @@
+package fr.olympus.hephaestus.resources;
+
+import fr.olympus.hephaestus.factory.RecipeNetwork;
+import fr.olympus.hephaestus.materials.CategoryMask;
+import fr.olympus.hephaestus.processing.ProcessRecipe;
+import fr.olympus.hephaestus.processing.RecipeGraph;
+import fr.olympus.hephaestus.register.FactoryRegistryEntry;
+import fr.olympus.hephaestus.register.ProcessRecipeRegistryEntry;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable view of a frozen registry, published by {@link HephaestusData#freeze()} and read without locks.
+ * <p>
+ * Recipes and material IDs are array-indexed, recipes and factories are hashed by ID, and the recipe network of
+ * every factory type is built up front. A registration after the freeze never modifies a snapshot: it derives a
+ * new one (copy-on-write), rebuilding only the networks of the factory types the change concerns.
+ */
+final class RegistrySnapshot {
+
+    /**
+     * Registered material IDs by dense index.
+     */
+    final List<String> materialIds;
+
+    /**
+     * Inverted category index, by category bit (the BitSets are never modified once published).
+     */
+    final List<BitSet> categoryIndex;
+
+    /**
+     * Factory entries by ID.
+     */
+    final Map<String, FactoryRegistryEntry> factories;
+
+    /**
+     * Sorted factory IDs.
+     */
+    final List<String> factoryIds;
+
+    /**
+     * Recipe entries, in registration order.
+     */
+    final List<ProcessRecipeRegistryEntry> recipes;
+
+    /**
+     * Recipe entries by recipe ID (first registered wins).
+     */
+    final Map<String, ProcessRecipeRegistryEntry> recipesById;
+
+    /**
+     * Index of the recipe selectors (never modified once published).
+     */
+    final RecipeSelectorIndex selectors;
+
+    /**
+     * Recipe network of each factory type.
+     */
+    final Map<String, RecipeNetwork> networks;
+
+    /**
+     * Producer/consumer graph of the recipes, built on first use (idempotent, a race only builds it twice).
+     */
+    private volatile RecipeGraph recipeGraph;
+
+    /**
+     * Constructs a RegistrySnapshot (the collections must already be immutable).
+     */
+    private RegistrySnapshot(List<String> materialIds, List<BitSet> categoryIndex,
+                             Map<String, FactoryRegistryEntry> factories, List<String> factoryIds,
+                             List<ProcessRecipeRegistryEntry> recipes,
+                             Map<String, ProcessRecipeRegistryEntry> recipesById,
+                             RecipeSelectorIndex selectors, Map<String, RecipeNetwork> networks) {
+        this.materialIds = materialIds;
+        this.categoryIndex = categoryIndex;
+        this.factories = factories;
+        this.factoryIds = factoryIds;
+        this.recipes = recipes;
+        this.recipesById = recipesById;
+        this.selectors = selectors;
+        this.networks = networks;
+    }
+
+    /**
+     * Builds a snapshot from the registration-time structures (copied).
+     *
+     * @param materialIds   Material IDs by dense index.
+     * @param categoryIndex Inverted category index.
+     * @param factories     Factory entries by ID.
+     * @param recipes       Recipe entries, in registration order.
+     * @param selectors     Index of the recipe selectors.
+     * @return The snapshot.
+     */
+    static RegistrySnapshot of(List<String> materialIds, List<BitSet> categoryIndex,
+                               Map<String, FactoryRegistryEntry> factories,
+                               List<ProcessRecipeRegistryEntry> recipes, RecipeSelectorIndex selectors) {
+        List<BitSet> index = new ArrayList<>(categoryIndex.size());
+        for (BitSet b : categoryIndex) index.add((BitSet) b.clone());
+
+        List<ProcessRecipeRegistryEntry> recipeList = List.copyOf(recipes);
+        Map<String, ProcessRecipeRegistryEntry> byId = new HashMap<>();
+        for (ProcessRecipeRegistryEntry re : recipeList) byId.putIfAbsent(re.recipe().id(), re);
+
+        RecipeSelectorIndex sel = selectors.copy();
+        Map<String, RecipeNetwork> networks = new HashMap<>();
+        for (FactoryRegistryEntry reg : factories.values()) networks.put(reg.id(), networkOf(reg, recipeList, sel));
+
+        return new RegistrySnapshot(List.copyOf(materialIds), Collections.unmodifiableList(index),
+                Map.copyOf(factories), sortedIds(factories), recipeList,
+                Collections.unmodifiableMap(byId), sel, Collections.unmodifiableMap(networks));
+    }
+
+    /**
+     * Derives a snapshot with one more material.
+     *
+     * @param id   The material ID.
+     * @param mask The categories of the material.
+     * @return The new snapshot.
+     */
+    RegistrySnapshot withMaterial(String id, CategoryMask mask) {
+        List<String> ids = new ArrayList<>(materialIds.size() + 1);
+        ids.addAll(materialIds);
+        ids.add(id);
+
+        // seules les catégories du nouveau matériau sont copiées
+        List<BitSet> index = new ArrayList<>(categoryIndex);
+        int material = materialIds.size();
+        for (int bit = mask.nextSetBit(0); bit >= 0; bit = mask.nextSetBit(bit + 1)) {
+            while (index.size() <= bit) index.add(new BitSet());
+            BitSet copy = (BitSet) index.get(bit).clone();
+            copy.set(material);
+            index.set(bit, copy);
+        }
+        return new RegistrySnapshot(Collections.unmodifiableList(ids), Collections.unmodifiableList(index),
+                factories, factoryIds, recipes, recipesById, selectors, networks);
+    }
+
+    /**
+     * Derives a snapshot with one more factory type.
+     *
+     * @param entry The factory entry.
+     * @return The new snapshot.
+     */
+    RegistrySnapshot withFactory(FactoryRegistryEntry entry) {
+        Map<String, FactoryRegistryEntry> f = new HashMap<>(factories);
+        f.put(entry.id(), entry);
+        Map<String, RecipeNetwork> n = new HashMap<>(networks);
+        n.put(entry.id(), networkOf(entry, recipes, selectors));
+        return new RegistrySnapshot(materialIds, categoryIndex, Collections.unmodifiableMap(f), sortedIds(f),
+                recipes, recipesById, selectors, Collections.unmodifiableMap(n));
+    }
+
+    /**
+     * Derives a snapshot with one more recipe; only the networks of the factory types it selects are rebuilt.
+     *
+     * @param entry The recipe entry.
+     * @return The new snapshot.
+     */
+    RegistrySnapshot withRecipe(ProcessRecipeRegistryEntry entry) {
+        List<ProcessRecipeRegistryEntry> r = new ArrayList<>(recipes.size() + 1);
+        r.addAll(recipes);
+        r.add(entry);
+        r = Collections.unmodifiableList(r);
+
+        Map<String, ProcessRecipeRegistryEntry> byId = recipesById;
+        if (!byId.containsKey(entry.recipe().id())) {
+            Map<String, ProcessRecipeRegistryEntry> copy = new HashMap<>(byId);
+            copy.put(entry.recipe().id(), entry);
+            byId = Collections.unmodifiableMap(copy);
+        }
+
+        RecipeSelectorIndex sel = selectors.copy();
+        sel.add(recipes.size(), entry.selector());
+
+        Map<String, RecipeNetwork> n = new HashMap<>(networks);
+        for (FactoryRegistryEntry reg : factories.values()) {
+            if (entry.selector().matchesFactory(reg.id(), reg.groups(), reg.level())) {
+                n.put(reg.id(), networkOf(reg, r, sel));
+            }
+        }
+        return new RegistrySnapshot(materialIds, categoryIndex, factories, factoryIds, r, byId, sel,
+                Collections.unmodifiableMap(n));
+    }
+
+    /**
+     * Builds the recipe network of a factory type: every compatible recipe (id/group/level), in registration order.
+     *
+     * @param reg       The factory entry.
+     * @param recipes   The recipe entries.
+     * @param selectors Index of their selectors.
+     * @return The network.
+     */
+    static RecipeNetwork networkOf(FactoryRegistryEntry reg, List<ProcessRecipeRegistryEntry> recipes,
+                                   RecipeSelectorIndex selectors) {
+        List<ProcessRecipe> attach = new ArrayList<>();
+        for (ProcessRecipeRegistryEntry re : selectors.select(recipes, reg.id(), reg.groups(), reg.level())) {
+            attach.add(re.recipe());
+        }
+        return new RecipeNetwork(attach);
+    }
+
+    /**
+     * Returns the producer/consumer graph of the snapshot recipes, building it on first use.
+     *
+     * @return The recipe graph.
+     */
+    RecipeGraph recipeGraph() {
+        RecipeGraph graph = recipeGraph;
+        if (graph == null) {
+            graph = graphOf(recipes);
+            recipeGraph = graph;
+        }
+        return graph;
+    }
+
+    /**
+     * Builds the producer/consumer graph of recipe entries.
+     *
+     * @param recipes The recipe entries, in registration order.
+     * @return The graph.
+     */
+    static RecipeGraph graphOf(List<ProcessRecipeRegistryEntry> recipes) {
+        List<ProcessRecipe> list = new ArrayList<>(recipes.size());
+        for (ProcessRecipeRegistryEntry re : recipes) list.add(re.recipe());
+        return RecipeGraph.of(list);
+    }
+
+    /**
+     * Materials having at least one of the categories (union).
+     *
+     * @param categoryIndex Inverted category index.
+     * @param categories    The categories.
+     * @return A new BitSet of dense material indices.
+     */
+    static BitSet anyOf(List<BitSet> categoryIndex, CategoryMask categories) {
+        BitSet result = new BitSet();
+        for (int bit = categories.nextSetBit(0); bit >= 0; bit = categories.nextSetBit(bit + 1)) {
+            if (bit < categoryIndex.size()) result.or(categoryIndex.get(bit));
+        }
+        return result;
+    }
+
+    /**
+     * Materials having all the categories (intersection).
+     *
+     * @param categoryIndex Inverted category index.
+     * @param categories    The categories.
+     * @param materialCount Number of materials (all of them match an empty mask).
+     * @return A new BitSet of dense material indices.
+     */
+    static BitSet allOf(List<BitSet> categoryIndex, CategoryMask categories, int materialCount) {
+        BitSet result = null;
+        for (int bit = categories.nextSetBit(0); bit >= 0; bit = categories.nextSetBit(bit + 1)) {
+            if (bit >= categoryIndex.size()) return new BitSet();
+            if (result == null) result = (BitSet) categoryIndex.get(bit).clone();
+            else result.and(categoryIndex.get(bit));
+            if (result.isEmpty()) break;
+        }
+        if (result == null) {
+            result = new BitSet();
+            result.set(0, materialCount);
+        }
+        return result;
+    }
+
+    /**
+     * Sorts factory IDs.
+     *
+     * @param factories Factory entries by ID.
+     * @return Unmodifiable sorted list of the IDs.
+     */
+    private static List<String> sortedIds(Map<String, FactoryRegistryEntry> factories) {
+        ArrayList<String> ids = new ArrayList<>(factories.keySet());
+        Collections.sort(ids);
+        return Collections.unmodifiableList(ids);
+    }
+}
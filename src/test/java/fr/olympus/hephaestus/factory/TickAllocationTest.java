@@ -0,0 +1,156 @@
+package fr.olympus.hephaestus.factory;
+
+import fr.olympus.hephaestus.materials.MaterialInstance;
+import fr.olympus.hephaestus.processing.DefaultProcessRecipe;
+import fr.olympus.hephaestus.processing.MaterialMatcher;
+import fr.olympus.hephaestus.processing.ProcessRecipe;
+import fr.olympus.hephaestus.processing.TimeWindow;
+import fr.olympus.hephaestus.resources.HephaestusData;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that steady-state ticks allocate nothing on the ticking thread
+ * ({@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)}).
+ */
+class TickAllocationTest {
+
+    /**
+     * Ticks run before measuring (lets the JIT compile the tick path).
+     */
+    private static final int WARMUP_TICKS = 5_000;
+    /**
+     * Measured ticks.
+     */
+    private static final int MEASURED_TICKS = 500;
+    /**
+     * Measured runs of {@link #MEASURED_TICKS} ticks.
+     */
+    private static final int RUNS = 3;
+    /**
+     * Simulated delta time per tick.
+     */
+    private static final float DT = 0.05f;
+
+    private final HephaestusData data = new HephaestusData();
+
+    @Test
+    void factoryUpdateDoesNotAllocate() {
+        Factory[] factories = new Factory[64];
+        for (int i = 0; i < factories.length; i++) factories[i] = filled(i % 2 == 0 ? smelt() : dry());
+
+        Runnable tick = () -> {
+            for (Factory f : factories) f.update(DT, data);
+        };
+        assertEquals(0L, allocatedBytes(tick));
+    }
+
+    @Test
+    void worldTickDoesNotAllocateWhenTheActiveCountChanges() {
+        try (FactoryWorld world = fleet(40)) {
+            assertEquals(0L, allocatedBytes(() -> world.tick(DT)));
+        }
+    }
+
+    @Test
+    void splitWorldTickOnlyAllocatesThePoolWait() {
+        try (FactoryWorld world = fleet(600)) {
+            // ni arbre de tâches ni réveils en file : seul le noeud d'attente de ForkJoinPool.invoke reste
+            long perTick = allocatedBytes(() -> world.tick(DT)) / MEASURED_TICKS;
+            assertTrue(perTick <= 64, () -> perTick + " bytes per tick");
+        }
+    }
+
+    /**
+     * Creates a world of factories whose active count changes from one tick to the next.
+     *
+     * @param size Number of factories.
+     * @return The world, after a few ticks.
+     */
+    private FactoryWorld fleet(int size) {
+        FactoryWorld world = new FactoryWorld(data, 2);
+        // les fours tournent à chaque tick, les séchoirs dorment jusqu'à leur fenêtre
+        for (int i = 0; i < size; i++) world.add(filled(i % 2 == 0 ? smelt() : dry()));
+
+        Set<Integer> activeCounts = new HashSet<>();
+        for (int t = 0; t < 100; t++) {
+            world.tick(DT);
+            activeCounts.add(world.stats().activeCount());
+        }
+        assertTrue(activeCounts.size() > 1, () -> "active count never changed: " + activeCounts);
+        return world;
+    }
+
+    /**
+     * Warms the tick up, then measures the bytes it allocates on this thread.
+     * The least of a few runs is kept: a late JIT deoptimization may allocate once, an allocating tick allocates
+     * in every run.
+     *
+     * @param tick One tick.
+     * @return Bytes allocated by the measured ticks.
+     */
+    private static long allocatedBytes(Runnable tick) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assertTrue(threads.isThreadAllocatedMemorySupported(), "thread allocation measurement not supported");
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        for (int t = 0; t < WARMUP_TICKS; t++) tick.run();
+
+        long threadId = Thread.currentThread().threadId();
+        long least = Long.MAX_VALUE;
+        for (int run = 0; run < RUNS; run++) {
+            // coût de la mesure elle-même, retiré ensuite
+            long probe = threads.getThreadAllocatedBytes(threadId);
+            long before = threads.getThreadAllocatedBytes(threadId);
+            long overhead = before - probe;
+            for (int t = 0; t < MEASURED_TICKS; t++) tick.run();
+            long after = threads.getThreadAllocatedBytes(threadId);
+            least = Math.min(least, Math.max(0L, after - before - overhead));
+        }
+        return least;
+    }
+
+    /**
+     * Creates a started factory holding the inputs of its recipe.
+     *
+     * @param recipe The recipe.
+     * @return The factory.
+     */
+    private static Factory filled(ProcessRecipe recipe) {
+        Factory f = new Factory() {
+            @Override
+            public void processFinished(List<MaterialMatcher> outputs) {
+            }
+        };
+        f.addRecipes(List.of(recipe));
+        byte[][][] voxels = new byte[1][1][1];
+        for (MaterialMatcher in : recipe.inputs()) f.insert(new MaterialInstance(in.getMaterialId(), voxels), in.getQuantity());
+        f.startFactory();
+        return f;
+    }
+
+    /**
+     * Recipe completing at each update (a new session starts at the next one).
+     */
+    private static ProcessRecipe smelt() {
+        return new DefaultProcessRecipe(false, List.of(MaterialMatcher.id("ore", 2), MaterialMatcher.id("coal")),
+                List.of(MaterialMatcher.id("ingot")), null) {
+        };
+    }
+
+    /**
+     * Timed recipe without tick callbacks (its factory sleeps until the window opens).
+     */
+    private static ProcessRecipe dry() {
+        return new DefaultProcessRecipe(true, List.of(MaterialMatcher.id("hide")), List.of(MaterialMatcher.id("leather")),
+                new TimeWindow(0.3f, 0.6f)) {
+        };
+    }
+}
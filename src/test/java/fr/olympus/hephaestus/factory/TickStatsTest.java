@@ -0,0 +1,32 @@
+package fr.olympus.hephaestus.factory;
+
+import fr.olympus.hephaestus.resources.HephaestusData;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TickStatsTest {
+
+    @Test
+    void ticksPerSecondIsMeasuredBetweenTicks() throws InterruptedException {
+        try (FactoryWorld world = new FactoryWorld(new HephaestusData())) {
+            world.tick(0.05f);
+            assertEquals(0d, world.stats().ticksPerSecond());
+
+            // 4 intervalles d'au moins 25 ms : au plus 40 ticks/s mesurés
+            for (int i = 0; i < 4; i++) {
+                Thread.sleep(25);
+                world.tick(0.05f);
+            }
+            FactoryWorld.TickStats stats = world.stats();
+            assertEquals(5L, stats.ticks());
+            assertTrue(stats.ticksPerSecond() > 0d && stats.ticksPerSecond() <= 40d);
+            // un monde vide tient bien plus que la cadence de l'appelant
+            assertTrue(stats.sustainableTicksPerSecond() > stats.ticksPerSecond());
+
+            world.resetStats();
+            assertEquals(0d, world.stats().ticksPerSecond());
+        }
+    }
+}
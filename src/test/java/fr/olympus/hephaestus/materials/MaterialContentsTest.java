@@ -0,0 +1,220 @@
+package fr.olympus.hephaestus.materials;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MaterialContentsTest {
+
+    private static final String[] IDS = {"ore", "coal", "ingot"};
+
+    private static byte[][][] voxels(int value) {
+        byte[][][] v = new byte[2][2][2];
+        v[1][0][1] = (byte) value;
+        return v;
+    }
+
+    @Test
+    void copiesOfTheSameVoxelsShareARun() {
+        MaterialContents contents = new MaterialContents();
+        MaterialInstance first = new MaterialInstance("ore", voxels(1));
+        contents.add(first);
+        contents.add(new MaterialInstance("ore", voxels(1)));
+        contents.add(new MaterialInstance("ore", voxels(1)), 3);
+
+        // une seule run : toutes les unités renvoient la première instance
+        assertEquals(5, contents.size());
+        for (MaterialInstance m : contents) assertSame(first, m);
+    }
+
+    @Test
+    void differentVoxelsOrMaterialsStayDistinct() {
+        MaterialContents contents = new MaterialContents();
+        MaterialInstance a = new MaterialInstance("ore", voxels(1));
+        MaterialInstance b = new MaterialInstance("ore", voxels(2));
+        MaterialInstance c = new MaterialInstance("coal", voxels(1));
+        contents.add(a);
+        contents.add(b);
+        contents.add(c);
+
+        assertSame(a, contents.get(0));
+        assertSame(b, contents.get(1));
+        assertSame(c, contents.get(2));
+    }
+
+    @Test
+    void removingASeparatorMergesEqualNeighbours() {
+        MaterialContents contents = new MaterialContents();
+        MaterialInstance left = new MaterialInstance("ore", voxels(1));
+        contents.add(left, 2);
+        contents.add(new MaterialInstance("coal", voxels(1)));
+        contents.add(new MaterialInstance("ore", voxels(1)), 2);
+
+        contents.remove(2);
+        assertEquals(4, contents.size());
+        for (MaterialInstance m : contents) assertSame(left, m);
+
+        // insertion au milieu d'une run fusionnée : elle est coupée puis reste cohérente
+        MaterialInstance coal = new MaterialInstance("coal", voxels(3));
+        contents.add(2, coal);
+        assertSame(left, contents.get(1));
+        assertSame(coal, contents.get(2));
+        assertSame(left, contents.get(3));
+        assertEquals(4, contents.count("ore"));
+        assertEquals(1, contents.count("coal"));
+    }
+
+    @Test
+    void listViewMatchesAPlainListAfterMixedEdits() {
+        Random rnd = new Random(5);
+        MaterialContents contents = new MaterialContents();
+        List<MaterialInstance> model = new ArrayList<>();
+        Map<String, Integer> notified = new HashMap<>();
+        contents.setListener(new MaterialContents.Listener() {
+            @Override
+            public void onAdded(String materialId, int added, int newCount) {
+                assertEquals(newCount, notified.merge(materialId, added, Integer::sum).intValue());
+            }
+
+            @Override
+            public void onRemoved(String materialId, int removed, int newCount) {
+                assertEquals(newCount, notified.merge(materialId, -removed, Integer::sum).intValue());
+            }
+        });
+
+        for (int step = 0; step < 5000; step++) {
+            MaterialInstance m = randomInstance(rnd);
+            int op = rnd.nextInt(8);
+            switch (op) {
+                case 0 -> {
+                    contents.add(m);
+                    model.add(m);
+                }
+                case 1 -> {
+                    int index = rnd.nextInt(model.size() + 1);
+                    contents.add(index, m);
+                    model.add(index, m);
+                }
+                case 2 -> {
+                    int amount = 1 + rnd.nextInt(4);
+                    contents.add(m, amount);
+                    for (int i = 0; i < amount; i++) model.add(m);
+                }
+                case 3 -> {
+                    if (model.isEmpty()) continue;
+                    int index = rnd.nextInt(model.size());
+                    assertUnit(model.remove(index), contents.remove(index));
+                }
+                case 4 -> {
+                    if (model.isEmpty()) continue;
+                    int index = rnd.nextInt(model.size());
+                    assertUnit(model.set(index, m), contents.set(index, m));
+                }
+                case 5 -> {
+                    String id = IDS[rnd.nextInt(IDS.length)];
+                    int amount = 1 + rnd.nextInt(3);
+                    int expected = 0;
+                    for (Iterator<MaterialInstance> it = model.iterator(); it.hasNext() && expected < amount; ) {
+                        if (it.next().materialId().equals(id)) {
+                            it.remove();
+                            expected++;
+                        }
+                    }
+                    assertEquals(expected, contents.removeAmount(id, amount));
+                }
+                case 6 -> {
+                    if (model.isEmpty()) continue;
+                    int from = rnd.nextInt(model.size());
+                    int to = Math.min(model.size(), from + rnd.nextInt(4));
+                    contents.subList(from, to).clear();
+                    model.subList(from, to).clear();
+                }
+                default -> {
+                    // retrait via l'itérateur de la vue liste
+                    ListIterator<MaterialInstance> it = contents.listIterator();
+                    ListIterator<MaterialInstance> expected = model.listIterator();
+                    String id = IDS[rnd.nextInt(IDS.length)];
+                    while (it.hasNext()) {
+                        MaterialInstance got = it.next();
+                        assertUnit(expected.next(), got);
+                        if (got.materialId().equals(id) && rnd.nextInt(3) == 0) {
+                            it.remove();
+                            expected.remove();
+                        }
+                    }
+                    assertFalse(expected.hasNext());
+                }
+            }
+            assertSameUnits(model, contents, notified);
+        }
+    }
+
+    @Test
+    void clearNotifiesEveryStack() {
+        MaterialContents contents = new MaterialContents();
+        contents.add(new MaterialInstance("ore", voxels(1)), 3);
+        contents.add(new MaterialInstance("coal", voxels(1)), 2);
+        Map<String, Integer> removed = new HashMap<>();
+        contents.setListener(new MaterialContents.Listener() {
+            @Override
+            public void onAdded(String materialId, int added, int newCount) {
+            }
+
+            @Override
+            public void onRemoved(String materialId, int amount, int newCount) {
+                removed.put(materialId, amount);
+                assertEquals(0, newCount);
+            }
+        });
+
+        contents.clear();
+        assertTrue(contents.isEmpty());
+        assertEquals(0, contents.stackCount());
+        assertEquals(Map.of("ore", 3, "coal", 2), removed);
+    }
+
+    private static MaterialInstance randomInstance(Random rnd) {
+        // peu de valeurs de voxels, des copies fraîches : les fusions par contenu sont fréquentes
+        return new MaterialInstance(IDS[rnd.nextInt(IDS.length)], voxels(rnd.nextInt(2)));
+    }
+
+    private static void assertUnit(MaterialInstance expected, MaterialInstance actual) {
+        assertEquals(expected.materialId(), actual.materialId());
+        assertTrue(Arrays.deepEquals(expected.voxels(), actual.voxels()));
+    }
+
+    private static void assertSameUnits(List<MaterialInstance> model, MaterialContents contents,
+                                        Map<String, Integer> notified) {
+        assertEquals(model.size(), contents.size());
+        // accès indexé dans le désordre (le curseur doit revenir en arrière)
+        for (int i = model.size() - 1; i >= 0; i -= 3) assertUnit(model.get(i), contents.get(i));
+        int i = 0;
+        for (MaterialInstance m : contents) assertUnit(model.get(i++), m);
+        assertEquals(model.size(), i);
+
+        Map<String, Integer> counts = new HashMap<>();
+        for (MaterialInstance m : model) counts.merge(m.materialId(), 1, Integer::sum);
+        for (String id : IDS) {
+            int expected = counts.getOrDefault(id, 0);
+            assertEquals(expected, contents.count(id));
+            assertEquals(expected, notified.getOrDefault(id, 0).intValue());
+        }
+        assertEquals(counts.size(), contents.stackCount());
+        assertEquals(counts.keySet(), contents.distinctIds());
+        for (int s = 0; s < contents.stackCount(); s++) {
+            assertEquals(counts.get(contents.stackMaterialId(s)).intValue(), contents.stackSize(s));
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package fr.olympus.hephaestus.planning;
+
+import fr.olympus.hephaestus.processing.MaterialMatcher;
+import fr.olympus.hephaestus.processing.ProcessRecipe;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static fr.olympus.hephaestus.planning.TestRecipes.recipe;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BillOfMaterialsTest {
+
+    private static final MaterialMatcher WOOD = MaterialMatcher.id("wood");
+    private static final MaterialMatcher PLANK = MaterialMatcher.id("plank");
+    private static final MaterialMatcher ORE = MaterialMatcher.id("ore");
+    private static final MaterialMatcher INGOT = MaterialMatcher.id("ingot");
+    private static final MaterialMatcher PAIR = MaterialMatcher.id("pair");
+
+    private final ProcessRecipe saw = recipe("saw", List.of(WOOD), MaterialMatcher.id("plank", 3));
+    private final ProcessRecipe smelt = recipe("smelt", List.of(ORE), MaterialMatcher.id("ingot", 2));
+    private final ProcessRecipe join = recipe("join", List.of(INGOT, INGOT), PAIR);
+
+    private static PlanNode craft(MaterialMatcher target, ProcessRecipe recipe, PlanNode... inputs) {
+        return PlanNode.craft(target, recipe, 1, inputs);
+    }
+
+    @Test
+    void demandIsRoundedUpToWholeBatches() {
+        CraftPlanner.CraftPlan plan = new CraftPlanner.CraftPlan(craft(PLANK, saw, PlanNode.available(WOOD)));
+
+        BillOfMaterials bill = BillOfMaterials.of(plan, 7);
+        assertEquals(Map.of(saw, 3L), bill.batches());
+        assertEquals(Map.of(WOOD, 3L), bill.rawNeeds());
+        assertEquals(Map.of(PLANK, 2L), bill.surplus());
+        assertEquals(3L, bill.totalBatches());
+        assertEquals(3L, bill.totalCost());
+
+        assertEquals(Map.of(saw, 2L), BillOfMaterials.of(plan, 6).batches());
+        assertEquals(Map.of(), BillOfMaterials.of(plan, 6).surplus());
+    }
+
+    @Test
+    void sharedSubPlanIsBatchedOnceForTheDemandOfEveryUse() {
+        PlanNode ingot = craft(INGOT, smelt, PlanNode.available(ORE));
+        CraftPlanner.CraftPlan shared = new CraftPlanner.CraftPlan(craft(PAIR, join, ingot, ingot));
+
+        // 3 paires : 6 lingots pour les deux usages, 3 fontes de 2
+        BillOfMaterials bill = BillOfMaterials.of(shared, 3);
+        assertEquals(Map.of(smelt, 3L, join, 3L), bill.batches());
+        assertEquals(Map.of(ORE, 3L), bill.rawNeeds());
+        assertEquals(Map.of(), bill.surplus());
+
+        // une paire : un seul lot pour les deux usages, pas un par usage
+        assertEquals(Map.of(smelt, 1L, join, 1L), BillOfMaterials.of(shared, 1).batches());
+    }
+
+    @Test
+    void equalSubPlansAreMergedLikeSharedOnes() {
+        PlanNode left = craft(INGOT, smelt, PlanNode.available(ORE));
+        PlanNode right = craft(INGOT, smelt, PlanNode.available(ORE));
+        CraftPlanner.CraftPlan copies = new CraftPlanner.CraftPlan(craft(PAIR, join, left, right));
+
+        BillOfMaterials bill = BillOfMaterials.of(copies, 1);
+        assertEquals(Map.of(smelt, 1L, join, 1L), bill.batches());
+        assertEquals(Map.of(ORE, 1L), bill.rawNeeds());
+    }
+
+    @Test
+    void overflowingQuantitiesThrow() {
+        ProcessRecipe press = recipe("press", List.of(MaterialMatcher.id("wood", 2)), PLANK);
+        CraftPlanner.CraftPlan plan = new CraftPlanner.CraftPlan(craft(PLANK, press, PlanNode.available(WOOD)));
+
+        assertThrows(ArithmeticException.class, () -> BillOfMaterials.of(plan, Long.MAX_VALUE));
+        assertEquals(Map.of(WOOD, Long.MAX_VALUE - 1), BillOfMaterials.of(plan, Long.MAX_VALUE / 2).rawNeeds());
+    }
+
+    @Test
+    void quantityMustBePositive() {
+        CraftPlanner.CraftPlan plan = new CraftPlanner.CraftPlan(craft(PLANK, saw, PlanNode.available(WOOD)));
+
+        assertThrows(IllegalArgumentException.class, () -> BillOfMaterials.of(plan, 0));
+    }
+}
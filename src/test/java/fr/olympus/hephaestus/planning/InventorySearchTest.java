@@ -0,0 +1,146 @@
+package fr.olympus.hephaestus.planning;
+
+import fr.olympus.hephaestus.materials.Material;
+import fr.olympus.hephaestus.materials.MaterialCategory;
+import fr.olympus.hephaestus.materials.MaterialType;
+import fr.olympus.hephaestus.processing.MaterialMatcher;
+import fr.olympus.hephaestus.processing.ProcessRecipe;
+import fr.olympus.hephaestus.resources.HephaestusData;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static fr.olympus.hephaestus.planning.TestRecipes.recipe;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InventorySearchTest {
+
+    private static final MaterialMatcher ORE = MaterialMatcher.id("ore");
+    private static final MaterialMatcher COAL = MaterialMatcher.id("coal");
+    private static final MaterialMatcher WOOD = MaterialMatcher.id("wood");
+    private static final MaterialMatcher INGOT = MaterialMatcher.id("ingot");
+    private static final MaterialMatcher TOOL = MaterialMatcher.id("tool");
+
+    private static final CraftPlanner.PlanOptions OPTIONS = CraftPlanner.PlanOptions.safeDefaults();
+
+    private final ProcessRecipe smelt = recipe("smelt", List.of(ORE, COAL), INGOT);
+    private final ProcessRecipe burn = recipe("burn", List.of(MaterialMatcher.id("wood", 4)), COAL);
+    private final ProcessRecipe forge = recipe("forge", List.of(INGOT, COAL), TOOL);
+    private final CraftPlanner planner = new CraftPlanner(List.of(smelt, burn, forge));
+
+    @Test
+    void siblingBranchesShareTheStock() {
+        // le lingot et l'outil veulent chacun un charbon
+        assertTrue(planner.planWithInventory(TOOL, 1, Map.of(ORE, 1L, COAL, 1L), OPTIONS).isEmpty());
+
+        BillOfMaterials burnt = planner.planWithInventory(TOOL, 1, Map.of(ORE, 1L, COAL, 1L, WOOD, 4L), OPTIONS)
+                .orElseThrow().bill();
+        assertEquals(Map.of(ORE, 1L, COAL, 1L, WOOD, 4L), burnt.rawNeeds());
+        assertEquals(Map.of(smelt, 1L, burn, 1L, forge, 1L), burnt.batches());
+
+        BillOfMaterials stocked = planner.planWithInventory(TOOL, 1, Map.of(ORE, 1L, COAL, 2L, WOOD, 4L), OPTIONS)
+                .orElseThrow().bill();
+        assertEquals(Map.of(ORE, 1L, COAL, 2L), stocked.rawNeeds());
+    }
+
+    @Test
+    void partialStockIsCompletedByCrafting() {
+        // 3 charbons en stock, 2 brûlés : 8 bois ne suffisent pas pour 5 charbons
+        CraftPlanner.InventoryPlan plan = planner.planWithInventory(COAL, 5, Map.of(COAL, 3L, WOOD, 8L), OPTIONS)
+                .orElseThrow();
+        assertEquals(Map.of(COAL, 3L, WOOD, 8L), plan.bill().rawNeeds());
+        assertEquals(Map.of(burn, 2L), plan.bill().batches());
+        assertEquals(Map.of(), plan.bill().surplus());
+
+        assertTrue(planner.planWithInventory(COAL, 5, Map.of(COAL, 2L, WOOD, 8L), OPTIONS).isEmpty());
+    }
+
+    @Test
+    void partialStockRoundsTheRemainderUpToBatches() {
+        MaterialMatcher plank = MaterialMatcher.id("plank");
+        ProcessRecipe saw = recipe("saw", List.of(WOOD), MaterialMatcher.id("plank", 4));
+        CraftPlanner sawing = new CraftPlanner(List.of(saw));
+
+        BillOfMaterials bill = sawing.planWithInventory(plank, 7, Map.of(plank, 2L, WOOD, 5L), OPTIONS)
+                .orElseThrow().bill();
+        assertEquals(Map.of(plank, 2L, WOOD, 2L), bill.rawNeeds());
+        assertEquals(Map.of(plank, 3L), bill.surplus());
+    }
+
+    @Test
+    void stockTakenByAFailedBranchIsRestored() {
+        // la recette la moins chère prend les 2 charbons puis manque de minerai ; l'autre en a besoin aussi
+        MaterialMatcher alloy = MaterialMatcher.id("alloy");
+        ProcessRecipe cheap = recipe("cheap", List.of(COAL, MaterialMatcher.id("ore", 2), COAL), alloy);
+        ProcessRecipe dear = recipe("dear", List.of(MaterialMatcher.id("coal", 2), MaterialMatcher.id("wood", 3)), alloy);
+        CraftPlanner alloys = new CraftPlanner(List.of(cheap, dear));
+
+        BillOfMaterials bill = alloys.planWithInventory(alloy, 1, Map.of(COAL, 2L, ORE, 1L, WOOD, 3L), OPTIONS)
+                .orElseThrow().bill();
+        assertEquals(Map.of(COAL, 2L, WOOD, 3L), bill.rawNeeds());
+        assertEquals(Map.of(dear, 1L), bill.batches());
+    }
+
+    @Test
+    void categoryInputsCountTheStockOfMatchingIds() {
+        HephaestusData data = new HephaestusData();
+        data.registerMaterial("iron", new TestMaterial(Category.METAL, "iron"));
+        data.registerMaterial("copper", new TestMaterial(Category.METAL, "copper"));
+        data.registerMaterial("oak", new TestMaterial(Category.WOOD, "oak"));
+        MaterialMatcher iron = MaterialMatcher.id("iron");
+        MaterialMatcher copper = MaterialMatcher.id("copper");
+        MaterialMatcher oak = MaterialMatcher.id("oak");
+        MaterialMatcher plate = MaterialMatcher.id("plate");
+        MaterialMatcher rivet = MaterialMatcher.id("rivet");
+        ProcessRecipe cast = recipe("cast", List.of(MaterialMatcher.anyOfCategories(Set.of(Category.METAL), 3)), plate);
+        ProcessRecipe punch = recipe("punch", List.of(iron, MaterialMatcher.anyOfCategories(Set.of(Category.METAL), 2)),
+                rivet);
+        CraftPlanner metalWork = new CraftPlanner(List.of(cast, punch));
+
+        Map<MaterialMatcher, Long> stock = new LinkedHashMap<>();
+        stock.put(iron, 2L);
+        stock.put(copper, 2L);
+        stock.put(oak, 5L);
+
+        // sans HephaestusData, la catégorie ne voit que le stock rangé sous sa propre clé
+        assertTrue(metalWork.planWithInventory(plate, 1, stock, OPTIONS).isEmpty());
+
+        BillOfMaterials plates = metalWork.planWithInventory(plate, 1, stock, data, OPTIONS).orElseThrow().bill();
+        assertEquals(Map.of(iron, 2L, copper, 1L), plates.rawNeeds());
+        assertTrue(metalWork.planWithInventory(plate, 2, stock, data, OPTIONS).isEmpty());
+
+        // le fer pris par l'entrée ID n'est plus là pour la catégorie
+        BillOfMaterials rivets = metalWork.planWithInventory(rivet, 1, stock, data, OPTIONS).orElseThrow().bill();
+        assertEquals(Map.of(iron, 2L, copper, 1L), rivets.rawNeeds());
+        stock.put(copper, 0L);
+        assertTrue(metalWork.planWithInventory(rivet, 1, stock, data, OPTIONS).isEmpty());
+    }
+
+    @Test
+    void nullArgumentsAreRejectedLikeTheOtherPlanMethods() {
+        Map<MaterialMatcher, Long> stock = Map.of(ORE, 1L);
+        assertThrows(NullPointerException.class, () -> planner.planWithInventory(null, 1, stock, OPTIONS));
+        assertThrows(NullPointerException.class, () -> planner.planWithInventory(TOOL, 1, null, OPTIONS));
+        assertThrows(NullPointerException.class, () -> planner.planWithInventory(TOOL, 1, stock, null));
+        assertThrows(NullPointerException.class, () -> planner.planWithInventory(TOOL, 1, stock, null, OPTIONS));
+    }
+
+    private enum Category implements MaterialCategory {
+        METAL, WOOD
+    }
+
+    private enum Type implements MaterialType {
+        TEST
+    }
+
+    private static final class TestMaterial extends Material {
+        TestMaterial(Category category, String name) {
+            super(Type.TEST, List.of(category), name);
+        }
+    }
+}
@@ -0,0 +1,370 @@
+package fr.olympus.hephaestus.planning;
+
+import fr.olympus.hephaestus.materials.Material;
+import fr.olympus.hephaestus.materials.MaterialCategory;
+import fr.olympus.hephaestus.materials.MaterialType;
+import fr.olympus.hephaestus.planning.CraftPlanner.CraftPlan;
+import fr.olympus.hephaestus.processing.MaterialMatcher;
+import fr.olympus.hephaestus.processing.ProcessRecipe;
+import fr.olympus.hephaestus.processing.RecipeGraph;
+import fr.olympus.hephaestus.resources.HephaestusData;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import static fr.olympus.hephaestus.planning.TestRecipes.recipe;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the planner against an exhaustive solver on random recipe sets.
+ * <p>
+ * Each round generates materials and recipes, half of them acyclic and half with recipe cycles, and enumerates
+ * every derivation of every material by brute force: a derivation is a tree in which a crafted material does not
+ * repeat on a path and whose depth is at most {@link CraftPlanner.PlanOptions#maxDepth()}. The planner must agree
+ * with it on the costs:
+ * <ul>
+ *     <li>{@link CraftPlanner#planBest} returns a cheapest derivation (best-first search and its lower bounds);</li>
+ *     <li>{@link CraftPlanner#planTopK} returns the k cheapest ones and {@link CraftPlanner#planIterator} all of
+ *     them, in increasing cost (k-best enumeration);</li>
+ *     <li>{@link CraftPlanner#planAll} returns all of them on acyclic sets (with cycles, it keeps the cycle handling
+ *     of the previous planner and may return more);</li>
+ *     <li>{@link PlannerFacade} on a category target returns those of every material of the category, planned in
+ *     parallel over one shared memo (memoized sub-plans, cycle detection of the memo), and its routes are those of
+ *     {@link CraftPlanner#planAll} on each material alone; plans without steps count once, as the facade
+ *     deduplicates plans with the same steps.</li>
+ * </ul>
+ * The budget is large enough for every search to end; the cost of each plan is also recomputed from its steps.
+ * <p>
+ * The test runs a few recipe sets of a fixed seed; the {@code plannerCrossCheck} task runs many more, with the
+ * {@code plannerCrossCheck.rounds} and {@code plannerCrossCheck.seed} system properties.
+ */
+class PlannerCrossCheckTest {
+
+    /**
+     * Default number of random recipe sets.
+     */
+    private static final int ROUNDS = 100;
+    /**
+     * Default random seed.
+     */
+    private static final long SEED = 19L;
+    /**
+     * Budget of every search (never reached on these sizes).
+     */
+    private static final int MAX_PLANS = 10_000_000;
+    /**
+     * Targets with more derivations than this are skipped (the brute force would be too slow).
+     */
+    private static final int MAX_DERIVATIONS = 20_000;
+    /**
+     * Categories spread over the generated materials.
+     */
+    private static final Category[] CATEGORIES = Category.values();
+
+    @Test
+    void plannerMatchesTheExhaustiveSolver() {
+        int rounds = Integer.getInteger("plannerCrossCheck.rounds", ROUNDS);
+        long seed = Long.getLong("plannerCrossCheck.seed", SEED);
+
+        int checked = run(rounds, seed);
+        assertTrue(checked > rounds, () -> "only " + checked + " targets checked in " + rounds + " recipe sets");
+    }
+
+    /**
+     * Runs the cross-check.
+     *
+     * @param rounds Number of random recipe sets.
+     * @param seed   Random seed.
+     * @return Number of targets checked.
+     */
+    private static int run(int rounds, long seed) {
+        Random random = new Random(seed);
+        int checked = 0;
+        for (int round = 0; round < rounds; round++) {
+            boolean acyclic = round % 2 == 0;
+            int materials = 5 + random.nextInt(6);
+            List<ProcessRecipe> recipes = randomRecipes(random, materials, 4 + random.nextInt(12), acyclic);
+            RecipeGraph graph = RecipeGraph.of(recipes);
+            CraftPlanner planner = new CraftPlanner(graph);
+
+            // les derniers matériaux sont disponibles
+            Set<MaterialMatcher> available = new HashSet<>();
+            for (int i = 0; i < 3; i++) {
+                available.add(MaterialMatcher.id(materialId(materials - 1 - random.nextInt(materials / 2))));
+            }
+            List<MaterialMatcher> availableList = new ArrayList<>(available);
+            CraftPlanner.PlanOptions options = new CraftPlanner.PlanOptions(1 + random.nextInt(5), MAX_PLANS,
+                    random.nextBoolean());
+            String where = "round " + round + " (seed " + seed + ", " + (acyclic ? "acyclic" : "cyclic") + ")";
+
+            List<List<Long>> derivations = new ArrayList<>(materials);
+            List<List<Long>> routes = new ArrayList<>(materials);
+            for (int m = 0; m < materials; m++) {
+                MaterialMatcher target = MaterialMatcher.id(materialId(m));
+                List<Long> expected = derivations(graph, target, available, new HashSet<>(), 0, options.maxDepth());
+                derivations.add(expected);
+                if (expected == null) {
+                    routes.add(null);
+                    continue;
+                }
+                expected.sort(null);
+
+                routes.add(checkPlanner(planner, graph, target, availableList, options, expected, acyclic, random, where));
+                checked++;
+            }
+
+            checkFacade(planner, graph, materials, availableList, options, derivations, routes, random, where);
+        }
+        return checked;
+    }
+
+    /**
+     * Checks the planner modes of one target.
+     *
+     * @param planner   The planner.
+     * @param graph     Its recipe graph.
+     * @param target    The target.
+     * @param available The available materials.
+     * @param options   Planning options.
+     * @param expected  The costs of every derivation, sorted.
+     * @param acyclic   Whether the recipe set has no cycle.
+     * @param random    Random source (for k).
+     * @param where     Description of the round, for the messages.
+     * @return The costs of the plans returned by {@link CraftPlanner#planAll}.
+     */
+    private static List<Long> checkPlanner(CraftPlanner planner, RecipeGraph graph, MaterialMatcher target,
+                                           List<MaterialMatcher> available, CraftPlanner.PlanOptions options,
+                                           List<Long> expected, boolean acyclic, Random random, String where) {
+        Optional<CraftPlan> best = planner.planBest(target, available, options);
+        check(best.map(p -> List.of(cost(graph, p))).orElse(List.of()),
+                expected.isEmpty() ? List.of() : List.of(expected.getFirst()), "planBest", target, where);
+
+        int k = 1 + random.nextInt(expected.size() + 2);
+        check(costs(graph, planner.planTopK(target, available, k, options)),
+                expected.subList(0, Math.min(k, expected.size())), "planTopK(" + k + ")", target, where);
+
+        List<CraftPlan> iterated = new ArrayList<>();
+        Iterator<CraftPlan> it = planner.planIterator(target, available, options);
+        it.forEachRemaining(iterated::add);
+        check(costs(graph, iterated), expected, "planIterator", target, where);
+
+        // planAll garde le traitement des cycles du planificateur d'origine : comparé seulement sans cycle
+        List<Long> all = costs(graph, planner.planAll(target, available, options));
+        if (acyclic) check(all, expected, "planAll", target, where);
+        return all;
+    }
+
+    /**
+     * Checks the facade on the category targets, whose materials are planned over one shared memo.
+     *
+     * @param planner     The planner.
+     * @param graph       Its recipe graph.
+     * @param materials   Number of materials.
+     * @param available   The available materials.
+     * @param options     Planning options.
+     * @param derivations The costs of every derivation of each material, sorted (null if skipped).
+     * @param routes      The costs of the plans of each material returned by {@link CraftPlanner#planAll} alone.
+     * @param random      Random source (for the categories and k).
+     * @param where       Description of the round, for the messages.
+     */
+    private static void checkFacade(CraftPlanner planner, RecipeGraph graph, int materials,
+                                    List<MaterialMatcher> available, CraftPlanner.PlanOptions options,
+                                    List<List<Long>> derivations, List<List<Long>> routes,
+                                    Random random, String where) {
+        HephaestusData data = new HephaestusData();
+        List<List<Long>> byCategory = new ArrayList<>();
+        List<List<Long>> routesByCategory = new ArrayList<>();
+        for (int c = 0; c < CATEGORIES.length; c++) {
+            byCategory.add(new ArrayList<>());
+            routesByCategory.add(new ArrayList<>());
+        }
+        boolean[] skipped = new boolean[CATEGORIES.length];
+        boolean[] hasAvailable = new boolean[CATEGORIES.length];
+        for (int m = 0; m < materials; m++) {
+            int c = random.nextInt(CATEGORIES.length);
+            data.registerMaterial(materialId(m), new GeneratedMaterial(CATEGORIES[c], materialId(m)));
+            if (derivations.get(m) == null) {
+                skipped[c] = true;
+            } else if (available.contains(MaterialMatcher.id(materialId(m)))) {
+                // les plans sans étape ont la même signature : la façade n'en garde qu'un
+                if (!hasAvailable[c]) {
+                    byCategory.get(c).add(0L);
+                    routesByCategory.get(c).add(0L);
+                }
+                hasAvailable[c] = true;
+            } else {
+                byCategory.get(c).addAll(derivations.get(m));
+                routesByCategory.get(c).addAll(routes.get(m));
+            }
+        }
+
+        PlannerFacade facade = new PlannerFacade(planner, data, 0, ForkJoinPool.commonPool());
+        for (int c = 0; c < CATEGORIES.length; c++) {
+            if (skipped[c]) continue;
+            MaterialMatcher target = MaterialMatcher.anyOfCategories(Set.of(CATEGORIES[c]));
+            List<Long> expected = byCategory.get(c);
+            expected.sort(null);
+            List<Long> expectedRoutes = routesByCategory.get(c);
+            expectedRoutes.sort(null);
+
+            check(costs(graph, facade.allRoutes(target, available, options, materials)), expectedRoutes,
+                    "facade allRoutes", target, where);
+            int k = 1 + random.nextInt(expected.size() + 2);
+            check(costs(graph, facade.topK(target, available, k, options, materials)),
+                    expected.subList(0, Math.min(k, expected.size())), "facade topK(" + k + ")", target, where);
+            check(facade.bestOnly(target, available, options, materials).map(p -> List.of(cost(graph, p))).orElse(List.of()),
+                    expected.isEmpty() ? List.of() : List.of(expected.getFirst()), "facade bestOnly", target, where);
+        }
+    }
+
+    /**
+     * Enumerates the costs of every derivation of a material by brute force.
+     *
+     * @param graph     The recipe graph.
+     * @param target    The material.
+     * @param available The available materials.
+     * @param path      The materials crafted on the current path.
+     * @param depth     Current depth.
+     * @param maxDepth  Maximum depth.
+     * @return The costs (unsorted), or null if there are more than {@link #MAX_DERIVATIONS}.
+     */
+    private static List<Long> derivations(RecipeGraph graph, MaterialMatcher target, Set<MaterialMatcher> available,
+                                          Set<MaterialMatcher> path, int depth, int maxDepth) {
+        if (depth > maxDepth) return new ArrayList<>();
+        if (available.contains(target)) return new ArrayList<>(List.of(0L));
+        if (!path.add(target)) return new ArrayList<>();
+
+        List<Long> out = new ArrayList<>();
+        for (ProcessRecipe r : graph.producersOf(target)) {
+            List<Long> acc = List.of((long) graph.costOf(r));
+            for (MaterialMatcher in : r.inputs()) {
+                List<Long> sub = derivations(graph, in, available, path, depth + 1, maxDepth);
+                if (sub == null) {
+                    path.remove(target);
+                    return null;
+                }
+                List<Long> next = new ArrayList<>(acc.size() * sub.size());
+                for (long a : acc) {
+                    for (long b : sub) next.add(a + b);
+                }
+                if (next.size() > MAX_DERIVATIONS) {
+                    path.remove(target);
+                    return null;
+                }
+                acc = next;
+            }
+            out.addAll(acc);
+            if (out.size() > MAX_DERIVATIONS) {
+                path.remove(target);
+                return null;
+            }
+        }
+        path.remove(target);
+        return out;
+    }
+
+    /**
+     * Generates random recipes of one output and up to two inputs.
+     *
+     * @param random    Random source.
+     * @param materials Number of materials.
+     * @param count     Number of recipes.
+     * @param acyclic   Whether inputs only use materials of a higher index than the output (no recipe cycle).
+     * @return The recipes.
+     */
+    private static List<ProcessRecipe> randomRecipes(Random random, int materials, int count, boolean acyclic) {
+        List<ProcessRecipe> out = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int output = random.nextInt(materials - 1);
+            List<MaterialMatcher> inputs = new ArrayList<>();
+            int n = random.nextInt(3);
+            for (int j = 0; j < n; j++) {
+                int input = acyclic ? output + 1 + random.nextInt(materials - output - 1) : random.nextInt(materials);
+                inputs.add(MaterialMatcher.id(materialId(input), 1 + random.nextInt(4)));
+            }
+            out.add(recipe("test:recipe/" + i, inputs, MaterialMatcher.id(materialId(output))));
+        }
+        return out;
+    }
+
+    /**
+     * Returns the cost of each plan, checking it against the cost of its steps.
+     *
+     * @param graph The recipe graph.
+     * @param plans The plans.
+     * @return Their costs, in order.
+     */
+    private static List<Long> costs(RecipeGraph graph, List<CraftPlan> plans) {
+        List<Long> out = new ArrayList<>(plans.size());
+        for (CraftPlan p : plans) out.add(cost(graph, p));
+        return out;
+    }
+
+    /**
+     * Returns the cost of a plan, checking it against the cost of its steps.
+     *
+     * @param graph The recipe graph.
+     * @param plan  The plan.
+     * @return Its cost.
+     */
+    private static long cost(RecipeGraph graph, CraftPlan plan) {
+        long steps = 0;
+        for (CraftPlanner.PlanStep s : plan.steps()) steps += graph.costOf(s.recipe());
+        assertEquals(steps, plan.totalCost(), () -> "plan cost differs from the cost of its steps: " + plan);
+        return steps;
+    }
+
+    /**
+     * Fails if the planner costs differ from the expected ones.
+     *
+     * @param actual   Costs returned by the planner.
+     * @param expected Costs found by the exhaustive solver.
+     * @param mode     The checked mode.
+     * @param target   The target.
+     * @param where    Description of the round.
+     */
+    private static void check(List<Long> actual, List<Long> expected, String mode, MaterialMatcher target, String where) {
+        assertEquals(expected, actual, () -> mode + " mismatch for " + target + " in " + where);
+    }
+
+    /**
+     * Returns the id of a generated material.
+     *
+     * @param index Material index.
+     * @return Its id.
+     */
+    private static String materialId(int index) {
+        return "test:m" + index;
+    }
+
+    /**
+     * Categories spread over the generated materials.
+     */
+    private enum Category implements MaterialCategory {
+        METAL, WOOD, FOOD
+    }
+
+    /**
+     * Type of the generated materials.
+     */
+    private enum Type implements MaterialType {
+        GENERATED
+    }
+
+    /**
+     * Material generated for the cross-check, in one category.
+     */
+    private static final class GeneratedMaterial extends Material {
+        GeneratedMaterial(Category category, String name) {
+            super(Type.GENERATED, List.of(category), name);
+        }
+    }
+}
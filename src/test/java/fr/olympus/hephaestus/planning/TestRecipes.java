@@ -0,0 +1,32 @@
+package fr.olympus.hephaestus.planning;
+
+import fr.olympus.hephaestus.processing.DefaultProcessRecipe;
+import fr.olympus.hephaestus.processing.MaterialMatcher;
+import fr.olympus.hephaestus.processing.ProcessRecipe;
+
+import java.util.List;
+
+/**
+ * Recipes for the planning tests (cost = number of input units, like {@link DefaultProcessRecipe}).
+ */
+final class TestRecipes {
+
+    private TestRecipes() {
+    }
+
+    /**
+     * Creates a recipe that is not registered.
+     *
+     * @param recipeId recipe identifier
+     * @param inputs   input matchers
+     * @param outputs  output matchers
+     * @return the recipe
+     */
+    static ProcessRecipe recipe(String recipeId, List<MaterialMatcher> inputs, MaterialMatcher... outputs) {
+        return new DefaultProcessRecipe(false, inputs, List.of(outputs), null) {
+            {
+                this.id = recipeId;
+            }
+        };
+    }
+}